@@ -1,15 +1,19 @@
 package com.lingokids.mtg;
 
+import com.lingokids.mtg.daemon.DaemonClient;
 import com.lingokids.mtg.exceptions.PrintExceptionMessageHandler;
 import com.lingokids.mtg.factories.CardLoaderServiceFactory;
-import com.lingokids.mtg.factories.FilterServiceFactory;
 import com.lingokids.mtg.factories.GroupingServiceFactory;
 import com.lingokids.mtg.factories.PrinterServiceFactory;
+import com.lingokids.mtg.factories.ResultCacheServiceFactory;
+import com.lingokids.mtg.factories.StorageServiceFactory;
 import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
 import com.lingokids.mtg.services.CardLoaderService;
-import com.lingokids.mtg.services.FilterService;
 import com.lingokids.mtg.services.GroupingService;
 import com.lingokids.mtg.services.PrinterService;
+import com.lingokids.mtg.services.ResultCacheService;
+import com.lingokids.mtg.services.impl.APIAssemblerImpl;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -28,7 +32,8 @@ import java.util.concurrent.Callable;
 @Command(name = "mtg",
         mixinStandardHelpOptions = true,
         version = "mtg 0.1",
-        description = "Query, Filter and Group CLI for 'Magic The Gathering' cards.")
+        description = "Query, Filter and Group CLI for 'Magic The Gathering' cards.",
+        subcommands = ServeCommand.class)
 public class MagicTheGathering implements Callable<Integer> {
 
     @Option(names = {"-p", "--properties"},
@@ -46,6 +51,11 @@ public class MagicTheGathering implements Callable<Integer> {
             description = "Forces a re-read of all the cards from the API instead of reading them from local file")
     private boolean refresh;
 
+    @Option(names = {"-i", "--incremental"},
+            description = {"Refresh only parses the pages of the API that changed since last refresh.",
+                    "Cards of the rest of the pages are taken from local file."})
+    private boolean incremental;
+
     @Option(names = {"--pretty"},
             description = "Pretty prints the output JSON")
     private boolean pretty;
@@ -54,36 +64,60 @@ public class MagicTheGathering implements Callable<Integer> {
             description = "Uses the provided url instead of the standard one https://api.magicthegathering.io/v1/cards")
     private String url;
 
+    @Option(names = {"-c", "--concurrency"},
+            description = "Number of concurrent requests when retrieving the cards from the API (default: ${DEFAULT-VALUE})")
+    private int concurrency = APIAssemblerImpl.DEFAULT_CONCURRENCY;
+
+    @Option(names = {"-s", "--storage"},
+            description = {"Where the cards are kept: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})",
+                    "Database does the filters in SQL."})
+    private StorageServiceFactory.Storage storage = StorageServiceFactory.Storage.SNAPSHOT;
+
+    @Option(names = {"--local"},
+            description = "Reads the cards even if 'mtg serve' is running, instead of asking it")
+    private boolean local;
+
+    @Option(names = {"--no-cache"},
+            description = "Doesn't use the results of previous queries, nor keeps this one")
+    private boolean noCache;
+
     @Option(names = {"-o", "--output"},
     description = "Outputs the result to a JSON files")
     private String filename;
 
-    @Parameters(description = {"Filters in the form of field1=value1 field2=value2...fieldN=valueN",
+    @Parameters(mapFallbackValue = "", description = {"Filters in the form of field1=value1 field2=value2...fieldN=valueN",
+            "Numbers and dates also as ranges or comparisons: cmc=2..4 releaseDate>=2014-09-26 priceMid<1.50",
             "If not filters are specified then all cards are returned"})
     private Map<String, String> filters;
 
     /**
-     * External dependencies solved at construction time through Factory pattern
+     * External dependencies solved at construction time through Factory pattern.
+     * Card loader depends on command line options, so it is created once they are parsed.
+     * It filters the cards while they are read.
      */
-    private final CardLoaderService cardLoaderService;
-    private final FilterService filterService;
     private final GroupingService groupingService;
     private final PrinterService printerService;
+    private final ResultCacheService resultCacheService;
+    private final DaemonClient daemonClient;
 
     public MagicTheGathering() {
-        cardLoaderService = CardLoaderServiceFactory.getCardLoaderServiceInstance();
-        filterService = FilterServiceFactory.getFilterServiceInstance();
         groupingService = GroupingServiceFactory.getGroupingServiceInstance();
         printerService = PrinterServiceFactory.getPrinterServiceInstance();
+        resultCacheService = ResultCacheServiceFactory.getResultCacheServiceInstance();
+        daemonClient = new DaemonClient();
     }
 
     /**
      * Steps
      *
-     * (1) Get the cards
-     * (2) Filter them
-     * (3) Group them
-     * (4) Output to stdout
+     * (1) Output the result of the same query on the same cards if it was kept
+     * (2) Ask 'mtg serve' if it's running, it answers with the output. Refreshes are done here.
+     * (3) Get the cards matching the filters
+     * (4) Group them
+     * (5) Output to stdout
+     * (6) Keep the result with the version of the cards that answered it, the ones in 'mtg serve' can be
+     *     older than the ones in the storage. After a refresh, previous results are removed and 'mtg serve'
+     *     reads the cards, even with --local.
      *
      * @return code (0 means OK)
      * @throws Exception
@@ -95,16 +129,51 @@ public class MagicTheGathering implements Callable<Integer> {
             throw new IllegalArgumentException("Can only group by a maximum of 2 fields.");
         }
 
-        List<Card> cards = cardLoaderService.getCards(url, refresh);
-        cards = filterService.filter(cards, filters);
-        Object result = groupingService.groupBy(cards, groupBy);
-        printerService.print(result, properties, filename, pretty);
+        CardQuery query = new CardQuery();
+        query.setFilters(filters);
+        query.setGroupBy(groupBy);
+        query.setProperties(properties);
+
+        String version = null;
+        if (!noCache && !refresh) {
+            version = StorageServiceFactory.getStorageServiceInstance(storage).getVersion();
+            if (version != null && resultCacheService.output(resultCacheService.getKey(query, pretty, version), filename)) {
+                return 0;
+            }
+        }
+
+        String json = null;
+        if (!local && !refresh && url == null) {
+            DaemonClient.Answer answer = daemonClient.query(query, pretty);
+            if (answer != null) {
+                json = answer.getJson();
+                version = answer.getVersion();
+                printerService.output(json, filename);
+            }
+        }
+
+        if (json == null) {
+            CardLoaderService cardLoaderService = CardLoaderServiceFactory.getCardLoaderServiceInstance(concurrency, storage);
+            List<Card> cards = cardLoaderService.getCards(url, refresh, incremental, query);
+            Object result = groupingService.groupBy(cards, groupBy);
+            json = printerService.print(result, properties, filename, pretty);
+        }
+
+        if (!noCache && !refresh && version != null) {
+            resultCacheService.put(resultCacheService.getKey(query, pretty, version), json);
+        }
+
+        if (refresh) {
+            resultCacheService.clear();
+            daemonClient.reload();
+        }
 
         return 0;
     }
 
     public static void main(String... args) {
         int exitCode = new CommandLine(new MagicTheGathering())
+                .setCaseInsensitiveEnumValuesAllowed(true)
                 .setExecutionExceptionHandler(new PrintExceptionMessageHandler())
                 .execute(args);
 
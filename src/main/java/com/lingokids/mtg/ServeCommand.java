@@ -0,0 +1,63 @@
+package com.lingokids.mtg;
+
+import com.lingokids.mtg.daemon.CardDaemon;
+import com.lingokids.mtg.factories.CardLoaderServiceFactory;
+import com.lingokids.mtg.factories.FilterServiceFactory;
+import com.lingokids.mtg.factories.GroupingServiceFactory;
+import com.lingokids.mtg.factories.IndexServiceFactory;
+import com.lingokids.mtg.factories.PrinterServiceFactory;
+import com.lingokids.mtg.factories.StorageServiceFactory;
+import com.lingokids.mtg.services.impl.APIAssemblerImpl;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * "mtg serve" keeps the cards in memory and answers the queries of the CLI until it's stopped.
+ *
+ */
+@Command(name = "serve",
+        mixinStandardHelpOptions = true,
+        description = {"Keeps the cards in memory and answers the queries of mtg until it's stopped (Ctrl+C).",
+                "Queries are forwarded to it while it's running."})
+public class ServeCommand implements Callable<Integer> {
+
+    @Option(names = {"--port"},
+            description = "Port on loopback (default: any free port)")
+    private int port;
+
+    @Option(names = {"-c", "--concurrency"},
+            description = "Number of concurrent requests if the cards have to be retrieved from the API (default: ${DEFAULT-VALUE})")
+    private int concurrency = APIAssemblerImpl.DEFAULT_CONCURRENCY;
+
+    @Option(names = {"-p", "--parallelism"},
+            description = "Number of threads filtering the cards of a query (default: ${DEFAULT-VALUE})")
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = {"-s", "--storage"},
+            description = "Where the cards are kept: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+    private StorageServiceFactory.Storage storage = StorageServiceFactory.Storage.SNAPSHOT;
+
+    @Override
+    public Integer call() throws Exception {
+        CardDaemon daemon = new CardDaemon(
+                CardLoaderServiceFactory.getCardLoaderServiceInstance(concurrency, storage),
+                StorageServiceFactory.getStorageServiceInstance(storage),
+                IndexServiceFactory.getIndexServiceInstance(),
+                FilterServiceFactory.getFilterServiceInstance(parallelism),
+                GroupingServiceFactory.getGroupingServiceInstance(),
+                PrinterServiceFactory.getPrinterServiceInstance());
+        daemon.start(port);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.stop();
+            stopped.countDown();
+        }));
+        stopped.await();
+
+        return 0;
+    }
+}
@@ -0,0 +1,272 @@
+package com.lingokids.mtg.daemon;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lingokids.mtg.filter.CardDictionary;
+import com.lingokids.mtg.filter.CardIndex;
+import com.lingokids.mtg.filter.FieldStatistics;
+import com.lingokids.mtg.filter.FilterPlan;
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.services.CardLoaderService;
+import com.lingokids.mtg.services.FilterService;
+import com.lingokids.mtg.services.GroupingService;
+import com.lingokids.mtg.services.IndexService;
+import com.lingokids.mtg.services.PrinterService;
+import com.lingokids.mtg.services.StorageService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resident server keeping all the cards in memory, so queries don't start a JVM nor read the cards.
+ *
+ * It listens on loopback only, the port is written to "mtg_cards.daemon" in $HOME so the CLI can
+ * find it. Queries are answered with the same JSON the CLI prints, filtered, grouped and with
+ * the properties asked for by the same services.
+ *
+ * HTTP API:
+ *
+ * POST /query?pretty=true|false  Body: the query as JSON. Result: JSON of the cards, 400 with
+ *                                the message if the query is not valid. The version of the cards
+ *                                that answered it is in the X-Cards-Version header.
+ * POST /reload                   Reads the cards again, after a refresh.
+ *
+ * If the version of the cards in the storage changed, because a refresh couldn't ask the daemon to
+ * reload them, they are read again before answering next query.
+ *
+ * When the cards are loaded their repeated values are interned in a {@link CardDictionary}, so
+ * they are kept once and filters compare them by identity. Then the bitmap index of the fields with few values is read, or built,
+ * with the words of the text fields, and statistics of the fields are computed. Filters on indexed fields (set, rarity, colors...)
+ * are resolved with the bitmaps, searches of words in the text only look at the cards having them,
+ * then the rest of the filters only check the cards selected, the most selective filters first.
+ *
+ */
+public class CardDaemon {
+
+    public static final String PORT_FILENAME = "mtg_cards.daemon";
+    public static final String VERSION_HEADER = "X-Cards-Version";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int THREADS = 4;
+
+    private final CardLoaderService cardLoaderService;
+    private final StorageService storageService;
+    private final IndexService indexService;
+    private final FilterService filterService;
+    private final GroupingService groupingService;
+    private final PrinterService printerService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Cards and their index are replaced together when cards are reloaded
+     */
+    private volatile Catalogue catalogue;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public CardDaemon(CardLoaderService cardLoaderService, FilterService filterService,
+                      GroupingService groupingService, PrinterService printerService) {
+        this(cardLoaderService, null, null, filterService, groupingService, printerService);
+    }
+
+    /**
+     * @param storageService Storage the cards are loaded from, to know their version. It can be null.
+     * @param indexService Service keeping the index of every version of the cards. If it's null
+     *                     or there is no storage the index is built every time cards are loaded.
+     */
+    public CardDaemon(CardLoaderService cardLoaderService, StorageService storageService, IndexService indexService,
+                      FilterService filterService, GroupingService groupingService, PrinterService printerService) {
+        this.cardLoaderService = cardLoaderService;
+        this.storageService = storageService;
+        this.indexService = indexService;
+        this.filterService = filterService;
+        this.groupingService = groupingService;
+        this.printerService = printerService;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * Loads the cards and starts listening
+     *
+     * @param port Port on loopback, 0 for any free port
+     */
+    public void start(int port) throws IOException {
+        reload();
+
+        // Small responses are sent at once instead of waiting for the ACK of the headers
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(THREADS);
+        server.setExecutor(executor);
+        server.createContext("/query", this::handleQuery);
+        server.createContext("/reload", this::handleReload);
+        server.start();
+
+        Path portPath = getPortPath();
+        Path temporary = portPath.resolveSibling(PORT_FILENAME + TEMPORARY_SUFFIX);
+        Files.write(temporary, Integer.toString(getPort()).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, portPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        System.err.println("Serving " + catalogue.cards.size() + " cards on port " + getPort());
+    }
+
+    public void stop() {
+        try {
+            Files.deleteIfExists(getPortPath());
+        } catch (IOException e) {
+            // The client ignores a port nobody listens on
+        }
+
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Reads all the cards from the storage, or from the API if there are none
+     */
+    public synchronized void reload() throws IOException {
+        String version = storageService != null ? storageService.getVersion() : null;
+        List<Card> cards = Collections.unmodifiableList(new ArrayList<>(
+                cardLoaderService.getCards(null, false, false, CardQuery.all())));
+        CardDictionary dictionary = new CardDictionary();
+        cards.forEach(dictionary::normalize);
+
+        CardIndex index = indexService != null ? indexService.getIndex(cards, version) : CardIndex.build(cards);
+        catalogue = new Catalogue(index, dictionary, version);
+    }
+
+    /**
+     * @return Version of the storage the cards were read from, null if it's unknown
+     */
+    public String getVersion() {
+        return catalogue.version;
+    }
+
+    /**
+     * Reloads the cards if the storage has another version. If they can't be read the cards
+     * already loaded keep answering, with their version.
+     */
+    private Catalogue getCatalogue() {
+        Catalogue current = catalogue;
+        if (storageService == null) {
+            return current;
+        }
+
+        try {
+            if (!Objects.equals(current.version, storageService.getVersion())) {
+                synchronized (this) {
+                    if (catalogue == current) {
+                        reload();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cards couldn't be reloaded: " + e.getMessage());
+        }
+        return catalogue;
+    }
+
+    /**
+     * @return The JSON the CLI would print for the query
+     * @throws IllegalArgumentException If a field can't be filtered or grouped
+     */
+    public String query(CardQuery query, boolean pretty) throws IOException {
+        return query(getCatalogue(), query, pretty);
+    }
+
+    private String query(Catalogue current, CardQuery query, boolean pretty) throws IOException {
+        FilterPlan plan = filterService.getPredicate(query.getFilters(), current.statistics, current.dictionary);
+
+        BitSet selected = current.index.select(plan);
+        List<Card> candidates = selected != null ? current.index.getCards(selected) : current.cards;
+        List<Card> cards = filterService.filter(candidates, plan.without(CardIndex.INDEXED_FIELDS));
+
+        Object result = groupingService.groupBy(cards, query.getGroupBy());
+        return printerService.format(result, query.getProperties(), pretty);
+    }
+
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            CardQuery query = objectMapper.readValue(body, CardQuery.class);
+            boolean pretty = "pretty=true".equals(exchange.getRequestURI().getQuery());
+            Catalogue current = getCatalogue();
+            String json = query(current, query, pretty);
+            if (current.version != null) {
+                exchange.getResponseHeaders().set(VERSION_HEADER, current.version);
+            }
+            respond(exchange, 200, json);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage());
+        } catch (RuntimeException | IOException e) {
+            respond(exchange, 500, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void handleReload(HttpExchange exchange) throws IOException {
+        try {
+            reload();
+            respond(exchange, 200, Integer.toString(catalogue.cards.size()));
+        } catch (RuntimeException | IOException e) {
+            respond(exchange, 500, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    static Path getPortPath() {
+        return Paths.get(System.getProperty("user.home"), PORT_FILENAME);
+    }
+
+    /**
+     * All the cards, their index, the dictionary they were normalized with, the statistics of their fields
+     * and the version of the storage they were read from
+     */
+    private static class Catalogue {
+        private final List<Card> cards;
+        private final CardIndex index;
+        private final CardDictionary dictionary;
+        private final FieldStatistics statistics;
+        private final String version;
+
+        private Catalogue(CardIndex index, CardDictionary dictionary, String version) {
+            this.cards = index.getCards();
+            this.index = index;
+            this.dictionary = dictionary;
+            this.statistics = FieldStatistics.of(cards);
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.lingokids.mtg.daemon;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lingokids.mtg.model.CardQuery;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Forwards queries to a running {@link CardDaemon}, found through the port file in $HOME.
+ *
+ * It uses the HTTP client of the JDK instead of OkHttp, which takes longer to start than
+ * answering the query.
+ *
+ */
+public class DaemonClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 200;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private final ObjectMapper objectMapper;
+
+    public DaemonClient() {
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * @return Result of the query or null if no daemon is running
+     * @throws IllegalArgumentException If the daemon rejected the query
+     * @throws IOException If the daemon failed answering the query
+     */
+    public Answer query(CardQuery query, boolean pretty) throws IOException {
+        URL url = getUrl("/query?pretty=" + pretty);
+        if (url == null) {
+            return null;
+        }
+
+        try {
+            HttpURLConnection connection = open(url);
+            try (OutputStream body = connection.getOutputStream()) {
+                objectMapper.writeValue(body, query);
+            }
+
+            int status = connection.getResponseCode();
+            if (status == 200) {
+                String version = connection.getHeaderField(CardDaemon.VERSION_HEADER);
+                return new Answer(readBody(connection.getInputStream()), version);
+            }
+
+            String message = readBody(connection.getErrorStream());
+            if (status == 400) {
+                throw new IllegalArgumentException(message);
+            }
+            throw new IOException("Daemon error: " + message);
+        } catch (ConnectException | SocketTimeoutException e) {
+            // Port file left by a daemon that is not running anymore
+            return null;
+        }
+    }
+
+    /**
+     * Asks the daemon to read the cards again. Nothing is done if no daemon is running.
+     */
+    public void reload() {
+        URL url = getUrl("/reload");
+        if (url == null) {
+            return;
+        }
+
+        try {
+            HttpURLConnection connection = open(url);
+            connection.getOutputStream().close();
+            int status = connection.getResponseCode();
+            if (status != 200) {
+                System.err.println("Daemon couldn't reload the cards, it will try again before answering next query: "
+                        + readBody(connection.getErrorStream()));
+            }
+        } catch (IOException e) {
+            // No daemon listening
+        }
+    }
+
+    private URL getUrl(String path) {
+        Path portPath = CardDaemon.getPortPath();
+        if (!Files.exists(portPath)) {
+            return null;
+        }
+
+        try {
+            int port = Integer.parseInt(new String(Files.readAllBytes(portPath), StandardCharsets.UTF_8).trim());
+            return new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, path);
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestProperty("Content-Type", "application/json");
+        return connection;
+    }
+
+    private String readBody(InputStream input) throws IOException {
+        if (input == null) {
+            return "";
+        }
+
+        try (InputStream body = input) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * JSON the daemon answered and the version of the cards it had loaded, that can be older
+     * than the cards in the storage
+     */
+    public static final class Answer {
+        private final String json;
+        private final String version;
+
+        private Answer(String json, String version) {
+            this.json = json;
+            this.version = version;
+        }
+
+        public String getJson() {
+            return json;
+        }
+
+        /**
+         * @return Version of the cards that answered, null if the daemon doesn't know it
+         */
+        public String getVersion() {
+            return version;
+        }
+    }
+}
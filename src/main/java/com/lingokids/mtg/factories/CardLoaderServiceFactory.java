@@ -1,17 +1,23 @@
 package com.lingokids.mtg.factories;
 
+import com.lingokids.mtg.http.HTTPClientProfile;
+import com.lingokids.mtg.http.RetryPolicy;
+import com.lingokids.mtg.http.TokenBucket;
 import com.lingokids.mtg.services.APIAssembler;
 import com.lingokids.mtg.services.CardLoaderService;
+import com.lingokids.mtg.services.FilterService;
 import com.lingokids.mtg.services.HTTPService;
+import com.lingokids.mtg.services.RefreshStateService;
 import com.lingokids.mtg.services.StorageService;
 import com.lingokids.mtg.services.impl.APIAssemblerImpl;
 import com.lingokids.mtg.services.impl.CardLoaderServiceImpl;
 import com.lingokids.mtg.services.impl.HTTPServiceImpl;
-import com.lingokids.mtg.services.impl.StorageServiceImpl;
+import com.lingokids.mtg.services.impl.RefreshStateServiceImpl;
+import okhttp3.OkHttpClient;
 
 /**
  * Dependency injection through a Factory Pattern.
- * It creates a new instance every time is called.
+ * It creates a new instance every time is called, only the HTTP client is shared.
  *
  */
 public class CardLoaderServiceFactory {
@@ -21,9 +27,27 @@ public class CardLoaderServiceFactory {
     private CardLoaderServiceFactory() {}
 
     public static CardLoaderService getCardLoaderServiceInstance() {
-        HTTPService httpService = new HTTPServiceImpl();
-        APIAssembler apiAssembler = new APIAssemblerImpl(httpService);
-        StorageService storageService = new StorageServiceImpl();
-        return new CardLoaderServiceImpl(storageService, apiAssembler);
+        return getCardLoaderServiceInstance(APIAssemblerImpl.DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param concurrency Maximum number of HTTP requests in flight when cards are retrieved from the API
+     */
+    public static CardLoaderService getCardLoaderServiceInstance(int concurrency) {
+        return getCardLoaderServiceInstance(concurrency, StorageServiceFactory.Storage.SNAPSHOT);
+    }
+
+    /**
+     * @param concurrency Maximum number of HTTP requests in flight when cards are retrieved from the API
+     * @param storage Where the cards are kept
+     */
+    public static CardLoaderService getCardLoaderServiceInstance(int concurrency, StorageServiceFactory.Storage storage) {
+        OkHttpClient client = HTTPClientFactory.getHTTPClientInstance(new HTTPClientProfile(concurrency));
+        HTTPService httpService = new HTTPServiceImpl(client, new TokenBucket(), new RetryPolicy());
+        RefreshStateService refreshStateService = new RefreshStateServiceImpl();
+        APIAssembler apiAssembler = new APIAssemblerImpl(httpService, concurrency, refreshStateService);
+        StorageService storageService = StorageServiceFactory.getStorageServiceInstance(storage);
+        FilterService filterService = FilterServiceFactory.getFilterServiceInstance();
+        return new CardLoaderServiceImpl(storageService, apiAssembler, refreshStateService, filterService);
     }
 }
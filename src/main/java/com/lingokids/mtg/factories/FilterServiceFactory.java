@@ -3,6 +3,8 @@ package com.lingokids.mtg.factories;
 import com.lingokids.mtg.services.FilterService;
 import com.lingokids.mtg.services.impl.FilterServiceImpl;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Dependency injection through a Factory Pattern.
  * It creates a new instance every time is called.
@@ -17,4 +19,11 @@ public class FilterServiceFactory {
     public static FilterService getFilterServiceInstance() {
         return new FilterServiceImpl();
     }
+
+    /**
+     * @param parallelism Number of threads filtering large lists of cards, 1 to filter them sequentially
+     */
+    public static FilterService getFilterServiceInstance(int parallelism) {
+        return new FilterServiceImpl(new ForkJoinPool(parallelism), FilterServiceImpl.DEFAULT_THRESHOLD);
+    }
 }
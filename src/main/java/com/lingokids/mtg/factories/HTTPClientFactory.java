@@ -0,0 +1,33 @@
+package com.lingokids.mtg.factories;
+
+import com.lingokids.mtg.http.HTTPClientProfile;
+import okhttp3.OkHttpClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unlike the other factories, it returns the same client every time is called with the same
+ * profile, so connections and threads are shared by every service making requests.
+ *
+ */
+public class HTTPClientFactory {
+
+    private static final Map<HTTPClientProfile, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Nobody should create an instance of the factory, so the constructor private.
+     */
+    private HTTPClientFactory() {}
+
+    public static OkHttpClient getHTTPClientInstance() {
+        return getHTTPClientInstance(new HTTPClientProfile());
+    }
+
+    /**
+     * @param profile Connection pool, protocols and compression of the client
+     */
+    public static OkHttpClient getHTTPClientInstance(HTTPClientProfile profile) {
+        return clients.computeIfAbsent(profile, HTTPClientProfile::newClient);
+    }
+}
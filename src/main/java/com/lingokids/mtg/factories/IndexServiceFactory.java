@@ -0,0 +1,20 @@
+package com.lingokids.mtg.factories;
+
+import com.lingokids.mtg.services.IndexService;
+import com.lingokids.mtg.services.impl.IndexServiceImpl;
+
+/**
+ * Dependency injection through a Factory Pattern.
+ * It creates a new instance every time is called.
+ *
+ */
+public class IndexServiceFactory {
+    /**
+     * Nobody should create an instance of the factory, so the constructor private.
+     */
+    private IndexServiceFactory() {}
+
+    public static IndexService getIndexServiceInstance() {
+        return new IndexServiceImpl();
+    }
+}
@@ -0,0 +1,20 @@
+package com.lingokids.mtg.factories;
+
+import com.lingokids.mtg.services.ResultCacheService;
+import com.lingokids.mtg.services.impl.ResultCacheServiceImpl;
+
+/**
+ * Dependency injection through a Factory Pattern.
+ * It creates a new instance every time is called.
+ *
+ */
+public class ResultCacheServiceFactory {
+    /**
+     * Nobody should create an instance of the factory, so the constructor private.
+     */
+    private ResultCacheServiceFactory() {}
+
+    public static ResultCacheService getResultCacheServiceInstance() {
+        return new ResultCacheServiceImpl();
+    }
+}
@@ -0,0 +1,47 @@
+package com.lingokids.mtg.factories;
+
+import com.lingokids.mtg.services.StorageService;
+import com.lingokids.mtg.services.impl.DatabaseStorageServiceImpl;
+import com.lingokids.mtg.services.impl.SnapshotStorageServiceImpl;
+import com.lingokids.mtg.services.impl.StorageServiceImpl;
+
+/**
+ * Dependency injection through a Factory Pattern.
+ * It creates a new instance every time is called.
+ *
+ */
+public class StorageServiceFactory {
+    /**
+     * Where the cards are kept
+     */
+    public enum Storage {
+        /**
+         * Binary snapshots partitioned by set, exported to a JSON file
+         */
+        SNAPSHOT,
+        /**
+         * Embedded database, filters are done in SQL
+         */
+        DATABASE
+    }
+
+    /**
+     * Nobody should create an instance of the factory, so the constructor private.
+     */
+    private StorageServiceFactory() {}
+
+    public static StorageService getStorageServiceInstance() {
+        return getStorageServiceInstance(Storage.SNAPSHOT);
+    }
+
+    public static StorageService getStorageServiceInstance(Storage storage) {
+        switch (storage) {
+            case DATABASE:
+                return new DatabaseStorageServiceImpl();
+
+            case SNAPSHOT:
+            default:
+                return new SnapshotStorageServiceImpl(new StorageServiceImpl());
+        }
+    }
+}
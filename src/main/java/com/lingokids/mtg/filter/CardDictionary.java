@@ -0,0 +1,148 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.ForeignName;
+import com.lingokids.mtg.model.Legal;
+import com.lingokids.mtg.model.Ruling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared dictionary of the values repeated by many cards, like set, rarity, artist, type, the
+ * colors, or the name and text of the reprints. Normalizing the cards when they are loaded
+ * replaces every value by one canonical string, and every list by one canonical unmodifiable
+ * list, so the heap keeps them once instead of once per card.
+ *
+ * The lowercase key of every canonical string is computed once, when it's added. Filters
+ * compiled with the dictionary look up the canonical strings of their values and compare
+ * references, without reading the text of the cards.
+ *
+ * It's not thread safe: cards are normalized by the thread loading them, filters can be
+ * compiled by any thread once they are loaded.
+ *
+ */
+public final class CardDictionary {
+
+    private static final String[] NONE = new String[0];
+
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<List<String>, List<String>> lists = new HashMap<>();
+    private final Map<String, String[]> variantsByKey = new HashMap<>();
+
+    /**
+     * Replaces the values of the interned fields of the card by canonical ones, and the repeated
+     * values of its legalities, rulings and foreign names
+     *
+     * @param card Card to be normalized, it's modified
+     */
+    public void normalize(Card card) {
+        card.setLayout(intern(card.getLayout()));
+        card.setName(intern(card.getName()));
+        card.setManaCost(intern(card.getManaCost()));
+        card.setColors(intern(card.getColors()));
+        card.setColorIdentity(intern(card.getColorIdentity()));
+        card.setType(intern(card.getType()));
+        card.setSupertypes(intern(card.getSupertypes()));
+        card.setTypes(intern(card.getTypes()));
+        card.setSubtypes(intern(card.getSubtypes()));
+        card.setRarity(intern(card.getRarity()));
+        card.setText(intern(card.getText()));
+        card.setOriginalText(intern(card.getOriginalText()));
+        card.setOriginalType(intern(card.getOriginalType()));
+        card.setFlavor(intern(card.getFlavor()));
+        card.setArtist(intern(card.getArtist()));
+        card.setNumber(intern(card.getNumber()));
+        card.setPower(intern(card.getPower()));
+        card.setToughness(intern(card.getToughness()));
+        card.setLoyalty(intern(card.getLoyalty()));
+        card.setWatermark(intern(card.getWatermark()));
+        card.setBorder(intern(card.getBorder()));
+        card.setReleaseDate(intern(card.getReleaseDate()));
+        card.setSet(intern(card.getSet()));
+        card.setSetName(intern(card.getSetName()));
+        card.setPrintings(intern(card.getPrintings()));
+
+        if (card.getLegalities() != null) {
+            for (Legal legal : card.getLegalities()) {
+                legal.setFormat(intern(legal.getFormat()));
+                legal.setLegality(intern(legal.getLegality()));
+            }
+        }
+        if (card.getRulings() != null) {
+            for (Ruling ruling : card.getRulings()) {
+                ruling.setDate(intern(ruling.getDate()));
+                ruling.setText(intern(ruling.getText()));
+            }
+        }
+        if (card.getForeignNames() != null) {
+            for (ForeignName foreignName : card.getForeignNames()) {
+                foreignName.setType(intern(foreignName.getType()));
+                foreignName.setLanguage(intern(foreignName.getLanguage()));
+            }
+        }
+    }
+
+    /**
+     * @return The canonical string equal to the value, null if the value is null
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String canonical = strings.putIfAbsent(value, value);
+        if (canonical != null) {
+            return canonical;
+        }
+
+        String key = value.toLowerCase();
+        String[] variants = variantsByKey.getOrDefault(key, NONE);
+        String[] newVariants = new String[variants.length + 1];
+        System.arraycopy(variants, 0, newVariants, 0, variants.length);
+        newVariants[variants.length] = value;
+        variantsByKey.put(key, newVariants);
+        return value;
+    }
+
+    /**
+     * @return The canonical unmodifiable list with the same canonical elements, null if the list is null
+     */
+    public List<String> intern(List<String> list) {
+        if (list == null) {
+            return null;
+        }
+
+        List<String> elements = new ArrayList<>(list.size());
+        for (String element : list) {
+            elements.add(intern(element));
+        }
+
+        List<String> canonical = Collections.unmodifiableList(elements);
+        List<String> previous = lists.putIfAbsent(elements, canonical);
+        return previous != null ? previous : canonical;
+    }
+
+    /**
+     * @param keys Values in lowercase
+     * @return Canonical strings whose lowercase is one of the keys
+     */
+    public String[] getVariants(Set<String> keys) {
+        List<String> variants = new ArrayList<>();
+        for (String key : keys) {
+            Collections.addAll(variants, variantsByKey.getOrDefault(key, NONE));
+        }
+        return variants.toArray(NONE);
+    }
+
+    /**
+     * @return Number of canonical strings
+     */
+    public int size() {
+        return strings.size();
+    }
+}
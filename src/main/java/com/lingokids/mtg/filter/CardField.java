@@ -0,0 +1,571 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.ColorMask;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Fields of a card that can be filtered and how the values of a filter are compared with them.
+ *
+ * Values are converted once, when the filter is compiled, so comparing a card doesn't create
+ * any object: text is compared ignoring case, numbers as primitives and prices as BigDecimal.
+ * Values that would never be equal to the text of a number (like "3" for cmc, it's "3.0")
+ * are discarded, so cards match the same values they matched comparing text.
+ *
+ * Fields with values repeated by many cards (set, rarity, artist, colors, name or text of the
+ * reprints...) are interned: cards normalized with a {@link CardDictionary} share one canonical
+ * string for every value, so filters compiled with the dictionary compare references instead
+ * of text.
+ *
+ * Colors and color identity are compared as a {@link ColorMask} and also support the operators
+ * {@link FilterOperator#ALL}, {@link FilterOperator#ANY} and {@link FilterOperator#WITHIN}.
+ *
+ * Text, original text and flavor also support {@link FilterOperator#CONTAINS}, to find cards
+ * whose text has some words instead of being equal to the value.
+ *
+ * Numbers, prices and the release date can also be compared with ranges and comparisons, see
+ * {@link RangeQuery}. They are compared by a key: numbers and prices in fixed point with
+ * {@link #FIXED_POINT_SCALE} decimals (rounded if they have more) and dates in days.
+ *
+ * Cards without the field don't match, except colorless cards are within any colors.
+ *
+ */
+public enum CardField {
+    ID("id", text(Card::getId)),
+    LAYOUT("layout", interned(Card::getLayout)),
+    NAME("name", interned(Card::getName)),
+    NAMES("names", list(Card::getNames)),
+    MANA_COST("manacost", interned(Card::getManaCost)),
+    CMC("cmc", ranged(decimal(Card::getCmc), CardField::cmc, CardField::fixedPointBound)),
+    COLORS("colors", colors(Card::getColors, Card::getColorMask)),
+    COLOR_IDENTITY("coloridentity", colors(Card::getColorIdentity, Card::getColorIdentityMask)),
+    TYPE("type", interned(Card::getType)),
+    SUPERTYPES("supertypes", internedList(Card::getSupertypes)),
+    TYPES("types", internedList(Card::getTypes)),
+    SUBTYPES("subtypes", internedList(Card::getSubtypes)),
+    RARITY("rarity", interned(Card::getRarity)),
+    TEXT("text", searchable(Card::getText)),
+    ORIGINAL_TEXT("originaltext", searchable(Card::getOriginalText)),
+    ORIGINAL_TYPE("originaltype", interned(Card::getOriginalType)),
+    FLAVOR("flavor", searchable(Card::getFlavor)),
+    ARTIST("artist", interned(Card::getArtist)),
+    NUMBER("number", interned(Card::getNumber)),
+    POWER("power", interned(Card::getPower)),
+    TOUGHNESS("toughness", interned(Card::getToughness)),
+    LOYALTY("loyalty", interned(Card::getLoyalty)),
+    MULTIVERSEID("multiverseid", rangedInteger(Card::getMultiverseid, -1)),
+    VARIATIONS("variations", list(Card::getVariations)),
+    IMAGE_NAME("imagename", text(Card::getImageName)),
+    WATERMARK("watermark", interned(Card::getWatermark)),
+    BORDER("border", interned(Card::getBorder)),
+    TIMESHIFTED("timeshifted", bool(Card::isTimeshifted)),
+    HAND("hand", rangedInteger(Card::getHand, 0)),
+    LIFE("life", rangedInteger(Card::getLife, 0)),
+    RESERVED("reserved", bool(Card::isReserved)),
+    RELEASE_DATE("releasedate", ranged(interned(Card::getReleaseDate), CardField::releaseDay, CardField::dayBound)),
+    STARTER("starter", bool(Card::isStarter)),
+    SET("set", interned(Card::getSet)),
+    SET_NAME("setname", interned(Card::getSetName)),
+    PRINTINGS("printings", internedList(Card::getPrintings)),
+    IMAGE_URL("imageurl", text(Card::getImageUrl)),
+    PRICE_HIGH("pricehigh", rangedPrice(Card::getPriceHigh, Card::getPriceHighFixedPoint)),
+    PRICE_MID("pricemid", rangedPrice(Card::getPriceMid, Card::getPriceMidFixedPoint)),
+    PRICE_LOW("pricelow", rangedPrice(Card::getPriceLow, Card::getPriceLowFixedPoint)),
+    ONLINE_PRICE_HIGH("onlinepricehigh", rangedPrice(Card::getOnlinePriceHigh, Card::getOnlinePriceHighFixedPoint)),
+    ONLINE_PRICE_MID("onlinepricemid", rangedPrice(Card::getOnlinePriceMid, Card::getOnlinePriceMidFixedPoint)),
+    ONLINE_PRICE_LOW("onlinepricelow", rangedPrice(Card::getOnlinePriceLow, Card::getOnlinePriceLowFixedPoint)),
+    LEGALITIES("legalities", unsupported()),
+    RULINGS("rulings", unsupported()),
+    FOREIGN_NAMES("foreignnames", unsupported());
+
+    private static final String TRUE = "true";
+    private static final String FALSE = "false";
+
+    /**
+     * Relative cost of comparing a card, to check cheap fields first
+     */
+    private static final int PRIMITIVE_COST = 1;
+    private static final int OBJECT_COST = 2;
+    private static final int LIST_COST = 4;
+
+    /**
+     * Decimals of the keys of numbers and prices compared with ranges
+     */
+    public static final int FIXED_POINT_SCALE = Card.FIXED_POINT_SCALE;
+    private static final double FIXED_POINT = 10_000;
+
+    private static final Map<String, CardField> BY_KEY = new HashMap<>();
+
+    static {
+        for (CardField field : values()) {
+            BY_KEY.put(field.key, field);
+        }
+    }
+
+    private final String key;
+    private final Comparison comparison;
+
+    CardField(String key, Comparison comparison) {
+        this.key = key;
+        this.comparison = comparison;
+    }
+
+    /**
+     * @return Name of the field in lowercase, like it's written in the filters
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return Relative cost of comparing the field of a card with the values of a filter
+     */
+    public int getCost() {
+        return comparison.cost;
+    }
+
+    /**
+     * @return False for the fields that can't be filtered
+     */
+    public boolean isFilterable() {
+        return comparison.compiler != null;
+    }
+
+    /**
+     * Value of the field as it's compared: text in lowercase and lists with their elements in
+     * lowercase and sorted, so two cards have the same value if the same filters match them.
+     *
+     * @return The value or null if the card doesn't have the field or it can't be filtered
+     */
+    public Object getValue(Card card) {
+        return comparison.value.apply(card);
+    }
+
+    /**
+     * @param name Name of the field (case-insensitive)
+     * @return The field
+     * @throws IllegalArgumentException If the card has no field with that name
+     */
+    public static CardField of(String name) {
+        CardField field = BY_KEY.get(name.toLowerCase());
+        if (field == null) {
+            throw new IllegalArgumentException("Field '" + name + "' does not exist for filtering.");
+        }
+        return field;
+    }
+
+    /**
+     * @return True if {@link CardDictionary#normalize(Card)} replaces the values of the field by canonical strings
+     */
+    public boolean isInterned() {
+        return comparison.identityCompiler != null;
+    }
+
+    /**
+     * @return True if the field can be compared with ranges and comparisons
+     */
+    public boolean isRanged() {
+        return comparison.key != null;
+    }
+
+    /**
+     * @return Key sorting the cards by the field, like ranges compare it. Long.MIN_VALUE if the
+     * card doesn't have the field, 0 if the field can't be compared with ranges.
+     */
+    public long getRangeKey(Card card) {
+        return isRanged() ? comparison.key.applyAsLong(card) : 0;
+    }
+
+    /**
+     * @param name Name of the field, as the user wrote it, for the error message
+     * @param values Values of the filter in lowercase
+     * @return Predicate true for the cards whose field is one of the values
+     * @throws IllegalArgumentException If the field can't be filtered
+     */
+    public Predicate<Card> compile(String name, Set<String> values) {
+        return compile(name, values, null);
+    }
+
+    /**
+     * @param dictionary Dictionary the cards were normalized with, interned fields are compared by
+     *                   identity with its canonical strings. If it's null they are compared as text.
+     * @see #compile(String, Set)
+     */
+    public Predicate<Card> compile(String name, Set<String> values, CardDictionary dictionary) {
+        return compile(name, FilterOperator.EQUALS, values, dictionary);
+    }
+
+    /**
+     * @param operator How the values are compared with the field
+     * @throws IllegalArgumentException If the field can't be filtered or not with that operator
+     * @see #compile(String, Set, CardDictionary)
+     */
+    public Predicate<Card> compile(String name, FilterOperator operator, Set<String> values, CardDictionary dictionary) {
+        if (!isFilterable()) {
+            throw new IllegalArgumentException("Field '" + name + "' not supported for filtering.");
+        }
+        if (isRanged() && (operator.isComparison() || values.stream().anyMatch(FilterOperator::isRange))) {
+            return RangeQuery.compile(name, operator, values, comparison.key, comparison.bound);
+        }
+        if (operator != FilterOperator.EQUALS) {
+            Function<Set<String>, Predicate<Card>> compiler = comparison.operators.get(operator);
+            if (compiler == null) {
+                throw new IllegalArgumentException("Operator '" + operator.getKey() + "' not supported for field '" + name + "'.");
+            }
+            return compiler.apply(values);
+        }
+        if (dictionary != null && isInterned()) {
+            return comparison.identityCompiler.apply(values, dictionary);
+        }
+        return comparison.compiler.apply(values);
+    }
+
+    /**
+     * How a field is read and compared with the values of the filters
+     */
+    private static final class Comparison {
+        private final int cost;
+        private final Function<Card, Object> value;
+        private final Function<Set<String>, Predicate<Card>> compiler;
+        private final BiFunction<Set<String>, CardDictionary, Predicate<Card>> identityCompiler;
+        private final Map<FilterOperator, Function<Set<String>, Predicate<Card>>> operators;
+        private final ToLongFunction<Card> key;
+        private final Function<String, BigDecimal> bound;
+
+        private Comparison(int cost, Function<Card, Object> value, Function<Set<String>, Predicate<Card>> compiler) {
+            this(cost, value, compiler, null);
+        }
+
+        private Comparison(int cost, Function<Card, Object> value, Function<Set<String>, Predicate<Card>> compiler,
+                           BiFunction<Set<String>, CardDictionary, Predicate<Card>> identityCompiler) {
+            this(cost, value, compiler, identityCompiler, Collections.emptyMap());
+        }
+
+        /**
+         * @param operators Compilers of the operators other than {@link FilterOperator#EQUALS}
+         */
+        private Comparison(int cost, Function<Card, Object> value, Function<Set<String>, Predicate<Card>> compiler,
+                           BiFunction<Set<String>, CardDictionary, Predicate<Card>> identityCompiler,
+                           Map<FilterOperator, Function<Set<String>, Predicate<Card>>> operators) {
+            this(cost, value, compiler, identityCompiler, operators, null, null);
+        }
+
+        /**
+         * @param key Key of the cards compared with ranges, null if the field has no ranges
+         * @param bound Converts a bound of a range to the units of the key
+         */
+        private Comparison(int cost, Function<Card, Object> value, Function<Set<String>, Predicate<Card>> compiler,
+                           BiFunction<Set<String>, CardDictionary, Predicate<Card>> identityCompiler,
+                           Map<FilterOperator, Function<Set<String>, Predicate<Card>>> operators,
+                           ToLongFunction<Card> key, Function<String, BigDecimal> bound) {
+            this.cost = cost;
+            this.value = value;
+            this.compiler = compiler;
+            this.identityCompiler = identityCompiler;
+            this.operators = operators;
+            this.key = key;
+            this.bound = bound;
+        }
+    }
+
+    private static Comparison unsupported() {
+        return new Comparison(OBJECT_COST, card -> null, null);
+    }
+
+    private static Comparison text(Function<Card, String> accessor) {
+        return new Comparison(OBJECT_COST, card -> {
+            String value = accessor.apply(card);
+            return value != null ? value.toLowerCase() : null;
+        }, values -> {
+            String[] keys = values.toArray(new String[0]);
+            return card -> matches(accessor.apply(card), keys);
+        });
+    }
+
+    /**
+     * Lists match if all their elements are values and they have as many elements as values
+     */
+    private static Comparison list(Function<Card, List<String>> accessor) {
+        return new Comparison(LIST_COST, card -> {
+            List<String> list = accessor.apply(card);
+            return list != null && !list.isEmpty()
+                    ? list.stream().map(element -> String.valueOf(element).toLowerCase()).sorted().collect(Collectors.toList())
+                    : null;
+        }, values -> {
+            String[] keys = values.toArray(new String[0]);
+            return card -> {
+                List<String> list = accessor.apply(card);
+                if (list == null || list.size() != keys.length) {
+                    return false;
+                }
+                for (int i = 0; i < list.size(); i++) {
+                    if (!matches(list.get(i), keys)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        });
+    }
+
+    /**
+     * Text repeated by many cards, normalized cards share a canonical string for every value
+     */
+    private static Comparison interned(Function<Card, String> accessor) {
+        Comparison text = text(accessor);
+        return new Comparison(text.cost, text.value, text.compiler, (values, dictionary) -> {
+            String[] variants = dictionary.getVariants(values);
+            return card -> isOneOf(accessor.apply(card), variants);
+        });
+    }
+
+    /**
+     * Lists whose elements are repeated by many cards, normalized cards share canonical strings
+     */
+    private static Comparison internedList(Function<Card, List<String>> accessor) {
+        Comparison list = list(accessor);
+        return new Comparison(list.cost, list.value, list.compiler, (values, dictionary) -> {
+            int size = values.size();
+            String[] variants = dictionary.getVariants(values);
+            return card -> {
+                List<String> elements = accessor.apply(card);
+                if (elements == null || elements.size() != size) {
+                    return false;
+                }
+                for (int i = 0; i < elements.size(); i++) {
+                    if (!isOneOf(elements.get(i), variants)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        });
+    }
+
+    /**
+     * Same comparison of the values, plus ranges compared by the key of the cards
+     */
+    private static Comparison ranged(Comparison comparison, ToLongFunction<Card> key, Function<String, BigDecimal> bound) {
+        return new Comparison(comparison.cost, comparison.value, comparison.compiler, comparison.identityCompiler,
+                comparison.operators, key, bound);
+    }
+
+    /**
+     * @param missing Value of the cards without the field, they are not in any range
+     */
+    private static Comparison rangedInteger(ToIntFunction<Card> accessor, int missing) {
+        return ranged(integer(accessor), card -> {
+            int number = accessor.applyAsInt(card);
+            return number != missing ? number : RangeQuery.MISSING;
+        }, BigDecimal::new);
+    }
+
+    /**
+     * @param fixedPoint Price in fixed point of the card, computed when the price is set
+     */
+    private static Comparison rangedPrice(Function<Card, BigDecimal> accessor, ToLongFunction<Card> fixedPoint) {
+        return ranged(price(accessor), card -> {
+            long price = fixedPoint.applyAsLong(card);
+            return price != Card.NO_PRICE ? price : RangeQuery.MISSING;
+        }, CardField::fixedPointBound);
+    }
+
+    /**
+     * Numbers with up to {@link #FIXED_POINT_SCALE} decimals are exact in a double, once rounded
+     */
+    private static long fixedPoint(double number) {
+        return Math.round(number * FIXED_POINT);
+    }
+
+    private static BigDecimal fixedPointBound(String bound) {
+        return new BigDecimal(bound).movePointRight(FIXED_POINT_SCALE);
+    }
+
+    /**
+     * A card without mana cost and without cmc, like a land, is not in any range
+     */
+    private static long cmc(Card card) {
+        return card.getCmc() != 0 || card.getManaCost() != null ? fixedPoint(card.getCmc()) : RangeQuery.MISSING;
+    }
+
+    private static long releaseDay(Card card) {
+        return card.getReleaseDay() != Card.NO_RELEASE_DAY ? card.getReleaseDay() : RangeQuery.MISSING;
+    }
+
+    private static BigDecimal dayBound(String bound) {
+        int day = Card.toEpochDay(bound);
+        if (day == Card.NO_RELEASE_DAY) {
+            throw new DateTimeException("Invalid date " + bound);
+        }
+        return BigDecimal.valueOf(day);
+    }
+
+    /**
+     * Long text repeated by the reprints, where cards can also be searched by some of its words
+     */
+    private static Comparison searchable(Function<Card, String> accessor) {
+        Comparison text = interned(accessor);
+        return new Comparison(text.cost, text.value, text.compiler, text.identityCompiler,
+                Collections.singletonMap(FilterOperator.CONTAINS, values -> new TextQuery(accessor, values)));
+    }
+
+    /**
+     * Colors are compared with the mask of the card, set with its list. Filters with values that
+     * are not colors don't match any card, like comparing the lists: no card has them.
+     * The lists are still interned by the dictionary, but filters don't need it.
+     */
+    private static Comparison colors(Function<Card, List<String>> accessor, ToIntFunction<Card> mask) {
+        Function<Set<String>, Predicate<Card>> equals = values -> {
+            int keys = ColorMask.of(values);
+            return (keys & ColorMask.OTHER) != 0 ? card -> false : card -> mask.applyAsInt(card) == keys;
+        };
+
+        Map<FilterOperator, Function<Set<String>, Predicate<Card>>> operators = new EnumMap<>(FilterOperator.class);
+        operators.put(FilterOperator.ALL, values -> {
+            int keys = ColorMask.of(values);
+            return (keys & ColorMask.OTHER) != 0 ? card -> false : card -> (mask.applyAsInt(card) & keys) == keys;
+        });
+        operators.put(FilterOperator.ANY, values -> {
+            int keys = ColorMask.of(values) & ~ColorMask.OTHER;
+            return card -> (mask.applyAsInt(card) & keys) != 0;
+        });
+        operators.put(FilterOperator.WITHIN, values -> {
+            int excluded = ~(ColorMask.of(values) & ~ColorMask.OTHER);
+            return card -> (mask.applyAsInt(card) & excluded) == 0;
+        });
+
+        return new Comparison(PRIMITIVE_COST, list(accessor).value, equals,
+                (values, dictionary) -> equals.apply(values), operators);
+    }
+
+    /**
+     * Compares references only, the value must be a canonical string to be found
+     */
+    private static boolean isOneOf(String value, String[] canonicalValues) {
+        for (String canonical : canonicalValues) {
+            if (canonical == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String value, String[] keys) {
+        if (value == null) {
+            return false;
+        }
+        for (String key : keys) {
+            if (key.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Doubles are compared bit by bit, like their text does: 0.0 and -0.0 are different
+     */
+    private static Comparison decimal(ToDoubleFunction<Card> accessor) {
+        return new Comparison(PRIMITIVE_COST, accessor::applyAsDouble, values -> {
+            long[] keys = values.stream()
+                    .filter(value -> {
+                        try {
+                            return Double.toString(Double.parseDouble(value)).equals(value);
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    })
+                    .mapToLong(value -> Double.doubleToLongBits(Double.parseDouble(value)))
+                    .toArray();
+
+            return card -> {
+                long bits = Double.doubleToLongBits(accessor.applyAsDouble(card));
+                for (long key : keys) {
+                    if (key == bits) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        });
+    }
+
+    private static Comparison integer(ToIntFunction<Card> accessor) {
+        return new Comparison(PRIMITIVE_COST, accessor::applyAsInt, values -> {
+            int[] keys = values.stream()
+                    .filter(value -> {
+                        try {
+                            return Integer.toString(Integer.parseInt(value)).equals(value);
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    })
+                    .mapToInt(Integer::parseInt)
+                    .toArray();
+
+            return card -> {
+                int number = accessor.applyAsInt(card);
+                for (int key : keys) {
+                    if (key == number) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        });
+    }
+
+    private static Comparison bool(Predicate<Card> accessor) {
+        return new Comparison(PRIMITIVE_COST, accessor::test, values -> {
+            boolean matchesTrue = values.contains(TRUE);
+            boolean matchesFalse = values.contains(FALSE);
+            return card -> accessor.test(card) ? matchesTrue : matchesFalse;
+        });
+    }
+
+    /**
+     * Prices are equal if they have the same digits and scale, like their text
+     */
+    private static Comparison price(Function<Card, BigDecimal> accessor) {
+        return new Comparison(OBJECT_COST, accessor::apply, values -> {
+            BigDecimal[] keys = values.stream()
+                    .filter(value -> {
+                        try {
+                            return new BigDecimal(value).toString().equals(value);
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    })
+                    .map(BigDecimal::new)
+                    .toArray(BigDecimal[]::new);
+
+            return card -> {
+                BigDecimal price = accessor.apply(card);
+                if (price == null) {
+                    return false;
+                }
+                for (BigDecimal key : keys) {
+                    if (key.equals(price)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        });
+    }
+}
@@ -0,0 +1,178 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Inverted index of the fields with few distinct values: for every value, a bitmap with the
+ * positions of the cards having it.
+ *
+ * Every value is represented by the position of the first card having it. A filter selects the
+ * bitmaps of the values whose representative card it matches, so the index matches exactly the
+ * same cards the filter does, without knowing how the field is compared. Filters on several
+ * indexed fields are resolved by OR of the bitmaps of their values and AND of the fields, before
+ * looking at any other card.
+ *
+ * Cards without the field have a bitmap too, with the first of them as representative: every
+ * filter matches all of them or none, and some do match them, like colorless cards within any
+ * colors. Filters of indexed fields are not checked again, so these cards must be selected here.
+ *
+ * Text fields have a {@link TextIndex} of their words instead. Filters searching words in them
+ * select the cards having all the words, and are still checked on those cards for the order.
+ * Number and date fields have a {@link RangeIndex}, so ranges and comparisons select their cards
+ * by binary search.
+ *
+ */
+public final class CardIndex {
+
+    public static final Set<CardField> INDEXED_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            CardField.SET, CardField.RARITY, CardField.LAYOUT, CardField.BORDER,
+            CardField.TYPES, CardField.SUPERTYPES, CardField.COLORS));
+
+    public static final Set<CardField> TEXT_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            CardField.TEXT, CardField.ORIGINAL_TEXT, CardField.FLAVOR));
+
+    public static final Set<CardField> RANGE_FIELDS = Collections.unmodifiableSet(
+            EnumSet.allOf(CardField.class).stream().filter(CardField::isRanged)
+                    .collect(Collectors.toCollection(() -> EnumSet.noneOf(CardField.class))));
+
+    private final List<Card> cards;
+    private final Map<CardField, Map<Integer, BitSet>> bitmaps;
+    private final Map<CardField, TextIndex> texts;
+    private final Map<CardField, RangeIndex> ranges;
+
+    /**
+     * @param cards Cards indexed, in the same order they were when the bitmaps were built
+     * @param bitmaps For every indexed field, bitmap of the cards by position of the representative card
+     * @param texts For every text field, index of its words
+     * @param ranges For every number or date field, cards sorted by the field
+     */
+    public CardIndex(List<Card> cards, Map<CardField, Map<Integer, BitSet>> bitmaps, Map<CardField, TextIndex> texts,
+                     Map<CardField, RangeIndex> ranges) {
+        this.cards = cards;
+        this.bitmaps = bitmaps;
+        this.texts = texts;
+        this.ranges = ranges;
+    }
+
+    /**
+     * @param cards Cards to be indexed, they are identified by their position
+     * @return Index of all the {@link #INDEXED_FIELDS}, {@link #TEXT_FIELDS} and {@link #RANGE_FIELDS}
+     */
+    public static CardIndex build(List<Card> cards) {
+        Map<CardField, Map<Integer, BitSet>> bitmaps = new EnumMap<>(CardField.class);
+
+        for (CardField field : INDEXED_FIELDS) {
+            Map<Object, Integer> representatives = new HashMap<>();
+            Map<Integer, BitSet> fieldBitmaps = new HashMap<>();
+
+            for (int position = 0; position < cards.size(); position++) {
+                Object value = field.getValue(cards.get(position));
+                Integer representative = representatives.putIfAbsent(value, position);
+                if (representative == null) {
+                    representative = position;
+                }
+                fieldBitmaps.computeIfAbsent(representative, key -> new BitSet(cards.size())).set(position);
+            }
+
+            bitmaps.put(field, fieldBitmaps);
+        }
+
+        Map<CardField, TextIndex> texts = new EnumMap<>(CardField.class);
+        for (CardField field : TEXT_FIELDS) {
+            texts.put(field, TextIndex.build(cards, card -> (String) field.getValue(card)));
+        }
+
+        Map<CardField, RangeIndex> ranges = new EnumMap<>(CardField.class);
+        for (CardField field : RANGE_FIELDS) {
+            ranges.put(field, RangeIndex.build(cards, field::getRangeKey));
+        }
+
+        return new CardIndex(cards, bitmaps, texts, ranges);
+    }
+
+    public List<Card> getCards() {
+        return cards;
+    }
+
+    /**
+     * @return Bitmaps of the field by position of the representative card, empty if the field is not indexed
+     */
+    public Map<Integer, BitSet> getBitmaps(CardField field) {
+        return bitmaps.getOrDefault(field, Collections.emptyMap());
+    }
+
+    /**
+     * @return Index of the words of the field, null if it's not a text field
+     */
+    public TextIndex getText(CardField field) {
+        return texts.get(field);
+    }
+
+    /**
+     * @return Cards sorted by the field, null if it's not a number or date field
+     */
+    public RangeIndex getRange(CardField field) {
+        return ranges.get(field);
+    }
+
+    /**
+     * @param plan Filters of the query
+     * @return Positions of the cards matching the filters of the indexed fields and the ranges,
+     * and having the words searched in text fields, or null if none of the filters can use the index
+     */
+    public BitSet select(FilterPlan plan) {
+        BitSet selected = null;
+
+        List<CardField> fields = plan.getFields();
+        List<Predicate<Card>> filters = plan.getFilters();
+        for (int i = 0; i < fields.size(); i++) {
+            Predicate<Card> filter = filters.get(i);
+            BitSet matching;
+            if (bitmaps.containsKey(fields.get(i))) {
+                matching = new BitSet(cards.size());
+                for (Map.Entry<Integer, BitSet> bitmap : bitmaps.get(fields.get(i)).entrySet()) {
+                    if (filter.test(cards.get(bitmap.getKey()))) {
+                        matching.or(bitmap.getValue());
+                    }
+                }
+            } else if (texts.containsKey(fields.get(i)) && filter instanceof TextQuery) {
+                matching = texts.get(fields.get(i)).select((TextQuery) filter, cards.size());
+            } else if (ranges.containsKey(fields.get(i)) && filter instanceof RangeQuery) {
+                matching = ranges.get(fields.get(i)).select((RangeQuery) filter, cards.size());
+            } else {
+                continue;
+            }
+
+            if (selected == null) {
+                selected = matching;
+            } else {
+                selected.and(matching);
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * @return Cards in the positions, in order
+     */
+    public List<Card> getCards(BitSet positions) {
+        List<Card> selected = new ArrayList<>(positions.cardinality());
+        for (int position = positions.nextSetBit(0); position >= 0; position = positions.nextSetBit(position + 1)) {
+            selected.add(cards.get(position));
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,84 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Number of cards having every field and number of distinct values of the field, computed once
+ * when the cards are loaded. They estimate which fraction of the cards pass a filter, so the
+ * filters discarding more cards for less work are checked first.
+ *
+ * Values are assumed to be uniformly distributed: a filter with k of the d values of a field
+ * keeps k / d of the cards having the field.
+ *
+ */
+public final class FieldStatistics {
+
+    private final int cards;
+    private final Map<CardField, Integer> present = new EnumMap<>(CardField.class);
+    private final Map<CardField, Integer> distinct = new EnumMap<>(CardField.class);
+
+    private FieldStatistics(int cards) {
+        this.cards = cards;
+    }
+
+    /**
+     * @param cards All the cards that are going to be filtered
+     * @return Statistics of all the fields that can be filtered
+     */
+    public static FieldStatistics of(Collection<Card> cards) {
+        FieldStatistics statistics = new FieldStatistics(cards.size());
+
+        for (CardField field : CardField.values()) {
+            if (!field.isFilterable()) {
+                continue;
+            }
+
+            Set<Object> values = new HashSet<>();
+            int present = 0;
+            for (Card card : cards) {
+                Object value = field.getValue(card);
+                if (value != null) {
+                    values.add(value);
+                    present++;
+                }
+            }
+
+            statistics.present.put(field, present);
+            statistics.distinct.put(field, values.size());
+        }
+
+        return statistics;
+    }
+
+    public int getCards() {
+        return cards;
+    }
+
+    /**
+     * @return Number of distinct values of the field, 0 if the field is not known
+     */
+    public int getDistinctValues(CardField field) {
+        return distinct.getOrDefault(field, 0);
+    }
+
+    /**
+     * @param field Field filtered
+     * @param values Number of values of the filter
+     * @return Estimated fraction of the cards matching the filter, between 0 and 1
+     */
+    public double estimateSelectivity(CardField field, int values) {
+        int distinctValues = getDistinctValues(field);
+        if (cards == 0 || distinctValues == 0) {
+            return 0;
+        }
+
+        double withField = (double) present.get(field) / cards;
+        return withField * Math.min(1.0, (double) values / distinctValues);
+    }
+}
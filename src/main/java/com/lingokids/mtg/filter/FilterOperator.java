@@ -0,0 +1,98 @@
+package com.lingokids.mtg.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How the values of a filter are compared with a field. It's written after the name of the
+ * field, separated by a colon: "colors:all=red,blue". Without operator values are compared
+ * with {@link #EQUALS}.
+ *
+ * Comparisons are written between the field and the value instead: "cmc>=2", "pricemid<1.50".
+ * Numbers and dates can also be compared with an inclusive range of {@link #EQUALS}: "cmc=2..4",
+ * open at any end ("2.." or "..4").
+ *
+ */
+public enum FilterOperator {
+    /**
+     * The field is one of the values, lists have exactly the values
+     */
+    EQUALS(""),
+    /**
+     * The list has all the values, and maybe others
+     */
+    ALL("all"),
+    /**
+     * The list has at least one of the values
+     */
+    ANY("any"),
+    /**
+     * All the elements of the list are values, empty lists too (like a colorless card in any commander deck)
+     */
+    WITHIN("within"),
+    /**
+     * The text has the words of one of the values in the same order, the last one can end with *
+     * to match any word starting with it
+     */
+    CONTAINS("contains"),
+    GREATER(">"),
+    GREATER_OR_EQUAL(">="),
+    LESS("<"),
+    LESS_OR_EQUAL("<=");
+
+    public static final char SEPARATOR = ':';
+
+    /**
+     * Separator of the bounds of a range
+     */
+    public static final String RANGE = "..";
+
+    private static final Map<String, FilterOperator> BY_KEY = new HashMap<>();
+
+    static {
+        for (FilterOperator operator : values()) {
+            BY_KEY.put(operator.key, operator);
+        }
+    }
+
+    private final String key;
+
+    FilterOperator(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return Name of the operator in lowercase, like it's written in the filters
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return True for the operators comparing numbers or dates with a bound
+     */
+    public boolean isComparison() {
+        return this == GREATER || this == GREATER_OR_EQUAL || this == LESS || this == LESS_OR_EQUAL;
+    }
+
+    /**
+     * @param value Value of a filter
+     * @return True if it's a range of values, like "2..4"
+     */
+    public static boolean isRange(String value) {
+        return value.contains(RANGE);
+    }
+
+    /**
+     * @param name Name of the operator (case-insensitive), empty for {@link #EQUALS}
+     * @return The operator
+     * @throws IllegalArgumentException If there is no operator with that name
+     */
+    public static FilterOperator of(String name) {
+        FilterOperator operator = BY_KEY.get(name.toLowerCase());
+        if (operator == null) {
+            throw new IllegalArgumentException("Operator '" + name + "' does not exist for filtering.");
+        }
+        return operator;
+    }
+}
@@ -0,0 +1,181 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * The filters of a query compiled once, before reading any card: fields are resolved, values are
+ * converted to what the fields are compared with and invalid filters are rejected.
+ *
+ * Testing a card checks the filters one after the other, in a single pass, stopping at the first
+ * filter that fails and without creating any object.
+ *
+ */
+public final class FilterPlan implements Predicate<Card> {
+
+    private static final double DEFAULT_SELECTIVITY = 0.5;
+    private static final double MIN_DISCARDED = 1e-6;
+
+    private static final FilterPlan EMPTY = new FilterPlan(Collections.emptyList(), Collections.emptyList());
+
+    private final CardField[] fields;
+    private final List<Predicate<Card>> filters;
+
+    private FilterPlan(List<CardField> fields, List<Predicate<Card>> filters) {
+        this.fields = fields.toArray(new CardField[0]);
+        this.filters = new ArrayList<>(filters);
+    }
+
+    /**
+     * @param filters Map of filters (field, comma separated values), it can be null. The field can
+     *                be followed by an operator, like "colors:any", or a comparison, like "cmc&gt;"
+     *                for cmc&gt;=2 or "cmc&gt;2" without value. Filters without values are ignored.
+     * @return Plan matching the cards that pass all the filters, checking cheap fields first
+     * @throws IllegalArgumentException If a field doesn't exist or can't be filtered
+     */
+    public static FilterPlan compile(Map<String, String> filters) {
+        return compile(filters, null, null);
+    }
+
+    /**
+     * Filters are ordered by the cost of checking them divided by the fraction of cards they
+     * discard, so every card is checked with as little work as possible until a filter fails.
+     *
+     * @param filters Map of filters (field, comma separated values), it can be null.
+     *                Filters without values are ignored.
+     * @param statistics Statistics of the cards to estimate how many cards every filter keeps.
+     *                   If it's null, or the filter has an operator, half of the cards are supposed to pass it.
+     * @param dictionary Dictionary the cards were normalized with, to compare interned fields by
+     *                   identity. It must be null if the cards were not normalized.
+     * @return Plan matching the cards that pass all the filters
+     * @throws IllegalArgumentException If a field or operator doesn't exist, or the field can't be filtered with it
+     */
+    public static FilterPlan compile(Map<String, String> filters, FieldStatistics statistics, CardDictionary dictionary) {
+        if (filters == null || filters.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<Step> steps = new ArrayList<>();
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            String name = filter.getKey();
+            String value = filter.getValue();
+            String fieldName = CardQuery.getFieldName(name);
+            FilterOperator operator = FilterOperator.EQUALS;
+
+            int separator = fieldName.length();
+            if (separator < name.length() && name.charAt(separator) == FilterOperator.SEPARATOR) {
+                operator = FilterOperator.of(name.substring(separator + 1));
+            } else if (separator < name.length()) {
+                // "cmc>=2" is split by the = in "cmc>" and "2", "cmc>2" has no value
+                String bound = name.substring(separator + 1);
+                operator = FilterOperator.of(name.charAt(separator) + (bound.isEmpty() ? "=" : ""));
+                value = bound.isEmpty() ? value : bound;
+            }
+
+            CardField field = CardField.of(fieldName);
+            Set<String> values = convertArrayToSet(value);
+
+            Predicate<Card> predicate = field.compile(fieldName, operator, values, dictionary);
+            if (!values.isEmpty()) {
+                double selectivity = statistics != null && operator == FilterOperator.EQUALS && !(predicate instanceof RangeQuery)
+                        ? statistics.estimateSelectivity(field, values.size())
+                        : DEFAULT_SELECTIVITY;
+                steps.add(new Step(field, predicate, field.getCost() / Math.max(1.0 - selectivity, MIN_DISCARDED)));
+            }
+        }
+        steps.sort(Comparator.comparingDouble(step -> step.rank));
+
+        return new FilterPlan(
+                steps.stream().map(step -> step.field).collect(Collectors.toList()),
+                steps.stream().map(step -> step.predicate).collect(Collectors.toList()));
+    }
+
+    /**
+     * @return Fields filtered, in the order they are checked
+     */
+    public List<CardField> getFields() {
+        return Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    /**
+     * @return Compiled filters, in the same order as {@link #getFields()}
+     */
+    List<Predicate<Card>> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
+    /**
+     * @param fields Fields whose filters are already applied, for example by an index
+     * @return Plan with the rest of the filters, in the same order
+     */
+    public FilterPlan without(Set<CardField> fields) {
+        List<CardField> keptFields = new ArrayList<>();
+        List<Predicate<Card>> keptFilters = new ArrayList<>();
+        for (int i = 0; i < this.fields.length; i++) {
+            if (!fields.contains(this.fields[i])) {
+                keptFields.add(this.fields[i]);
+                keptFilters.add(filters.get(i));
+            }
+        }
+        return new FilterPlan(keptFields, keptFilters);
+    }
+
+    public boolean isEmpty() {
+        return filters.isEmpty();
+    }
+
+    @Override
+    public boolean test(Card card) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (!filters.get(i).test(card)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A compiled filter and how early it should be checked, lower first
+     */
+    private static final class Step {
+        private final CardField field;
+        private final Predicate<Card> predicate;
+        private final double rank;
+
+        private Step(CardField field, Predicate<Card> predicate, double rank) {
+            this.field = field;
+            this.predicate = predicate;
+            this.rank = rank;
+        }
+    }
+
+    /**
+     * Converts a String containing values separated by commas to a Set (no duplicates) and
+     * in lowercase to ease comparison in next steps
+     * <p>
+     * Example "Red,BLUE" -> Set[red, blue]
+     *
+     * @param value Comma separated values, it can be null
+     * @return Set containing the values and without duplicates
+     */
+    private static Set<String> convertArrayToSet(String value) {
+        if (value == null) {
+            return Collections.emptySet();
+        }
+
+        return Arrays.stream(value.split(","))
+                .filter(text -> text.length() > 0)
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet());
+    }
+}
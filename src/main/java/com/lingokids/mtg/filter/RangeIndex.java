@@ -0,0 +1,104 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Sorted index of a number or date field: the positions of the cards sorted by the key of the
+ * field, and the keys in the same order. The cards in a range are the ones between two binary
+ * searches of the keys. Cards without the field are not in the index.
+ *
+ */
+public final class RangeIndex {
+
+    private final long[] keys;
+    private final int[] positions;
+
+    /**
+     * @param keys Keys of the cards, sorted
+     * @param positions Position of the card of every key
+     */
+    public RangeIndex(long[] keys, int[] positions) {
+        this.keys = keys;
+        this.positions = positions;
+    }
+
+    /**
+     * @param cards Cards to be indexed, they are identified by their position
+     * @param key Key of the field of a card, {@link RangeQuery#MISSING} if it doesn't have it
+     * @return Index of the keys of the cards
+     */
+    public static RangeIndex build(List<Card> cards, ToLongFunction<Card> key) {
+        long[] cardKeys = new long[cards.size()];
+        for (int position = 0; position < cards.size(); position++) {
+            cardKeys[position] = key.applyAsLong(cards.get(position));
+        }
+
+        int[] positions = IntStream.range(0, cards.size())
+                .filter(position -> cardKeys[position] != RangeQuery.MISSING)
+                .boxed()
+                .sorted((first, second) -> Long.compare(cardKeys[first], cardKeys[second]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        long[] keys = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            keys[i] = cardKeys[positions[i]];
+        }
+        return new RangeIndex(keys, positions);
+    }
+
+    /**
+     * @return Keys of the cards, sorted
+     */
+    public long[] getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return Position of the card of every key, in the same order as {@link #getKeys()}
+     */
+    public int[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @param query Ranges of a filter on the field
+     * @param size Number of cards indexed
+     * @return Positions of the cards in any of the ranges
+     */
+    BitSet select(RangeQuery query, int size) {
+        BitSet selected = new BitSet(size);
+        long[] lower = query.getLower();
+        long[] upper = query.getUpper();
+
+        for (int i = 0; i < lower.length; i++) {
+            int end = firstGreater(upper[i]);
+            for (int j = firstGreater(lower[i] - 1); j < end; j++) {
+                selected.set(positions[j]);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return Index of the first key greater than the value, or the number of keys
+     */
+    private int firstGreater(long value) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
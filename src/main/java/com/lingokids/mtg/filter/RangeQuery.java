@@ -0,0 +1,124 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DateTimeException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Filter of the cards whose field is in one of several ranges. Every field with ranges has a
+ * key, a long that sorts the cards like the field: numbers in fixed point, dates in days.
+ * Bounds are converted to keys when the filter is compiled, so testing a card only compares
+ * its key, and a {@link RangeIndex} finds the cards in a range by binary search.
+ *
+ * Bounds that are not numbers or dates are rejected. A single value is a range with both
+ * bounds equal to it.
+ *
+ */
+final class RangeQuery implements Predicate<Card> {
+
+    /**
+     * Key of the cards without the field, never in a range
+     */
+    static final long MISSING = Long.MIN_VALUE;
+
+    private final ToLongFunction<Card> key;
+    private final long[] lower;
+    private final long[] upper;
+
+    private RangeQuery(ToLongFunction<Card> key, long[] lower, long[] upper) {
+        this.key = key;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * @param name Name of the field, as the user wrote it, for the error message
+     * @param operator {@link FilterOperator#EQUALS} for ranges and single values, or a comparison
+     * @param values Ranges, single values or bounds of the comparison, in lowercase
+     * @param key Key of the field of a card
+     * @param bound Converts a bound to the units of the key, it can have decimals
+     * @return Filter true for the cards whose key is in any of the ranges
+     * @throws IllegalArgumentException If a bound is not valid for the field
+     */
+    static RangeQuery compile(String name, FilterOperator operator, Set<String> values, ToLongFunction<Card> key,
+                              Function<String, BigDecimal> bound) {
+        long[] lower = new long[values.size()];
+        long[] upper = new long[values.size()];
+
+        int i = 0;
+        for (String value : values) {
+            try {
+                lower[i] = MISSING + 1;
+                upper[i] = Long.MAX_VALUE;
+                switch (operator) {
+                    case GREATER:
+                        lower[i] = Math.addExact(floor(bound.apply(value)), 1);
+                        break;
+                    case GREATER_OR_EQUAL:
+                        lower[i] = ceiling(bound.apply(value));
+                        break;
+                    case LESS:
+                        upper[i] = Math.subtractExact(ceiling(bound.apply(value)), 1);
+                        break;
+                    case LESS_OR_EQUAL:
+                        upper[i] = floor(bound.apply(value));
+                        break;
+                    default:
+                        int separator = value.indexOf(FilterOperator.RANGE);
+                        String from = separator < 0 ? value : value.substring(0, separator);
+                        String to = separator < 0 ? value : value.substring(separator + FilterOperator.RANGE.length());
+                        if (!from.isEmpty()) {
+                            lower[i] = ceiling(bound.apply(from));
+                        }
+                        if (!to.isEmpty()) {
+                            upper[i] = floor(bound.apply(to));
+                        }
+                }
+            } catch (NumberFormatException | ArithmeticException | DateTimeException e) {
+                throw new IllegalArgumentException("Value '" + value + "' is not valid for field '" + name + "'.");
+            }
+            i++;
+        }
+
+        return new RangeQuery(key, lower, upper);
+    }
+
+    /**
+     * @return Lowest key of every range, inclusive
+     */
+    long[] getLower() {
+        return lower;
+    }
+
+    /**
+     * @return Highest key of every range, inclusive
+     */
+    long[] getUpper() {
+        return upper;
+    }
+
+    @Override
+    public boolean test(Card card) {
+        long value = key.applyAsLong(card);
+        for (int i = 0; i < lower.length; i++) {
+            if (value >= lower[i] && value <= upper[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long floor(BigDecimal bound) {
+        return Math.max(bound.setScale(0, RoundingMode.FLOOR).longValueExact(), MISSING + 1);
+    }
+
+    private static long ceiling(BigDecimal bound) {
+        return Math.max(bound.setScale(0, RoundingMode.CEILING).longValueExact(), MISSING + 1);
+    }
+}
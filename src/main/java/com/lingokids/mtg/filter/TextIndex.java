@@ -0,0 +1,176 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Inverted index of the words of a text field: for every word, in lowercase, the sorted
+ * positions of the cards whose text has it.
+ *
+ * Words are the runs of letters and digits of the text, so punctuation is ignored. Words are
+ * kept sorted, so the words starting with a prefix are found by binary search.
+ *
+ */
+public final class TextIndex {
+
+    private final String[] words;
+    private final int[][] postings;
+
+    /**
+     * @param words Words in lowercase, sorted
+     * @param postings For every word, the positions of the cards having it, sorted
+     */
+    public TextIndex(String[] words, int[][] postings) {
+        this.words = words;
+        this.postings = postings;
+    }
+
+    /**
+     * @param cards Cards to be indexed, they are identified by their position
+     * @param accessor Text of the card
+     * @return Index of the words of the text of the cards
+     */
+    public static TextIndex build(List<Card> cards, Function<Card, String> accessor) {
+        Map<String, Postings> postingsByWord = new TreeMap<>();
+        // Reprints share their text, it's split only once
+        Map<String, String[]> wordsByText = new HashMap<>();
+
+        for (int position = 0; position < cards.size(); position++) {
+            String text = accessor.apply(cards.get(position));
+            if (text == null) {
+                continue;
+            }
+
+            String[] textWords = wordsByText.computeIfAbsent(text,
+                    key -> tokenize(key).stream().distinct().toArray(String[]::new));
+            for (String word : textWords) {
+                postingsByWord.computeIfAbsent(word, key -> new Postings()).add(position);
+            }
+        }
+
+        String[] words = postingsByWord.keySet().toArray(new String[0]);
+        int[][] postings = new int[words.length][];
+        for (int i = 0; i < words.length; i++) {
+            postings[i] = postingsByWord.get(words[i]).toArray();
+        }
+        return new TextIndex(words, postings);
+    }
+
+    /**
+     * Example "Draw a card, then discard." -> [draw, a, card, then, discard]
+     *
+     * @param text Text to be split, it can't be null
+     * @return Words of the text in lowercase, in order
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        for (int start = TextQuery.nextWord(text, 0); start < text.length(); ) {
+            int end = TextQuery.endOfWord(text, start);
+            StringBuilder word = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                word.append(Character.toLowerCase(text.charAt(i)));
+            }
+            words.add(word.toString());
+            start = TextQuery.nextWord(text, end);
+        }
+        return words;
+    }
+
+    /**
+     * @return Words in lowercase, sorted
+     */
+    public String[] getWords() {
+        return words;
+    }
+
+    /**
+     * @return Positions of the cards having the word in the same position of {@link #getWords()}
+     */
+    public int[] getPostings(int word) {
+        return postings[word];
+    }
+
+    /**
+     * @param query Phrases of a filter on the field
+     * @param size Number of cards indexed
+     * @return Positions of the cards having all the words of some of the phrases. They may not
+     * have them in the same order, so the query must still be tested on them.
+     */
+    BitSet select(TextQuery query, int size) {
+        BitSet selected = new BitSet(size);
+        String[][] phrases = query.getPhrases();
+        boolean[] prefixes = query.getPrefixes();
+
+        for (int i = 0; i < phrases.length; i++) {
+            if (phrases[i].length == 0) {
+                continue;
+            }
+
+            BitSet phrase = null;
+            for (int j = 0; j < phrases[i].length; j++) {
+                BitSet word = prefixes[i] && j == phrases[i].length - 1
+                        ? withPrefix(phrases[i][j], size)
+                        : with(phrases[i][j], size);
+                if (phrase == null) {
+                    phrase = word;
+                } else {
+                    phrase.and(word);
+                }
+            }
+            selected.or(phrase);
+        }
+
+        return selected;
+    }
+
+    private BitSet with(String word, int size) {
+        BitSet cards = new BitSet(size);
+        int found = Arrays.binarySearch(words, word);
+        if (found >= 0) {
+            set(cards, postings[found]);
+        }
+        return cards;
+    }
+
+    private BitSet withPrefix(String prefix, int size) {
+        BitSet cards = new BitSet(size);
+        int found = Arrays.binarySearch(words, prefix);
+        for (int i = found >= 0 ? found : -found - 1; i < words.length && words[i].startsWith(prefix); i++) {
+            set(cards, postings[i]);
+        }
+        return cards;
+    }
+
+    private static void set(BitSet cards, int[] positions) {
+        for (int position : positions) {
+            cards.set(position);
+        }
+    }
+
+    /**
+     * Growing array of positions, without boxing them
+     */
+    private static final class Postings {
+        private int[] positions = new int[4];
+        private int size;
+
+        private void add(int position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
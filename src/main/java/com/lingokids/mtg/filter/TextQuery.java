@@ -0,0 +1,136 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Filter of the cards whose text contains one of several phrases. Phrases are split in words
+ * like {@link TextIndex} does, and a phrase ending with * matches any word starting with its
+ * last word: "destroy target*" matches "destroy target creature" and "destroy targets".
+ *
+ * Testing a card walks its text comparing the words in place, without splitting it, so it
+ * works with or without an index. With an index, only the cards having all the words of a
+ * phrase are tested.
+ *
+ */
+final class TextQuery implements Predicate<Card> {
+
+    private static final String PREFIX = "*";
+
+    private final Function<Card, String> accessor;
+    private final String[][] phrases;
+    private final boolean[] prefixes;
+
+    /**
+     * @param accessor Text of the card
+     * @param values Phrases, in lowercase
+     */
+    TextQuery(Function<Card, String> accessor, Set<String> values) {
+        this.accessor = accessor;
+        this.phrases = new String[values.size()][];
+        this.prefixes = new boolean[values.size()];
+
+        int i = 0;
+        for (String value : values) {
+            List<String> words = TextIndex.tokenize(value);
+            phrases[i] = words.toArray(new String[0]);
+            prefixes[i] = value.trim().endsWith(PREFIX);
+            i++;
+        }
+    }
+
+    /**
+     * @return Words of every phrase, in lowercase. A phrase without words never matches.
+     */
+    String[][] getPhrases() {
+        return phrases;
+    }
+
+    /**
+     * @return For every phrase, true if its last word is a prefix
+     */
+    boolean[] getPrefixes() {
+        return prefixes;
+    }
+
+    @Override
+    public boolean test(Card card) {
+        String text = accessor.apply(card);
+        if (text == null) {
+            return false;
+        }
+
+        for (int i = 0; i < phrases.length; i++) {
+            if (contains(text, phrases[i], prefixes[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(String text, String[] phrase, boolean prefix) {
+        if (phrase.length == 0) {
+            return false;
+        }
+
+        for (int start = nextWord(text, 0); start < text.length(); start = nextWord(text, endOfWord(text, start))) {
+            if (matchesAt(text, start, phrase, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if the words of the text from the start are the words of the phrase
+     */
+    private static boolean matchesAt(String text, int start, String[] phrase, boolean prefix) {
+        int position = start;
+        for (int i = 0; i < phrase.length; i++) {
+            if (position >= text.length()) {
+                return false;
+            }
+
+            String word = phrase[i];
+            int end = endOfWord(text, position);
+            int length = end - position;
+            if (prefix && i == phrase.length - 1 ? length < word.length() : length != word.length()) {
+                return false;
+            }
+            for (int j = 0; j < word.length(); j++) {
+                if (Character.toLowerCase(text.charAt(position + j)) != word.charAt(j)) {
+                    return false;
+                }
+            }
+
+            position = nextWord(text, end);
+        }
+        return true;
+    }
+
+    /**
+     * @return Position of the first letter or digit from the position, or the length of the text
+     */
+    static int nextWord(String text, int from) {
+        int position = from;
+        while (position < text.length() && !Character.isLetterOrDigit(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * @return Position after the last letter or digit of the word starting in the position
+     */
+    static int endOfWord(String text, int from) {
+        int position = from;
+        while (position < text.length() && Character.isLetterOrDigit(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,65 @@
+package com.lingokids.mtg.http;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.GzipSource;
+import okio.Okio;
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.IOException;
+
+/**
+ * Asks for brotli or gzip compressed responses and decodes them, so the body is
+ * read as plain text by everybody else.
+ *
+ * OkHttp only negotiates gzip by itself, and stops decoding when the request sets its own
+ * Accept-Encoding header, so both encodings are decoded here.
+ *
+ */
+public class CompressionInterceptor implements Interceptor {
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String BROTLI = "br";
+    private static final String GZIP = "gzip";
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.header(ACCEPT_ENCODING) != null) {
+            return chain.proceed(request);
+        }
+
+        Response response = chain.proceed(request.newBuilder()
+                .header(ACCEPT_ENCODING, BROTLI + ", " + GZIP)
+                .build());
+        return decode(response);
+    }
+
+    private Response decode(Response response) throws IOException {
+        ResponseBody body = response.body();
+        String encoding = response.header(CONTENT_ENCODING);
+        if (body == null || encoding == null) {
+            return response;
+        }
+
+        BufferedSource decoded;
+        if (BROTLI.equalsIgnoreCase(encoding.trim())) {
+            decoded = Okio.buffer(Okio.source(new BrotliInputStream(body.source().inputStream())));
+        } else if (GZIP.equalsIgnoreCase(encoding.trim())) {
+            decoded = Okio.buffer(new GzipSource(body.source()));
+        } else {
+            return response;
+        }
+
+        return response.newBuilder()
+                .removeHeader(CONTENT_ENCODING)
+                .removeHeader(CONTENT_LENGTH)
+                .body(ResponseBody.create(decoded, body.contentType(), -1))
+                .build();
+    }
+}
@@ -0,0 +1,107 @@
+package com.lingokids.mtg.http;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the HTTP client talks to the server.
+ *
+ * The connection pool keeps one idle connection per concurrent request alive between pages,
+ * so a refresh makes the TCP and TLS handshakes only once per connection instead of once per
+ * page. The dispatcher is sized with the same number of requests per host. HTTP/2 is offered
+ * during the TLS handshake and used when the server supports it, then all requests share a
+ * single multiplexed connection. With compression, responses are requested with brotli or gzip
+ * and decoded transparently.
+ *
+ * Profiles are immutable and comparable, so clients built with the same profile can be shared.
+ *
+ */
+@Getter
+@EqualsAndHashCode
+public class HTTPClientProfile {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Timeouts when making HTTP requests, so the connection will not hang forever
+     * if there is no response from the server
+     */
+    private static final long CONNECT_TIMEOUT_SECONDS = 2;
+    private static final long WRITE_TIMEOUT_SECONDS = 2;
+    private static final long READ_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Requests in flight for all hosts, only limits asynchronous calls
+     */
+    private static final int MAX_REQUESTS = 64;
+
+    private final int maxConnections;
+    private final long keepAliveMillis;
+    private final boolean http2;
+    private final boolean compression;
+
+    public HTTPClientProfile() {
+        this(DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param maxConnections Requests in flight to the same host and idle connections kept alive
+     */
+    public HTTPClientProfile(int maxConnections) {
+        this(maxConnections, DEFAULT_KEEP_ALIVE_MILLIS, true, true);
+    }
+
+    /**
+     * @param maxConnections Requests in flight to the same host and idle connections kept alive
+     * @param keepAliveMillis How long an idle connection is kept in the pool
+     * @param http2 Offer HTTP/2 to the server, HTTP/1.1 is used otherwise
+     * @param compression Ask for brotli or gzip compressed responses
+     */
+    public HTTPClientProfile(int maxConnections, long keepAliveMillis, boolean http2, boolean compression) {
+        if (maxConnections < 1 || keepAliveMillis < 1) {
+            throw new IllegalArgumentException("Invalid HTTP client profile.");
+        }
+
+        this.maxConnections = maxConnections;
+        this.keepAliveMillis = keepAliveMillis;
+        this.http2 = http2;
+        this.compression = compression;
+    }
+
+    /**
+     * Clients are expensive: every one has its own connection pool and threads.
+     * Build it once and share it.
+     *
+     * @return A new client configured with this profile
+     */
+    public OkHttpClient newClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Math.max(MAX_REQUESTS, maxConnections));
+        dispatcher.setMaxRequestsPerHost(maxConnections);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(maxConnections, keepAliveMillis, TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .retryOnConnectionFailure(true)
+                .protocols(http2
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1));
+
+        if (compression) {
+            builder.addInterceptor(new CompressionInterceptor());
+        }
+        return builder.build();
+    }
+}
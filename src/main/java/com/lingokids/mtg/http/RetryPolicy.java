@@ -0,0 +1,76 @@
+package com.lingokids.mtg.http;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When and how long to wait before retrying a request.
+ *
+ * Only responses saying that the server is busy or temporarily failing are retried:
+ * 429 Too Many Requests and 5xx. Delay grows exponentially with every attempt and has a
+ * random jitter, so concurrent requests that failed at the same time don't retry at
+ * the same time.
+ *
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 250;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 30000;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * @param maxRetries Number of retries after the first attempt
+     * @param baseDelayMillis Delay before the first retry, it's doubled in every retry
+     * @param maxDelayMillis Maximum delay between attempts, also for Retry-After headers
+     */
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        if (maxRetries < 0 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid retry policy.");
+        }
+
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @param statusCode Status code of the response
+     * @param attempt Number of retries already made
+     * @return True if the request should be made again
+     */
+    public boolean shouldRetry(int statusCode, int attempt) {
+        return attempt < maxRetries && (statusCode == TOO_MANY_REQUESTS || statusCode >= 500);
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the delay is fixed, the other half random
+     *
+     * @param attempt Number of retries already made
+     * @return Delay in milliseconds before next attempt
+     */
+    public long getDelayMillis(int attempt) {
+        long exponential = baseDelayMillis << Math.min(attempt, 20);
+        long delay = Math.min(maxDelayMillis, exponential);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * Delay requested by the server is respected, but never longer than the maximum delay
+     *
+     * @param retryAfterMillis Delay from the Retry-After header
+     * @return Delay in milliseconds before next attempt
+     */
+    public long getRetryAfterDelayMillis(long retryAfterMillis) {
+        return Math.min(maxDelayMillis, Math.max(retryAfterMillis, 0));
+    }
+}
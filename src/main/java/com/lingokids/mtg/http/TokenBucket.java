@@ -0,0 +1,121 @@
+package com.lingokids.mtg.http;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket shared by all the threads making requests to the same server.
+ *
+ * Every request takes a token. Tokens are refilled at a constant rate up to the capacity
+ * of the bucket, so short bursts are allowed but the average rate never goes above the
+ * refill rate. The server can also tell us how many requests we have left
+ * (limitTo) or to stop for a while (pauseFor).
+ *
+ * The API allows 5000 requests per hour, that's the default configuration.
+ *
+ */
+public class TokenBucket {
+
+    public static final int DEFAULT_CAPACITY = 5000;
+    public static final double DEFAULT_REFILL_PER_SECOND = 5000 / 3600.0;
+
+    private final double capacity;
+    private final double refillPerNano;
+
+    /**
+     * State of the bucket. Guarded by this
+     */
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+
+    public TokenBucket() {
+        this(DEFAULT_CAPACITY, DEFAULT_REFILL_PER_SECOND);
+    }
+
+    /**
+     * @param capacity Maximum number of requests in a burst
+     * @param refillPerSecond Average number of requests per second
+     */
+    public TokenBucket(double capacity, double refillPerSecond) {
+        if (capacity < 1 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Capacity should be at least 1 and refill rate positive.");
+        }
+
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+        this.pausedUntil = lastRefill;
+    }
+
+    /**
+     * Takes a token, waiting until one is available and the bucket is not paused
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedIOException {
+        while (true) {
+            long waitNanos;
+
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+
+                if (now - pausedUntil >= 0 && tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+
+                long untilToken = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / refillPerNano);
+                waitNanos = Math.max(pausedUntil - now, untilToken);
+            }
+
+            sleep(waitNanos);
+        }
+    }
+
+    /**
+     * The server informs how many requests are remaining, we can't have more tokens than that
+     *
+     * @param remaining Value of Ratelimit-Remaining header
+     */
+    public synchronized void limitTo(long remaining) {
+        refill(System.nanoTime());
+        tokens = Math.min(tokens, Math.max(remaining, 0));
+    }
+
+    /**
+     * Nobody takes a token until the pause finishes. A pause never makes a longer pause shorter
+     *
+     * @param millis Duration of the pause
+     */
+    public synchronized void pauseFor(long millis) {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+    }
+
+    /**
+     * @return Tokens currently available
+     */
+    public synchronized double getAvailableTokens() {
+        refill(System.nanoTime());
+        return tokens;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+
+    private void sleep(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(Math.max(nanos, 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+        }
+    }
+}
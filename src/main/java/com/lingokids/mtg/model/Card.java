@@ -1,22 +1,60 @@
 package com.lingokids.mtg.model;
 
 import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * This is a model domain class representing a Card.
  *
+ * Details are the long texts and nested lists of a card. Most queries don't need them,
+ * so they are stored apart from the rest of the fields and only read when needed.
+ *
+ * Colors and color identity are also kept as a {@link ColorMask}, set with the lists, the
+ * release date as a number of days, set with the date, and prices in fixed point, set with the
+ * prices, so filters on them compare integers.
+ *
  */
 @Getter
 @Setter
 @EqualsAndHashCode
 @JsonFilter("customFilter")
 public class Card {
+
+    /**
+     * Names of the detail fields, case insensitive
+     */
+    public static final Set<String> DETAIL_FIELDS = caseInsensitiveSet(
+            "text", "originalText", "flavor", "rulings", "foreignNames", "legalities");
+
+    /**
+     * Release day of the cards without release date, or with a date that is not valid
+     */
+    public static final int NO_RELEASE_DAY = Integer.MIN_VALUE;
+
+    /**
+     * Decimals of the prices in fixed point
+     */
+    public static final int FIXED_POINT_SCALE = 4;
+
+    /**
+     * Price in fixed point of the cards without price
+     */
+    public static final long NO_PRICE = Long.MIN_VALUE;
+
     private String id;
     private String layout;
     private String name;
@@ -63,4 +101,148 @@ public class Card {
     private BigDecimal onlinePriceLow;
     private List<Ruling> rulings;
     private List<ForeignName> foreignNames;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private byte colorMask;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private byte colorIdentityMask;
+
+    /**
+     * Release date as days since 1970-01-01, or {@link #NO_RELEASE_DAY}
+     */
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private int releaseDay = NO_RELEASE_DAY;
+
+    /**
+     * Prices with {@link #FIXED_POINT_SCALE} decimals, or {@link #NO_PRICE}
+     */
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private long priceHighFixedPoint = NO_PRICE;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private long priceMidFixedPoint = NO_PRICE;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private long priceLowFixedPoint = NO_PRICE;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private long onlinePriceHighFixedPoint = NO_PRICE;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private long onlinePriceMidFixedPoint = NO_PRICE;
+
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    private long onlinePriceLowFixedPoint = NO_PRICE;
+
+    public void setReleaseDate(String releaseDate) {
+        this.releaseDate = releaseDate;
+        this.releaseDay = toEpochDay(releaseDate);
+    }
+
+    public void setPriceHigh(BigDecimal priceHigh) {
+        this.priceHigh = priceHigh;
+        this.priceHighFixedPoint = toFixedPoint(priceHigh);
+    }
+
+    public void setPriceMid(BigDecimal priceMid) {
+        this.priceMid = priceMid;
+        this.priceMidFixedPoint = toFixedPoint(priceMid);
+    }
+
+    public void setPriceLow(BigDecimal priceLow) {
+        this.priceLow = priceLow;
+        this.priceLowFixedPoint = toFixedPoint(priceLow);
+    }
+
+    public void setOnlinePriceHigh(BigDecimal onlinePriceHigh) {
+        this.onlinePriceHigh = onlinePriceHigh;
+        this.onlinePriceHighFixedPoint = toFixedPoint(onlinePriceHigh);
+    }
+
+    public void setOnlinePriceMid(BigDecimal onlinePriceMid) {
+        this.onlinePriceMid = onlinePriceMid;
+        this.onlinePriceMidFixedPoint = toFixedPoint(onlinePriceMid);
+    }
+
+    public void setOnlinePriceLow(BigDecimal onlinePriceLow) {
+        this.onlinePriceLow = onlinePriceLow;
+        this.onlinePriceLowFixedPoint = toFixedPoint(onlinePriceLow);
+    }
+
+    public void setColors(List<String> colors) {
+        this.colors = colors;
+        this.colorMask = ColorMask.of(colors);
+    }
+
+    public void setColorIdentity(List<String> colorIdentity) {
+        this.colorIdentity = colorIdentity;
+        this.colorIdentityMask = ColorMask.of(colorIdentity);
+    }
+
+    /**
+     * @param fields Names of fields, case insensitive. Null means all fields.
+     * @return True if some of the fields is a detail field
+     */
+    public static boolean hasDetailFields(Collection<String> fields) {
+        return fields == null || fields.stream().anyMatch(DETAIL_FIELDS::contains);
+    }
+
+    /**
+     * Dates can be a day (2014-09-26), a month (2014-09) or a year (2014), the first day of them is taken
+     *
+     * @param date Date, it can be null
+     * @return Days since 1970-01-01, or {@link #NO_RELEASE_DAY} if it's not a valid date
+     */
+    public static int toEpochDay(String date) {
+        if (date == null) {
+            return NO_RELEASE_DAY;
+        }
+
+        try {
+            String[] parts = date.trim().split("-", 3);
+            LocalDate day = LocalDate.of(Integer.parseInt(parts[0]),
+                    parts.length > 1 ? Integer.parseInt(parts[1]) : 1,
+                    parts.length > 2 ? Integer.parseInt(parts[2]) : 1);
+            return (int) day.toEpochDay();
+        } catch (NumberFormatException | DateTimeException e) {
+            return NO_RELEASE_DAY;
+        }
+    }
+
+    /**
+     * Example 1.5 -> 15000, 0.123456 -> 1235
+     *
+     * @param price Price, it can be null
+     * @return Price with {@link #FIXED_POINT_SCALE} decimals, rounded, or {@link #NO_PRICE} if there is no price
+     */
+    public static long toFixedPoint(BigDecimal price) {
+        return price != null
+                ? price.movePointRight(FIXED_POINT_SCALE).setScale(0, RoundingMode.HALF_UP).longValue()
+                : NO_PRICE;
+    }
+
+    private static Set<String> caseInsensitiveSet(String... values) {
+        Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        set.addAll(Arrays.asList(values));
+        return set;
+    }
 }
@@ -0,0 +1,82 @@
+package com.lingokids.mtg.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * This is a model domain class representing what the user asked for: filters, grouping
+ * fields and properties to print. All of them can be null.
+ *
+ * Storages use it to read only the cards and fields that can be part of the result.
+ */
+@Getter
+@Setter
+public class CardQuery {
+    private Map<String, String> filters;
+    private List<String> groupBy;
+    private Set<String> properties;
+
+    /**
+     * Details of the cards are only needed if they are filtered, grouped or printed.
+     * All the properties are printed if none is specified.
+     *
+     * @return True if the details of the cards are needed
+     */
+    public boolean needsDetails() {
+        return Card.hasDetailFields(properties)
+                || (filters != null && Card.hasDetailFields(filters.keySet().stream()
+                        .map(CardQuery::getFieldName)
+                        .collect(Collectors.toList())))
+                || (groupBy != null && Card.hasDetailFields(groupBy));
+    }
+
+    /**
+     * The name of a filter is the field followed by an operator, like "text:contains", or a
+     * comparison, like "cmc&gt;=".
+     *
+     * @param filter Name of the filter
+     * @return Name of the field filtered, everything before the first colon, &lt; or &gt;
+     */
+    public static String getFieldName(String filter) {
+        for (int i = 0; i < filter.length(); i++) {
+            char c = filter.charAt(i);
+            if (c == ':' || c == '<' || c == '>') {
+                return filter.substring(0, i);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Values of a filter, in lowercase like they are compared when filtering
+     *
+     * @param field Name of the field (case-insensitive)
+     * @return Values separated by commas in the filter or an empty set if the field is not filtered
+     */
+    public Set<String> getFilterValues(String field) {
+        if (filters == null) {
+            return Collections.emptySet();
+        }
+
+        return filters.entrySet().stream()
+                .filter(filter -> filter.getKey().equalsIgnoreCase(field) && filter.getValue() != null)
+                .flatMap(filter -> Arrays.stream(filter.getValue().split(",")))
+                .filter(value -> !value.isEmpty())
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * @return A query with everything: all cards, all fields
+     */
+    public static CardQuery all() {
+        return new CardQuery();
+    }
+}
@@ -0,0 +1,21 @@
+package com.lingokids.mtg.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Set;
+
+/**
+ * This is a model domain class representing the progress of an unfinished refresh.
+ *
+ * Pages already retrieved are staged on disk, so a refresh that failed can be resumed
+ * without requesting them again. Only their numbers are kept here, each page is read
+ * from disk when it's needed. Total pages is -1 if it's not known.
+ */
+@Getter
+@Setter
+public class Checkpoint {
+    private String url;
+    private int totalPages = -1;
+    private Set<Integer> stagedPages;
+}
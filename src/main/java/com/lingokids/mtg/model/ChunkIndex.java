@@ -0,0 +1,23 @@
+package com.lingokids.mtg.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * This is a model domain class representing where the chunks of cards start in the cache files.
+ *
+ * Every chunk has the same number of cards, except the last one. Offsets are byte positions in
+ * the cards and details files, with one more offset at the end of the last chunk. Sizes of the
+ * files are kept to know if the index belongs to them.
+ */
+@Getter
+@Setter
+public class ChunkIndex {
+    private int cardsPerChunk;
+    private long cardsSize;
+    private long detailsSize;
+    private List<Long> cardOffsets;
+    private List<Long> detailOffsets;
+}
@@ -0,0 +1,71 @@
+package com.lingokids.mtg.model;
+
+import java.util.Collection;
+
+/**
+ * Colors of a card encoded as a bit mask, one bit for every color in WUBRG order, so colors
+ * are compared with a single integer operation.
+ *
+ * Colors are written by name ("Red") or by their letter ("R"), case insensitive, like the
+ * colors and the color identity of the cards are. Values that are not colors are kept in
+ * {@link #OTHER}, so a card with them is never equal to or within any combination of colors.
+ *
+ */
+public final class ColorMask {
+
+    public static final int WHITE = 1;
+    public static final int BLUE = 1 << 1;
+    public static final int BLACK = 1 << 2;
+    public static final int RED = 1 << 3;
+    public static final int GREEN = 1 << 4;
+    public static final int OTHER = 1 << 5;
+
+    public static final int NONE = 0;
+
+    private ColorMask() {
+    }
+
+    /**
+     * @param colors Names or letters of the colors, it can be null
+     * @return Mask with the bits of the colors, {@link #NONE} for colorless cards
+     */
+    public static byte of(Collection<String> colors) {
+        int mask = NONE;
+        if (colors != null) {
+            for (String color : colors) {
+                mask |= of(color);
+            }
+        }
+        return (byte) mask;
+    }
+
+    /**
+     * @param color Name or letter of the color, case insensitive
+     * @return Bit of the color, or {@link #OTHER} if it's not a color
+     */
+    public static int of(String color) {
+        if (color == null) {
+            return OTHER;
+        }
+
+        switch (color.toLowerCase()) {
+            case "w":
+            case "white":
+                return WHITE;
+            case "u":
+            case "blue":
+                return BLUE;
+            case "b":
+            case "black":
+                return BLACK;
+            case "r":
+            case "red":
+                return RED;
+            case "g":
+            case "green":
+                return GREEN;
+            default:
+                return OTHER;
+        }
+    }
+}
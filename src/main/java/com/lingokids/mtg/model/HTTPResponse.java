@@ -0,0 +1,41 @@
+package com.lingokids.mtg.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is a model domain class representing an HTTP response.
+ *
+ * Besides the body it keeps the response headers, because the API informs about
+ * pagination (Total-Count, Page-Size, Link) through them.
+ */
+@Getter
+@Setter
+public class HTTPResponse {
+    private int code;
+    private String body;
+
+    /**
+     * Header names are case-insensitive, so the map should be created with
+     * String.CASE_INSENSITIVE_ORDER
+     */
+    private Map<String, List<String>> headers;
+
+    /**
+     * Returns the first value of a header
+     *
+     * @param name Header name (case-insensitive)
+     * @return First value or null if header is not present
+     */
+    public String getHeader(String name) {
+        if (headers == null) {
+            return null;
+        }
+
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
@@ -0,0 +1,21 @@
+package com.lingokids.mtg.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * This is a model domain class representing a page retrieved from the API.
+ *
+ * If the page didn't change since the last time it was retrieved, modified is false and
+ * cards are not set. Only the fingerprint (with the ids of the cards) is available.
+ */
+@Getter
+@Setter
+public class Page {
+    private int number;
+    private boolean modified;
+    private List<Card> cards;
+    private PageFingerprint fingerprint;
+}
@@ -0,0 +1,26 @@
+package com.lingokids.mtg.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * This is a model domain class representing what we know about a page of the API
+ * the last time it was retrieved.
+ *
+ * ETag and Last-Modified are sent back in conditional requests. The hash of the body is used
+ * when the server doesn't support them. The ids of the cards allow merging unchanged pages
+ * with the cards already in the local file.
+ */
+@Getter
+@Setter
+@EqualsAndHashCode
+public class PageFingerprint {
+    private int page;
+    private String etag;
+    private String lastModified;
+    private String hash;
+    private List<String> cardIds;
+}
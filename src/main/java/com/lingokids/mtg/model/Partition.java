@@ -0,0 +1,31 @@
+package com.lingokids.mtg.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is a model domain class representing consecutive cards stored together in a file,
+ * with the sets and set names they have, in order of appearance.
+ */
+@Getter
+@Setter
+public class Partition {
+    private List<String> sets;
+    private List<String> setNames;
+    private String file;
+    private int cards;
+
+    /**
+     * Partitions of version 1 manifests had the cards of a single set
+     */
+    public void setSet(String set) {
+        this.sets = Collections.singletonList(set);
+    }
+
+    public void setSetName(String setName) {
+        this.setNames = Collections.singletonList(setName);
+    }
+}
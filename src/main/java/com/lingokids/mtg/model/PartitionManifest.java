@@ -0,0 +1,17 @@
+package com.lingokids.mtg.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * This is a model domain class listing the partitions of the cache, in the order their
+ * cards appeared in the API. Partitions not listed here are not part of the cache.
+ */
+@Getter
+@Setter
+public class PartitionManifest {
+    private int version;
+    private List<Partition> partitions;
+}
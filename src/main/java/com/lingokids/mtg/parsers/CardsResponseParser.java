@@ -0,0 +1,89 @@
+package com.lingokids.mtg.parsers;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.lingokids.mtg.model.Card;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for the API response: {"cards": [ {...}, {...} ]}
+ *
+ * Instead of reading the whole response into a String and then binding it to a CardsResponse,
+ * it reads tokens directly from the input stream and binds one Card at a time. So only the
+ * Card objects are kept in memory, never the text of the response.
+ *
+ * Any other field of the response is skipped.
+ *
+ */
+public class CardsResponseParser {
+
+    private static final String CARDS = "cards";
+
+    /**
+     * Reader bound to the Card class, it's thread safe and can be shared
+     */
+    private final ObjectMapper objectMapper;
+    private final ObjectReader cardReader;
+
+    public CardsResponseParser() {
+        objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        cardReader = objectMapper.readerFor(Card.class);
+    }
+
+    /**
+     * Parses a CardsResponse from a stream. The stream is not closed.
+     *
+     * @param input Response body
+     * @return List of cards (empty if the response contains no cards)
+     * @throws IOException If the stream can't be read or the JSON is not a valid response
+     */
+    public List<Card> parse(InputStream input) throws IOException {
+        List<Card> cards = new ArrayList<>();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object with a list of cards");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+
+                if (CARDS.equals(field) && token == JsonToken.START_ARRAY) {
+                    readCards(parser, cards);
+                } else if (CARDS.equals(field) && token != JsonToken.VALUE_NULL) {
+                    throw new JsonParseException(parser, "Expected an array of cards");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw new JsonParseException(parser, "Unexpected end of response");
+            }
+        }
+
+        return cards;
+    }
+
+    private void readCards(JsonParser parser, List<Card> cards) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            cards.add(cardReader.readValue(parser));
+        }
+
+        if (parser.currentToken() != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Expected a card object");
+        }
+    }
+}
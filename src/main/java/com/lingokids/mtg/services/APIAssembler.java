@@ -1,9 +1,12 @@
 package com.lingokids.mtg.services;
 
 import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.Page;
+import com.lingokids.mtg.model.PageFingerprint;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This interface represents a way to get the cards.
@@ -13,4 +16,14 @@ import java.util.List;
  */
 public interface APIAssembler {
     List<Card> getCards(String url) throws IOException;
+    List<Page> getPages(String url, Map<Integer, PageFingerprint> knownPages) throws IOException;
+    void getPages(String url, Map<Integer, PageFingerprint> knownPages, PageConsumer consumer) throws IOException;
+
+    /**
+     * Receives the pages in order as soon as they are retrieved
+     */
+    @FunctionalInterface
+    interface PageConsumer {
+        void accept(Page page) throws IOException;
+    }
 }
@@ -1,6 +1,7 @@
 package com.lingokids.mtg.services;
 
 import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
 
 import java.io.IOException;
 import java.util.List;
@@ -13,4 +14,6 @@ import java.util.List;
  */
 public interface CardLoaderService {
     List<Card> getCards(String url, boolean refresh) throws IOException;
+    List<Card> getCards(String url, boolean refresh, boolean incremental) throws IOException;
+    List<Card> getCards(String url, boolean refresh, boolean incremental, CardQuery query) throws IOException;
 }
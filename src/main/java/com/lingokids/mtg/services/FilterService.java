@@ -1,9 +1,13 @@
 package com.lingokids.mtg.services;
 
+import com.lingokids.mtg.filter.CardDictionary;
+import com.lingokids.mtg.filter.FieldStatistics;
+import com.lingokids.mtg.filter.FilterPlan;
 import com.lingokids.mtg.model.Card;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * This is a model domain class representing a Service to filter List of Cards
@@ -14,4 +18,7 @@ import java.util.Map;
  */
 public interface FilterService {
     List<Card> filter(List<Card> cards, Map<String, String> filters);
+    List<Card> filter(List<Card> cards, Predicate<Card> predicate);
+    Predicate<Card> getPredicate(Map<String, String> filters);
+    FilterPlan getPredicate(Map<String, String> filters, FieldStatistics statistics, CardDictionary dictionary);
 }
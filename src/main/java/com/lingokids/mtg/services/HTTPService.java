@@ -1,6 +1,10 @@
 package com.lingokids.mtg.services;
 
+import com.lingokids.mtg.model.HTTPResponse;
+
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
 
 /**
  * Service to make HTTP requests
@@ -9,4 +13,27 @@ import java.io.IOException;
  */
 public interface HTTPService {
     String doGet(String url) throws IOException;
+    HTTPResponse doGetResponse(String url) throws IOException;
+    <T> T doGetStream(String url, BodyHandler<T> handler) throws IOException;
+    <T> T doGetStream(String url, Map<String, String> requestHeaders, BodyHandler<T> handler) throws IOException;
+
+    /**
+     * Status code of a conditional request when the resource has not changed
+     */
+    int NOT_MODIFIED = 304;
+
+    /**
+     * Consumes the body of a response as a stream while the connection is still open,
+     * so it never has to be read completely into memory.
+     *
+     * @param <T> Result of consuming the body
+     */
+    @FunctionalInterface
+    interface BodyHandler<T> {
+        /**
+         * @param response Status code and headers. Body is not set
+         * @param body Stream of the response body. It will be closed after this method returns
+         */
+        T handle(HTTPResponse response, InputStream body) throws IOException;
+    }
 }
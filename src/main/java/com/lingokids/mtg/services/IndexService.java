@@ -0,0 +1,18 @@
+package com.lingokids.mtg.services;
+
+import com.lingokids.mtg.filter.CardIndex;
+import com.lingokids.mtg.model.Card;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Service to keep the indexes of the cards, so they are not built every time the cards are loaded.
+ *
+ * Current implementation keeps them on local filesystem, next to the cards.
+ *
+ */
+public interface IndexService {
+    CardIndex getIndex(List<Card> cards, String version) throws IOException;
+    void delete() throws IOException;
+}
@@ -13,4 +13,6 @@ import java.util.Set;
  */
 public interface PrinterService {
     String print(Object input, Set<String> properties, String filename, boolean pretty) throws IOException;
+    String format(Object input, Set<String> properties, boolean pretty) throws JsonProcessingException;
+    void output(String json, String filename) throws IOException;
 }
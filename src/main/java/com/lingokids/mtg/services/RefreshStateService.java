@@ -0,0 +1,27 @@
+package com.lingokids.mtg.services;
+
+import com.lingokids.mtg.model.Checkpoint;
+import com.lingokids.mtg.model.Page;
+import com.lingokids.mtg.model.PageFingerprint;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Service to keep the state of the refreshes, so next refresh only has to retrieve
+ * and parse what changed in the API, and an interrupted refresh can be resumed.
+ *
+ * Current implementation does it on local filesystem, next to the file with the cards.
+ */
+public interface RefreshStateService {
+    Map<Integer, PageFingerprint> readFingerprints() throws IOException;
+    void writeFingerprints(Collection<PageFingerprint> fingerprints) throws IOException;
+    void deleteFingerprints() throws IOException;
+
+    Checkpoint readCheckpoint(String url) throws IOException;
+    void writeCheckpoint(Checkpoint checkpoint) throws IOException;
+    void stagePage(Page page) throws IOException;
+    Page readStagedPage(int number) throws IOException;
+    void deleteCheckpoint() throws IOException;
+}
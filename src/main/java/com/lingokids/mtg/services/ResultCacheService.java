@@ -0,0 +1,19 @@
+package com.lingokids.mtg.services;
+
+import com.lingokids.mtg.model.CardQuery;
+
+import java.io.IOException;
+
+/**
+ * Service to keep the output of the queries, so the same query on the same cards is answered
+ * without reading them again.
+ *
+ * Current implementation keeps them on local filesystem.
+ *
+ */
+public interface ResultCacheService {
+    String getKey(CardQuery query, boolean pretty, String version);
+    boolean output(String key, String filename) throws IOException;
+    void put(String key, String json) throws IOException;
+    void clear() throws IOException;
+}
@@ -1,9 +1,13 @@
 package com.lingokids.mtg.services;
 
 import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Service to check, save, read and delete the list of Cards. It's an optimization
@@ -12,10 +16,32 @@ import java.util.List;
  *
  * Current implementation does it on local filesystem but it could do it to a DB,
  * AWS S3, etc
+ *
+ * Reading for a query returns at least the cards and fields needed to answer it, so the
+ * storage can skip what is not needed, like the detail fields of the cards
+ * ({@link Card#DETAIL_FIELDS}). Cards still have to be filtered.
+ *
+ * Cards can also be read one by one with a consumer, so the caller decides which ones are kept.
+ *
+ * The version changes every time cards are written, so results computed from the cards can be
+ * kept while it doesn't change.
  */
 public interface StorageService {
     boolean dataExists();
+    String getVersion() throws IOException;
     List<Card> read() throws IOException;
+    List<Card> read(CardQuery query) throws IOException;
+    void read(CardQuery query, Consumer<Card> consumer) throws IOException;
     void write(List<Card> cardList) throws IOException;
+    CardWriter openWriter() throws IOException;
     void delete() throws IOException;
+
+    /**
+     * Saves the cards incrementally, as they arrive. Previous data is only replaced
+     * when the writer is committed. Closing it without commit discards what was appended.
+     */
+    interface CardWriter extends Closeable {
+        void append(Collection<Card> cards) throws IOException;
+        void commit() throws IOException;
+    }
 }
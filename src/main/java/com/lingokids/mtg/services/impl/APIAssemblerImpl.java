@@ -1,23 +1,62 @@
 package com.lingokids.mtg.services.impl;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lingokids.mtg.model.Card;
-import com.lingokids.mtg.model.CardsResponse;
+import com.lingokids.mtg.model.Checkpoint;
+import com.lingokids.mtg.model.HTTPResponse;
+import com.lingokids.mtg.model.Page;
+import com.lingokids.mtg.model.PageFingerprint;
+import com.lingokids.mtg.parsers.CardsResponseParser;
 import com.lingokids.mtg.services.APIAssembler;
 import com.lingokids.mtg.services.HTTPService;
+import com.lingokids.mtg.services.RefreshStateService;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * This is an orchestrator class. Makes multiple HTTP calls, parses and assembles
  * all the HTTP responses into one List of Card objects.
  *
- * It uses an HTTP service to make the real HTTP call and an Object Mapper to deserialize the
- * JSON response to a list of objects.
+ * It uses an HTTP service to make the real HTTP call and a streaming parser that deserializes
+ * the cards straight from the response body, without copying it to a String first.
+ *
+ * The first page is requested alone. The API informs in its headers (Total-Count and Page-Size,
+ * or the rel="last" entry of the Link header) how many pages there are, so the rest of them
+ * are requested concurrently with a bounded number of in-flight requests. Pages are assembled
+ * in order. If the headers are not present it falls back to requesting one page after another
+ * until an empty page is found.
+ *
+ * When the fingerprints of a previous refresh are provided, requests are conditional (ETag and
+ * Last-Modified). Pages answered with 304 Not Modified, or whose body has the same hash as
+ * before, are not parsed again: the body of a known page is hashed while it's read into memory,
+ * and only parsed if the hash changed. New pages are parsed as they stream in and hashed in the
+ * same pass.
+ *
+ * Pages are handed to a consumer in order while next pages are still being retrieved, so the
+ * caller can persist them as they arrive.
+ *
+ * Every page retrieved is staged on disk through the Refresh State service. If a refresh fails,
+ * next refresh of the same url resumes from the checkpoint and doesn't request those pages again.
  *
  * If url parameter is null the standard url is used: https://api.magicthegathering.io/v1/cards
  *
@@ -31,15 +70,53 @@ public class APIAssemblerImpl implements APIAssembler {
     private static final String BASE_URL = "https://api.magicthegathering.io/v1/cards";
     private static final String PAGE = "?page=%s";
 
+    /**
+     * Pagination headers returned by the API
+     */
+    private static final String TOTAL_COUNT = "Total-Count";
+    private static final String PAGE_SIZE = "Page-Size";
+    private static final String LINK = "Link";
+    private static final Pattern LAST_PAGE = Pattern.compile("<[^>]*[?&]page=(\\d+)[^>]*>\\s*;\\s*rel=\"last\"");
+
+    /**
+     * Headers for conditional requests
+     */
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Number of HTTP requests in flight when no concurrency is provided
+     */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * Pages retrieved ahead of the consumer for every request in flight
+     */
+    private static final int PAGES_AHEAD_PER_REQUEST = 2;
+
     /**
      * Another dependecy that will make the real HTTP requests
      */
     private HTTPService httpService;
 
     /**
-     * JSON serializer/deserializer
+     * Streaming JSON deserializer
      */
-    private ObjectMapper objectMapper;
+    private final CardsResponseParser parser;
+
+    /**
+     * Maximum number of HTTP requests in flight
+     */
+    private final int concurrency;
+
+    /**
+     * Dependency to checkpoint the pages retrieved. If it's null there are no checkpoints
+     */
+    private RefreshStateService refreshStateService;
 
     /**
      * Injection of dependencies through constructor
@@ -47,48 +124,420 @@ public class APIAssemblerImpl implements APIAssembler {
      * @param httpService Dependency to make HTTP requests
      */
     public APIAssemblerImpl(HTTPService httpService) {
+        this(httpService, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * Injection of dependencies through constructor
+     *
+     * @param httpService Dependency to make HTTP requests
+     * @param concurrency Maximum number of HTTP requests in flight
+     */
+    public APIAssemblerImpl(HTTPService httpService, int concurrency) {
+        this(httpService, concurrency, null);
+    }
+
+    /**
+     * Injection of dependencies through constructor
+     *
+     * @param httpService Dependency to make HTTP requests
+     * @param concurrency Maximum number of HTTP requests in flight
+     * @param refreshStateService Dependency to checkpoint the pages retrieved, so a failed refresh can be resumed
+     */
+    public APIAssemblerImpl(HTTPService httpService, int concurrency, RefreshStateService refreshStateService) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency should be at least 1.");
+        }
+
         this.httpService = httpService;
-        objectMapper = new ObjectMapper();
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.concurrency = concurrency;
+        this.refreshStateService = refreshStateService;
+        parser = new CardsResponseParser();
     }
 
+    @Override
     public List<Card> getCards(String url) throws IOException {
+        List<Card> completeList = new ArrayList<>();
+        getPages(url, Collections.emptyMap(), page -> completeList.addAll(page.getCards()));
+        return completeList;
+    }
+
+    /**
+     * Retrieves all the pages of the API in order.
+     *
+     * @param url API url, null for the standard one
+     * @param knownPages Fingerprints of the previous refresh by page number. Empty to retrieve everything
+     * @return Pages in order. Pages that didn't change have no cards, only the fingerprint
+     * @throws IOException If any request fails
+     */
+    @Override
+    public List<Page> getPages(String url, Map<Integer, PageFingerprint> knownPages) throws IOException {
+        List<Page> pages = new ArrayList<>();
+        getPages(url, knownPages, pages::add);
+        return pages;
+    }
+
+    /**
+     * Retrieves all the pages of the API and hands them to the consumer in order, as soon
+     * as they are available. The consumer runs in the calling thread while next pages are
+     * still being requested and parsed, and only a bounded number of pages are retrieved
+     * ahead of it. So the consumer can persist the pages without having all of them in memory.
+     *
+     * @param url API url, null for the standard one
+     * @param knownPages Fingerprints of the previous refresh by page number. Empty to retrieve everything
+     * @param consumer Receives the pages in order. Pages that didn't change have no cards, only the fingerprint
+     * @throws IOException If any request fails or the consumer fails
+     */
+    @Override
+    public void getPages(String url, Map<Integer, PageFingerprint> knownPages, PageConsumer consumer) throws IOException {
         System.err.println("Retrieving cards from API " + getFinalURL(url));
 
-        List<Card> completeList = new ArrayList<>();
-        int page = 1;
+        Checkpoint checkpoint = readCheckpoint(url);
+        Progress progress = new Progress(consumer);
+        FetchedPage firstPage = getPage(url, 1, knownPages, checkpoint);
+
+        if (!isEmpty(firstPage.page)) {
+            int totalPages = checkpoint.getTotalPages();
+            if (totalPages <= 0 && firstPage.response != null) {
+                totalPages = getTotalPages(firstPage.response, getSize(firstPage.page));
+            }
+            saveTotalPages(checkpoint, totalPages);
+            progress.accept(firstPage.page);
+
+            if (totalPages > 0) {
+                System.err.println(totalPages + " pages to retrieve with " + concurrency + " concurrent requests");
+                getPagesConcurrently(url, 2, totalPages, knownPages, checkpoint, progress);
+            } else {
+                // Without pagination headers, pages known from a previous refresh can still
+                // be requested concurrently. Then continue one by one until an empty page.
+                int lastKnownPage = knownPages.keySet().stream().max(Integer::compare).orElse(1);
+                getPagesConcurrently(url, 2, lastKnownPage, knownPages, checkpoint, progress);
+                if (progress.pages == lastKnownPage) {
+                    getPagesSequentially(url, lastKnownPage + 1, knownPages, checkpoint, progress);
+                }
+            }
+        }
+
+        progress.printSummary(!knownPages.isEmpty());
+    }
+
+    /**
+     * Requests pages firstPage..lastPage with a bounded number of requests in flight.
+     * Pages are handed to the consumer in order. It stops at the first empty page.
+     *
+     * Next pages are submitted before the consumer is called, so requests, parsing and the
+     * consumer overlap. Only a window of pages ahead of the consumer is requested.
+     */
+    private void getPagesConcurrently(String url, int firstPage, int lastPage, Map<Integer, PageFingerprint> knownPages,
+                                      Checkpoint checkpoint, PageConsumer consumer) throws IOException {
+        if (firstPage > lastPage) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, lastPage - firstPage + 1));
+        try {
+            Deque<Future<FetchedPage>> window = new ArrayDeque<>();
+            int nextPage = firstPage;
+            int windowSize = concurrency * PAGES_AHEAD_PER_REQUEST;
+
+            while (nextPage <= lastPage && window.size() < windowSize) {
+                window.add(submit(executor, url, nextPage++, knownPages, checkpoint));
+            }
+
+            while (!window.isEmpty()) {
+                Page page = waitFor(window.poll()).page;
+                if (isEmpty(page)) {
+                    break;
+                }
+
+                if (nextPage <= lastPage) {
+                    window.add(submit(executor, url, nextPage++, knownPages, checkpoint));
+                }
+                consumer.accept(page);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Future<FetchedPage> submit(ExecutorService executor, String url, int pageNumber,
+                                       Map<Integer, PageFingerprint> knownPages, Checkpoint checkpoint) {
+        return executor.submit(() -> getPage(url, pageNumber, knownPages, checkpoint));
+    }
+
+    /**
+     * Requests one page after the other until an empty page is found
+     */
+    private void getPagesSequentially(String url, int firstPage, Map<Integer, PageFingerprint> knownPages,
+                                      Checkpoint checkpoint, PageConsumer consumer) throws IOException {
+        int page = firstPage;
 
         while (true) {
-            List<Card> partialResult = makeRequest(url, page);
+            Page partialResult = getPage(url, page, knownPages, checkpoint).page;
 
-            if (partialResult == null || partialResult.isEmpty()) {
+            if (isEmpty(partialResult)) {
                 break;
             } else {
-                completeList.addAll(partialResult);
-                if (page % 10 == 0) System.err.println(completeList.size() + " cards retrieved");
+                consumer.accept(partialResult);
             }
 
             page++;
         }
+    }
 
-        System.err.println(completeList.size() + " cards. Done!");
-        return completeList;
+    /**
+     * Takes the page from the checkpoint if it was already retrieved. Otherwise it's
+     * requested and staged. Unchanged pages staged in an incremental refresh have no cards,
+     * so they can't be used in a complete refresh.
+     */
+    private FetchedPage getPage(String url, int pageNumber, Map<Integer, PageFingerprint> knownPages,
+                                Checkpoint checkpoint) throws IOException {
+        if (checkpoint.getStagedPages().contains(pageNumber)) {
+            Page staged = refreshStateService.readStagedPage(pageNumber);
+            if (staged != null && (staged.isModified() || knownPages.containsKey(pageNumber))) {
+                return new FetchedPage(null, staged);
+            }
+        }
+
+        FetchedPage fetched = makeRequest(url, pageNumber, knownPages.get(pageNumber));
+        if (refreshStateService != null && !isEmpty(fetched.page)) {
+            refreshStateService.stagePage(fetched.page);
+        }
+        return fetched;
+    }
+
+    /**
+     * Reads the checkpoint of a previous refresh of the same url that didn't finish.
+     */
+    private Checkpoint readCheckpoint(String url) throws IOException {
+        if (refreshStateService == null) {
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.setStagedPages(Collections.emptySet());
+            return checkpoint;
+        }
+
+        Checkpoint checkpoint = refreshStateService.readCheckpoint(getFinalURL(url));
+        if (checkpoint.getStagedPages().isEmpty()) {
+            refreshStateService.writeCheckpoint(checkpoint);
+        } else {
+            System.err.println("Resuming refresh. " + checkpoint.getStagedPages().size() + " pages already retrieved");
+        }
+
+        return checkpoint;
+    }
+
+    private void saveTotalPages(Checkpoint checkpoint, int totalPages) throws IOException {
+        if (refreshStateService != null && totalPages > 0 && checkpoint.getTotalPages() != totalPages) {
+            checkpoint.setTotalPages(totalPages);
+            refreshStateService.writeCheckpoint(checkpoint);
+        }
+    }
+
+    private FetchedPage waitFor(Future<FetchedPage> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while retrieving cards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error retrieving cards", e.getCause());
+        }
+    }
+
+    /**
+     * Calculates the number of pages from the pagination headers
+     *
+     * @param response First page response
+     * @param firstPageSize Number of cards in the first page, used if Page-Size header is not present
+     * @return Total number of pages or -1 if it can't be known
+     */
+    private int getTotalPages(HTTPResponse response, int firstPageSize) {
+        String totalCount = response.getHeader(TOTAL_COUNT);
+        if (totalCount != null) {
+            try {
+                String pageSizeHeader = response.getHeader(PAGE_SIZE);
+                int pageSize = pageSizeHeader != null ? Integer.parseInt(pageSizeHeader.trim()) : firstPageSize;
+                int total = Integer.parseInt(totalCount.trim());
+                if (pageSize > 0) {
+                    return (total + pageSize - 1) / pageSize;
+                }
+            } catch (NumberFormatException e) {
+                // Fall through and try with the Link header
+            }
+        }
+
+        String link = response.getHeader(LINK);
+        if (link != null) {
+            Matcher matcher = LAST_PAGE.matcher(link);
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Requests a page. If it was known from a previous refresh the request is conditional, and
+     * the body is hashed before parsing it, so an unchanged page is never parsed. Otherwise the
+     * body is hashed while it's parsed.
+     */
+    private FetchedPage makeRequest(String url, int pageNumber, PageFingerprint known) throws IOException {
+        return httpService.doGetStream(getPageURL(url, pageNumber), getConditionalHeaders(known), (response, body) -> {
+            Page page = new Page();
+            page.setNumber(pageNumber);
+
+            if (response.getCode() == HTTPService.NOT_MODIFIED) {
+                if (known == null) {
+                    throw new IOException("Page " + pageNumber + " answered Not Modified to an unconditional request");
+                }
+                page.setModified(false);
+                page.setFingerprint(known);
+            } else if (known != null) {
+                DigestInputStream digestStream = new DigestInputStream(body, newDigest());
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                copy(digestStream, content);
+                String hash = toHex(digestStream.getMessageDigest().digest());
+
+                if (hash.equals(known.getHash())) {
+                    page.setModified(false);
+                    page.setFingerprint(newFingerprint(pageNumber, response, hash, known.getCardIds()));
+                } else {
+                    setCards(page, response, parser.parse(new ByteArrayInputStream(content.toByteArray())), hash);
+                }
+            } else {
+                DigestInputStream digestStream = new DigestInputStream(body, newDigest());
+                List<Card> cards = parser.parse(digestStream);
+                copy(digestStream, null);
+                setCards(page, response, cards, toHex(digestStream.getMessageDigest().digest()));
+            }
+
+            return new FetchedPage(response, page);
+        });
     }
 
-    private List<Card> makeRequest(String url, int page) throws IOException {
-        String endpoint = getFinalURL(url);
-        String completeURL = endpoint + String.format(PAGE, page);
-        String result = httpService.doGet(completeURL);
+    private void setCards(Page page, HTTPResponse response, List<Card> cards, String hash) {
+        List<String> cardIds = cards.stream().map(Card::getId).collect(Collectors.toList());
+        page.setModified(true);
+        page.setCards(cards);
+        page.setFingerprint(newFingerprint(page.getNumber(), response, hash, cardIds));
+    }
+
+    private PageFingerprint newFingerprint(int pageNumber, HTTPResponse response, String hash, List<String> cardIds) {
+        PageFingerprint fingerprint = new PageFingerprint();
+        fingerprint.setPage(pageNumber);
+        fingerprint.setEtag(response.getHeader(ETAG));
+        fingerprint.setLastModified(response.getHeader(LAST_MODIFIED));
+        fingerprint.setHash(hash);
+        fingerprint.setCardIds(cardIds);
+        return fingerprint;
+    }
+
+    private Map<String, String> getConditionalHeaders(PageFingerprint known) {
+        Map<String, String> headers = new HashMap<>();
+        if (known != null) {
+            if (known.getEtag() != null) headers.put(IF_NONE_MATCH, known.getEtag());
+            if (known.getLastModified() != null) headers.put(IF_MODIFIED_SINCE, known.getLastModified());
+        }
+        return headers;
+    }
+
+    private boolean isEmpty(Page page) {
+        return getSize(page) == 0;
+    }
+
+    private int getSize(Page page) {
+        if (page.isModified()) {
+            return page.getCards().size();
+        }
+        List<String> cardIds = page.getFingerprint().getCardIds();
+        return cardIds == null ? 0 : cardIds.size();
+    }
 
-        return parseResponse(result);
+    private String getPageURL(String url, int page) {
+        return getFinalURL(url) + String.format(PAGE, page);
     }
 
     private String getFinalURL(String url) {
         return url == null ? BASE_URL : url;
     }
 
-    private List<Card> parseResponse(String response) throws JsonProcessingException {
-        CardsResponse cardsResponse = objectMapper.readValue(response, CardsResponse.class);
-        return cardsResponse.getCards();
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " not available", e);
+        }
+    }
+
+    private String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Reads the rest of the stream, so the hash covers the whole body
+     *
+     * @param output Where the bytes are copied, null to discard them (what the parser left, like trailing whitespace)
+     */
+    private void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            if (output != null) {
+                output.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Consumer that counts pages and cards to inform about the progress
+     */
+    private class Progress implements PageConsumer {
+        private final PageConsumer consumer;
+        private int pages;
+        private int modifiedPages;
+        private int cards;
+
+        private Progress(PageConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(Page page) throws IOException {
+            consumer.accept(page);
+
+            pages++;
+            cards += getSize(page);
+            if (page.isModified()) modifiedPages++;
+            if (pages % 10 == 0) System.err.println(cards + " cards retrieved");
+        }
+
+        private void printSummary(boolean incremental) {
+            if (incremental) {
+                System.err.println(modifiedPages + " of " + pages + " pages changed since last refresh");
+            }
+            System.err.println(cards + " cards. Done!");
+        }
+    }
+
+    /**
+     * A page and the response it came from. Headers of the first page are needed for pagination.
+     * Response is null if the page was taken from the checkpoint
+     */
+    private static class FetchedPage {
+        private final HTTPResponse response;
+        private final Page page;
+
+        private FetchedPage(HTTPResponse response, Page page) {
+            this.response = response;
+            this.page = page;
+        }
     }
 }
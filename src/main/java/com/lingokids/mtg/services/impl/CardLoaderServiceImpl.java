@@ -1,12 +1,24 @@
 package com.lingokids.mtg.services.impl;
 
 import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.model.Page;
+import com.lingokids.mtg.model.PageFingerprint;
 import com.lingokids.mtg.services.APIAssembler;
 import com.lingokids.mtg.services.CardLoaderService;
+import com.lingokids.mtg.services.FilterService;
+import com.lingokids.mtg.services.RefreshStateService;
 import com.lingokids.mtg.services.StorageService;
+import com.lingokids.mtg.services.StorageService.CardWriter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 /**
  *
@@ -18,6 +30,19 @@ import java.util.List;
  * is true it will force a complete download of all the cards (582 http requests). Then it
  * will save the response to the file and future queries will be solved faster.
  *
+ * An incremental refresh uses the fingerprints of the pages saved in the previous refresh.
+ * Only the pages that changed are parsed, and the cards of the unchanged pages are taken
+ * from the local file, matching them by id.
+ *
+ * Refresh is a pipeline: pages are requested and parsed concurrently by the assembler and
+ * appended to the storage in order as they arrive.
+ *
+ * Pages are checkpointed while they are retrieved, so if a refresh fails the next one resumes
+ * where it stopped. The checkpoint is deleted once the cards are saved.
+ *
+ * Cards read from local file are filtered one by one while they are read, and cards retrieved
+ * from the API while their page arrives, so the cards that don't match are never kept in memory.
+ *
  * A url parameter is provided if the client wants to download the cards from a different url
  * but the response structure should be the same.
  *
@@ -37,27 +62,208 @@ public class CardLoaderServiceImpl implements CardLoaderService {
      */
     private APIAssembler apiAssembler;
 
+    /**
+     * External service to keep the fingerprints of the pages between refreshes.
+     * If it's null refreshes are always complete.
+     *
+     */
+    private RefreshStateService refreshStateService;
+
+    /**
+     * External service to filter the cards. If it's null cards are not filtered.
+     *
+     */
+    private FilterService filterService;
+
     /**
      * Injection of dependencies through constructor
      *
      * @param apiAssembler Dependency to make all the http request and assemble a response
      */
     public CardLoaderServiceImpl(StorageService storageService, APIAssembler apiAssembler) {
+        this(storageService, apiAssembler, null);
+    }
+
+    /**
+     * Injection of dependencies through constructor
+     *
+     * @param apiAssembler Dependency to make all the http request and assemble a response
+     * @param refreshStateService Dependency to keep the fingerprints of the pages for incremental refreshes
+     */
+    public CardLoaderServiceImpl(StorageService storageService, APIAssembler apiAssembler,
+                                 RefreshStateService refreshStateService) {
+        this(storageService, apiAssembler, refreshStateService, null);
+    }
+
+    /**
+     * Injection of dependencies through constructor
+     *
+     * @param apiAssembler Dependency to make all the http request and assemble a response
+     * @param refreshStateService Dependency to keep the fingerprints of the pages for incremental refreshes
+     * @param filterService Dependency to filter the cards while they are read
+     */
+    public CardLoaderServiceImpl(StorageService storageService, APIAssembler apiAssembler,
+                                 RefreshStateService refreshStateService, FilterService filterService) {
         this.storageService = storageService;
         this.apiAssembler = apiAssembler;
+        this.refreshStateService = refreshStateService;
+        this.filterService = filterService;
     }
 
     @Override
     public List<Card> getCards(String url, boolean refresh) throws IOException {
-        List<Card> cards;
+        return getCards(url, refresh, false);
+    }
+
+    @Override
+    public List<Card> getCards(String url, boolean refresh, boolean incremental) throws IOException {
+        return getCards(url, refresh, incremental, CardQuery.all());
+    }
 
+    /**
+     * Cards retrieved from the API are all the cards with all their fields. Local storage
+     * only reads what is needed to answer the query: it can skip details or cards that will
+     * be filtered out.
+     *
+     * If there is a filter service, only the cards matching the filters of the query are returned.
+     * Cards are filtered while they are read or retrieved, so only the matching ones are kept in memory.
+     *
+     * @param query Query to be answered with the cards
+     */
+    @Override
+    public List<Card> getCards(String url, boolean refresh, boolean incremental, CardQuery query) throws IOException {
+        Map<String, String> filters = query.getFilters();
+        boolean filtered = filterService != null && filters != null && !filters.isEmpty();
+        Predicate<Card> filter = filtered ? filterService.getPredicate(filters) : card -> true;
+
+        if (filtered) {
+            System.err.println("Applying filters = " + filters + " while loading cards.");
+        }
+
+        List<Card> cards;
         if (refresh || !storageService.dataExists()) {
-            cards = apiAssembler.getCards(url);
-            storageService.write(cards);
+            cards = incremental && storageService.dataExists()
+                    ? refreshIncrementally(url, filter)
+                    : refreshCompletely(url, filter);
         } else {
-            cards = storageService.read();
+            List<Card> matching = new ArrayList<>();
+            storageService.read(query, card -> {
+                if (filter.test(card)) {
+                    matching.add(card);
+                }
+            });
+            cards = matching;
         }
 
+        if (filtered) {
+            System.err.println(cards.size() + " cards after filtering.");
+        }
         return cards;
     }
+
+    /**
+     * Pages are appended to the storage as soon as they arrive, while next pages are still
+     * being retrieved and parsed.
+     *
+     * @param filter Only the cards matching it are kept
+     * @return Cards retrieved matching the filter
+     */
+    private List<Card> refreshCompletely(String url, Predicate<Card> filter) throws IOException {
+        List<Card> cards = new ArrayList<>();
+        List<PageFingerprint> fingerprints = new ArrayList<>();
+
+        try (CardWriter writer = storageService.openWriter()) {
+            apiAssembler.getPages(url, Collections.emptyMap(), page -> {
+                writer.append(page.getCards());
+                page.getCards().stream().filter(filter).forEach(cards::add);
+                fingerprints.add(page.getFingerprint());
+            });
+            writer.commit();
+        }
+
+        finishRefresh(fingerprints);
+        return cards;
+    }
+
+    /**
+     * Refresh that only parses the pages that changed since last refresh. If there
+     * are no fingerprints of a previous refresh it's a complete refresh.
+     *
+     * The storage is only replaced if some page changed.
+     *
+     * @param filter Only the cards matching it are kept
+     * @return Cards of the refreshed storage matching the filter
+     */
+    private List<Card> refreshIncrementally(String url, Predicate<Card> filter) throws IOException {
+        Map<Integer, PageFingerprint> knownPages = refreshStateService != null
+                ? refreshStateService.readFingerprints()
+                : Collections.emptyMap();
+
+        if (knownPages.isEmpty()) {
+            return refreshCompletely(url, filter);
+        }
+
+        Map<String, Card> cachedCards = new HashMap<>();
+        for (Card card : storageService.read()) {
+            cachedCards.put(card.getId(), card);
+        }
+
+        List<Card> cards = new ArrayList<>();
+        List<PageFingerprint> fingerprints = new ArrayList<>();
+        AtomicBoolean modified = new AtomicBoolean(false);
+
+        try (CardWriter writer = storageService.openWriter()) {
+            apiAssembler.getPages(url, knownPages, page -> {
+                List<Card> pageCards = page.isModified() ? page.getCards() : getCachedCards(page, cachedCards);
+                writer.append(pageCards);
+                pageCards.stream().filter(filter).forEach(cards::add);
+                fingerprints.add(page.getFingerprint());
+                modified.compareAndSet(false, page.isModified());
+            });
+
+            if (modified.get() || fingerprints.size() != knownPages.size()) {
+                writer.commit();
+            }
+        } catch (CardNotCachedException e) {
+            System.err.println(e.getMessage() + " Doing a complete refresh.");
+            return refreshCompletely(url, filter);
+        }
+
+        finishRefresh(fingerprints);
+        return cards;
+    }
+
+    private List<Card> getCachedCards(Page page, Map<String, Card> cachedCards) throws CardNotCachedException {
+        List<Card> cards = new ArrayList<>();
+        for (String id : page.getFingerprint().getCardIds()) {
+            Card card = cachedCards.get(id);
+            if (card == null) {
+                throw new CardNotCachedException("Card " + id + " not found in local file.");
+            }
+            cards.add(card);
+        }
+        return cards;
+    }
+
+    /**
+     * Once the cards are saved, fingerprints are kept for next incremental refresh and
+     * the pages staged during this refresh are not needed anymore.
+     */
+    private void finishRefresh(List<PageFingerprint> fingerprints) throws IOException {
+        if (refreshStateService != null) {
+            refreshStateService.writeFingerprints(fingerprints);
+            refreshStateService.deleteCheckpoint();
+        }
+    }
+
+    /**
+     * An unchanged page has a card that is not in the local file
+     */
+    private static class CardNotCachedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private CardNotCachedException(String message) {
+            super(message);
+        }
+    }
 }
@@ -0,0 +1,460 @@
+package com.lingokids.mtg.services.impl;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.lingokids.mtg.filter.FilterOperator;
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.services.StorageService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * This implementation of the Storage service keeps the cards in an embedded H2 database,
+ * a file named "mtg_cards.mv.db" located in $HOME directory. There is no database server.
+ *
+ * Every card is a row of table "card" with its position in the catalogue, the card as JSON
+ * without details and the details as JSON apart. Fields used to query the cards are columns
+ * too, indexed and with a lowercase key to compare them like {@link FilterServiceImpl} does:
+ * set, rarity, name, type, cmc and multiverseid. Colors and types of every card are in side
+ * tables.
+ *
+ * Filters on those fields are translated to SQL, so only the matching cards leave the
+ * database. The rest of the filters are applied by the caller as usual. Cards are sorted
+ * by the grouping fields when they are columns, so groups arrive already together, but
+ * they are still grouped by the caller.
+ *
+ * Writing replaces all the rows in a single transaction, so previous cards are kept until
+ * the writer is committed. A new version is saved in table "card_version" in the same transaction.
+ *
+ */
+public class DatabaseStorageServiceImpl implements StorageService {
+
+    private static final String DATABASE_NAME = "mtg_cards";
+    private static final String DATABASE_FILENAME = DATABASE_NAME + ".mv.db";
+    private static final String TRACE_FILENAME = DATABASE_NAME + ".trace.db";
+    private static final int FETCH_SIZE = 1000;
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS card (position INT PRIMARY KEY, id VARCHAR, "
+                    + "name VARCHAR, name_key VARCHAR, type VARCHAR, type_key VARCHAR, "
+                    + "rarity VARCHAR, rarity_key VARCHAR, card_set VARCHAR, set_key VARCHAR, "
+                    + "cmc DOUBLE PRECISION, multiverseid INT, core VARCHAR NOT NULL, details VARCHAR)",
+            "CREATE INDEX IF NOT EXISTS card_name ON card(name_key)",
+            "CREATE INDEX IF NOT EXISTS card_type ON card(type_key)",
+            "CREATE INDEX IF NOT EXISTS card_rarity ON card(rarity_key)",
+            "CREATE INDEX IF NOT EXISTS card_set ON card(set_key)",
+            "CREATE INDEX IF NOT EXISTS card_cmc ON card(cmc)",
+            "CREATE INDEX IF NOT EXISTS card_multiverseid ON card(multiverseid)",
+            "CREATE TABLE IF NOT EXISTS card_color (position INT NOT NULL, value_key VARCHAR NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS card_color_position ON card_color(position)",
+            "CREATE INDEX IF NOT EXISTS card_color_key ON card_color(value_key)",
+            "CREATE TABLE IF NOT EXISTS card_types (position INT NOT NULL, value_key VARCHAR NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS card_types_position ON card_types(position)",
+            "CREATE INDEX IF NOT EXISTS card_types_key ON card_types(value_key)",
+            // Legalities can't be filtered, databases written by previous versions had them apart
+            "DROP TABLE IF EXISTS card_legality",
+            "CREATE TABLE IF NOT EXISTS card_version (version VARCHAR NOT NULL)"
+    };
+
+    private static final String[] TABLES = {"card", "card_color", "card_types", "card_version"};
+
+    /**
+     * Filters compared with a lowercase key column, by field name
+     */
+    private static final Map<String, String> KEY_COLUMNS = new LinkedHashMap<>();
+
+    /**
+     * Side tables with a row per value of a list, lowercase, by field name
+     */
+    private static final Map<String, String> SIDE_TABLES = new LinkedHashMap<>();
+
+    /**
+     * Columns cards can be sorted by when they are grouped, by field name
+     */
+    private static final Map<String, String> GROUP_COLUMNS = new LinkedHashMap<>();
+
+    static {
+        KEY_COLUMNS.put("set", "set_key");
+        KEY_COLUMNS.put("rarity", "rarity_key");
+        KEY_COLUMNS.put("name", "name_key");
+        KEY_COLUMNS.put("type", "type_key");
+
+        SIDE_TABLES.put("colors", "card_color");
+        SIDE_TABLES.put("types", "card_types");
+
+        GROUP_COLUMNS.put("set", "card_set");
+        GROUP_COLUMNS.put("rarity", "rarity");
+        GROUP_COLUMNS.put("name", "name");
+        GROUP_COLUMNS.put("type", "type");
+        GROUP_COLUMNS.put("cmc", "cmc");
+        GROUP_COLUMNS.put("multiverseid", "multiverseid");
+    }
+
+    private final ObjectReader cardReader;
+    private final ObjectWriter coreWriter;
+    private final ObjectWriter detailsWriter;
+
+    public DatabaseStorageServiceImpl() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        cardReader = objectMapper.readerFor(Card.class);
+        coreWriter = objectMapper.writer(new SimpleFilterProvider()
+                .addFilter("customFilter", SimpleBeanPropertyFilter.serializeAllExcept(Card.DETAIL_FIELDS)));
+        detailsWriter = objectMapper.writer(new SimpleFilterProvider()
+                .addFilter("customFilter", SimpleBeanPropertyFilter.filterOutAllExcept(Card.DETAIL_FIELDS)));
+    }
+
+    /**
+     * Data exists if the database has cards. A database without them was never committed.
+     *
+     * @return True if there are cards in the database
+     */
+    @Override
+    public boolean dataExists() {
+        if (!Files.exists(getDatabasePath())) {
+            return false;
+        }
+
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement()) {
+            ResultSet resultSet = statement.executeQuery(
+                    "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'CARD'");
+            resultSet.next();
+            if (resultSet.getInt(1) == 0) {
+                return false;
+            }
+
+            return statement.executeQuery("SELECT 1 FROM card LIMIT 1").next();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return Version saved with the cards or null if there are no cards or no version
+     */
+    @Override
+    public String getVersion() {
+        if (!dataExists()) {
+            return null;
+        }
+
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT version FROM card_version")) {
+            return resultSet.next() ? "database:" + resultSet.getString(1) : null;
+        } catch (SQLException e) {
+            // Written before versions were saved
+            return null;
+        }
+    }
+
+    @Override
+    public List<Card> read() throws IOException {
+        return read(CardQuery.all());
+    }
+
+    @Override
+    public List<Card> read(CardQuery query) throws IOException {
+        List<Card> cards = new ArrayList<>();
+        read(query, cards::add);
+        return cards;
+    }
+
+    /**
+     * Reads the cards matching the filters that can be done in SQL, in order of position or
+     * grouped. Details are only read if the query needs them.
+     */
+    @Override
+    public void read(CardQuery query, Consumer<Card> consumer) throws IOException {
+        System.err.println("Reading cards from database " + getDatabasePath());
+
+        boolean details = query.needsDetails();
+        List<Object> parameters = new ArrayList<>();
+        String sql = "SELECT core" + (details ? ", details" : "") + " FROM card"
+                + " WHERE " + getWhere(query, parameters)
+                + " ORDER BY " + getOrder(query);
+
+        try (Connection connection = connect();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            statement.setFetchSize(FETCH_SIZE);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Card card = cardReader.readValue(resultSet.getString(1));
+                    String cardDetails = details ? resultSet.getString(2) : null;
+                    if (cardDetails != null) {
+                        cardReader.withValueToUpdate(card).readValue(cardDetails);
+                    }
+                    consumer.accept(card);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Error reading cards from database " + getDatabasePath(), e);
+        }
+    }
+
+    @Override
+    public void write(List<Card> cardList) throws IOException {
+        try (CardWriter cardWriter = openWriter()) {
+            cardWriter.append(cardList);
+            cardWriter.commit();
+        }
+    }
+
+    @Override
+    public CardWriter openWriter() throws IOException {
+        return new DatabaseCardWriter();
+    }
+
+    @Override
+    public void delete() throws IOException {
+        Files.deleteIfExists(getDatabasePath());
+        Files.deleteIfExists(Paths.get(System.getProperty("user.home"), TRACE_FILENAME));
+    }
+
+    /**
+     * Conditions for the filters on columns and side tables. Values are compared like
+     * {@link FilterServiceImpl} does, so no card matching the filters is left out.
+     *
+     * @param parameters Values of the conditions are added here, in order
+     * @return Condition for the WHERE clause
+     */
+    private String getWhere(CardQuery query, List<Object> parameters) {
+        StringBuilder where = new StringBuilder("TRUE");
+
+        for (Map.Entry<String, String> column : KEY_COLUMNS.entrySet()) {
+            Set<String> values = query.getFilterValues(column.getKey());
+            if (!values.isEmpty()) {
+                where.append(" AND ").append(column.getValue()).append(" IN (").append(placeholders(values.size())).append(')');
+                parameters.addAll(values);
+            }
+        }
+
+        addNumberFilter(query, "cmc", Double::valueOf, where, parameters);
+        addNumberFilter(query, "multiverseid", Integer::valueOf, where, parameters);
+
+        // Lists must have exactly the filtered values, no more, no less
+        for (Map.Entry<String, String> table : SIDE_TABLES.entrySet()) {
+            Set<String> values = query.getFilterValues(table.getKey());
+            if (!values.isEmpty()) {
+                where.append(" AND position IN (SELECT position FROM ").append(table.getValue())
+                        .append(" GROUP BY position HAVING COUNT(*) = ? AND COUNT(CASE WHEN ")
+                        .append("value_key IN (").append(placeholders(values.size()))
+                        .append(") THEN 1 END) = ?)");
+                parameters.add(values.size());
+                parameters.addAll(values);
+                parameters.add(values.size());
+            }
+        }
+
+        return where.toString();
+    }
+
+    /**
+     * Numbers are compared as numbers. Values that are not numbers can't match any card.
+     * Filters with ranges are left to the caller.
+     */
+    private void addNumberFilter(CardQuery query, String field, Function<String, Object> parser,
+                                 StringBuilder where, List<Object> parameters) {
+        Set<String> values = query.getFilterValues(field);
+        if (values.isEmpty() || values.stream().anyMatch(FilterOperator::isRange)) {
+            return;
+        }
+
+        List<Object> numbers = new ArrayList<>();
+        for (String value : values) {
+            try {
+                numbers.add(parser.apply(value));
+            } catch (NumberFormatException e) {
+                // Not a number
+            }
+        }
+
+        if (numbers.isEmpty()) {
+            where.append(" AND FALSE");
+        } else {
+            where.append(" AND ").append(field).append(" IN (").append(placeholders(numbers.size())).append(')');
+            parameters.addAll(numbers);
+        }
+    }
+
+    /**
+     * Cards are sorted by the leading grouping fields that are columns, then by position
+     */
+    private String getOrder(CardQuery query) {
+        StringBuilder order = new StringBuilder();
+        List<String> groupBy = query.getGroupBy() != null ? query.getGroupBy() : Collections.emptyList();
+        for (String field : groupBy) {
+            String column = GROUP_COLUMNS.get(field.toLowerCase());
+            if (column == null) {
+                break;
+            }
+            order.append(column).append(", ");
+        }
+        return order.append("position").toString();
+    }
+
+    private String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection("jdbc:h2:file:" + Paths.get(System.getProperty("user.home"), DATABASE_NAME));
+    }
+
+    private Path getDatabasePath() {
+        return Paths.get(System.getProperty("user.home"), DATABASE_FILENAME);
+    }
+
+    /**
+     * Replaces all the cards in a transaction, committed with the writer
+     */
+    private class DatabaseCardWriter implements CardWriter {
+        private final Connection connection;
+        private final PreparedStatement cardStatement;
+        private final PreparedStatement colorStatement;
+        private final PreparedStatement typeStatement;
+        private int position;
+        private boolean committed;
+
+        private DatabaseCardWriter() throws IOException {
+            try {
+                connection = connect();
+                try (Statement statement = connection.createStatement()) {
+                    for (String sql : SCHEMA) {
+                        statement.execute(sql);
+                    }
+
+                    connection.setAutoCommit(false);
+                    for (String table : TABLES) {
+                        statement.execute("DELETE FROM " + table);
+                    }
+                }
+
+                cardStatement = connection.prepareStatement("INSERT INTO card (position, id, name, name_key, "
+                        + "type, type_key, rarity, rarity_key, card_set, set_key, cmc, multiverseid, core, details) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                colorStatement = connection.prepareStatement("INSERT INTO card_color (position, value_key) VALUES (?, ?)");
+                typeStatement = connection.prepareStatement("INSERT INTO card_types (position, value_key) VALUES (?, ?)");
+            } catch (SQLException e) {
+                close();
+                throw new IOException("Error opening database " + getDatabasePath(), e);
+            }
+        }
+
+        @Override
+        public void append(Collection<Card> cards) throws IOException {
+            try {
+                for (Card card : cards) {
+                    addCard(card, position++);
+                }
+
+                cardStatement.executeBatch();
+                colorStatement.executeBatch();
+                typeStatement.executeBatch();
+            } catch (SQLException e) {
+                throw new IOException("Error writing cards to database " + getDatabasePath(), e);
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            try (PreparedStatement versionStatement = connection.prepareStatement("INSERT INTO card_version (version) VALUES (?)")) {
+                versionStatement.setString(1, UUID.randomUUID().toString());
+                versionStatement.executeUpdate();
+                connection.commit();
+                committed = true;
+            } catch (SQLException e) {
+                throw new IOException("Error writing cards to database " + getDatabasePath(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (connection == null) {
+                return;
+            }
+
+            try {
+                if (!committed) {
+                    connection.rollback();
+                }
+                connection.close();
+            } catch (SQLException e) {
+                // Nothing else can be done, the transaction is lost anyway
+            }
+        }
+
+        private void addCard(Card card, int position) throws IOException, SQLException {
+            cardStatement.setInt(1, position);
+            cardStatement.setString(2, card.getId());
+            setText(3, card.getName());
+            setText(5, card.getType());
+            setText(7, card.getRarity());
+            setText(9, card.getSet());
+            cardStatement.setDouble(11, card.getCmc());
+            cardStatement.setInt(12, card.getMultiverseid());
+            cardStatement.setString(13, coreWriter.writeValueAsString(card));
+            cardStatement.setString(14, detailsWriter.writeValueAsString(card));
+            cardStatement.addBatch();
+
+            addKeys(colorStatement, position, card.getColors());
+            addKeys(typeStatement, position, card.getTypes());
+        }
+
+        /**
+         * Sets a text column and its lowercase key in the next one
+         */
+        private void setText(int index, String value) throws SQLException {
+            cardStatement.setString(index, value);
+            if (value == null) {
+                cardStatement.setNull(index + 1, Types.VARCHAR);
+            } else {
+                cardStatement.setString(index + 1, value.toLowerCase());
+            }
+        }
+
+        private void addKeys(PreparedStatement statement, int position, List<String> values) throws SQLException {
+            if (values == null) {
+                return;
+            }
+
+            for (String value : values) {
+                if (value != null) {
+                    statement.setInt(1, position);
+                    statement.setString(2, value.toLowerCase());
+                    statement.addBatch();
+                }
+            }
+        }
+    }
+}
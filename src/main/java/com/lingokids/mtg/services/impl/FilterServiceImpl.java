@@ -1,29 +1,58 @@
 package com.lingokids.mtg.services.impl;
 
+import com.lingokids.mtg.filter.CardDictionary;
+import com.lingokids.mtg.filter.FieldStatistics;
+import com.lingokids.mtg.filter.FilterPlan;
 import com.lingokids.mtg.model.Card;
 import com.lingokids.mtg.services.FilterService;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
 
 /**
  * This service takes a list of cards and a Map of filters (key, value)
  * and apply the filters.
  *
- * It has a very long switch statement. I tried to do it first with Reflection but the
- * code was too complicated and very hard to understand. So I switched to a easy to read
- * but very long switch statement.
+ * Filters are compiled into a {@link FilterPlan} before looking at any card, so fields are
+ * not looked up by name for every card and wrong fields are reported even if there are no cards.
+ * All the filters are checked in one pass over the cards, the cheapest and most selective first.
  *
- * Filtering is done using Functional Programming: Java 8 streams + Lambdas.
+ * Lists with many cards are split in chunks filtered in parallel by a fork-join pool. Matching
+ * cards of every chunk are kept apart and joined at the end, so they keep their order.
  *
  */
 public class FilterServiceImpl implements FilterService {
 
-    private static final String TRUE = "true";
-    private static final String FALSE = "false";
+    /**
+     * Lists with less cards are filtered by the calling thread, splitting them costs more than it saves
+     */
+    public static final int DEFAULT_THRESHOLD = 16_384;
+
+    /**
+     * Cards filtered by a task, small enough to keep their references in the cache of a core
+     */
+    private static final int CHUNK_SIZE = 2_048;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    public FilterServiceImpl() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param pool Pool filtering the chunks of the lists, with parallelism 1 lists are filtered sequentially
+     * @param threshold Minimum number of cards to filter a list in parallel
+     */
+    public FilterServiceImpl(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
 
     @Override
     public List<Card> filter(List<Card> cards, Map<String, String> filters) {
@@ -33,240 +62,107 @@ public class FilterServiceImpl implements FilterService {
 
         System.err.println("Applying filters = " + filters + " to " + cards.size() + " cards.");
 
-        List<Card> filteredCards = cards;
-        for (Map.Entry<String, String> filter : filters.entrySet()) {
-            String field = filter.getKey();
-            Set<String> values = convertArrayToSet(filter.getValue());
+        List<Card> filteredCards = filter(cards, getPredicate(filters));
+
+        System.err.println(filteredCards.size() + " cards after filtering.");
+
+        return filteredCards;
+    }
 
-            if (values != null && !values.isEmpty()) {
-                filteredCards = filteredCards.stream()
-                        .filter(card -> containsValue(card, field, values))
-                        .collect(Collectors.toList());
+    /**
+     * @param cards Cards to be filtered, in parallel if there are enough of them
+     * @param predicate Predicate of the cards to keep, it's called from several threads
+     * @return The cards matching the predicate, in the same order
+     */
+    @Override
+    public List<Card> filter(List<Card> cards, Predicate<Card> predicate) {
+        if (cards.size() < threshold || pool.getParallelism() <= 1 || !(cards instanceof RandomAccess)) {
+            List<Card> filteredCards = new ArrayList<>();
+            for (Card card : cards) {
+                if (predicate.test(card)) {
+                    filteredCards.add(card);
+                }
             }
+            return filteredCards;
         }
 
-        System.err.println(filteredCards.size() + " cards after filtering.");
+        int chunks = (cards.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        List<List<Card>> matches = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            matches.add(null);
+        }
+        pool.invoke(new FilterTask(cards, predicate, matches, 0, chunks));
 
+        List<Card> filteredCards = new ArrayList<>(matches.stream().mapToInt(List::size).sum());
+        matches.forEach(filteredCards::addAll);
         return filteredCards;
     }
 
     /**
-     * Converts a String containing values separated by commas to a Set (no duplicates) and
-     * in lowercase to ease comparison in next steps
-     * <p>
-     * Example "Red,BLUE" -> Set[red, blue]
+     * All the filters combined in a single predicate, so cards can be filtered one by one
+     * while they are read. Values of the filters are converted only once.
      *
-     * @param value Comma separated values
-     * @return Set containing the values and without duplicates
+     * @param filters Map of filters (field, comma separated values), it can be null
+     * @return Predicate true for the cards matching all the filters
+     * @throws IllegalArgumentException If a field doesn't exist or can't be filtered
      */
-    private Set<String> convertArrayToSet(String value) {
-        String[] values = value.split(",");
-        return Arrays.stream(values)
-                .filter(text -> text != null && text.length() > 0)
-                .map(String::toLowerCase)
-                .collect(Collectors.toSet());
+    @Override
+    public Predicate<Card> getPredicate(Map<String, String> filters) {
+        return FilterPlan.compile(filters);
     }
 
-    private boolean containsValue(Card card, String fieldName, Set<String> values) {
-        boolean contains = false;
-
-        switch (fieldName.toLowerCase()) {
-            case "id":
-                contains = values.contains(card.getId().toLowerCase());
-                break;
-
-            case "layout":
-                contains = values.contains(card.getLayout().toLowerCase());
-                break;
-
-            case "name":
-                contains = values.contains(card.getName().toLowerCase());
-                break;
-
-            case "names":
-                contains = intersectionHasSameSize(card.getNames(), values);
-                break;
-
-            case "manacost":
-                contains = values.contains(card.getManaCost().toLowerCase());
-                break;
-
-            case "cmc":
-                contains = values.contains(Double.toString(card.getCmc()));
-                break;
-
-            case "colors":
-                contains = intersectionHasSameSize(card.getColors(), values);
-                break;
-
-            case "coloridentity":
-                contains = intersectionHasSameSize(card.getColorIdentity(), values);
-                break;
-
-            case "type":
-                contains = values.contains(card.getType().toLowerCase());
-                break;
-
-            case "supertypes":
-                contains = intersectionHasSameSize(card.getSupertypes(), values);
-                break;
-
-            case "types":
-                contains = intersectionHasSameSize(card.getTypes(), values);
-                break;
-
-            case "subtypes":
-                contains = intersectionHasSameSize(card.getSubtypes(), values);
-                break;
-
-            case "rarity":
-                contains = values.contains(card.getRarity().toLowerCase());
-                break;
-
-            case "text":
-                contains = values.contains(card.getText().toLowerCase());
-                break;
-
-            case "originaltext":
-                contains = values.contains(card.getOriginalText().toLowerCase());
-                break;
-
-            case "originaltype":
-                contains = values.contains(card.getOriginalType().toLowerCase());
-                break;
-
-            case "flavor":
-                contains = values.contains(card.getFlavor().toLowerCase());
-                break;
-
-            case "artist":
-                contains = values.contains(card.getArtist().toLowerCase());
-                break;
-
-            case "number":
-                contains = values.contains(card.getNumber().toLowerCase());
-                break;
-
-            case "power":
-                contains = values.contains(card.getPower().toLowerCase());
-                break;
-
-            case "toughness":
-                contains = values.contains(card.getToughness().toLowerCase());
-                break;
-
-            case "loyalty":
-                contains = values.contains(card.getLoyalty().toLowerCase());
-                break;
-
-            case "multiverseid":
-                contains = values.contains(Integer.toString(card.getMultiverseid()));
-                break;
-
-            case "variations":
-                contains = intersectionHasSameSize(card.getVariations(), values);
-                break;
-
-            case "imagename":
-                contains = values.contains(card.getImageName().toLowerCase());
-                break;
-
-            case "watermark":
-                contains = values.contains(card.getWatermark().toLowerCase());
-                break;
-
-            case "border":
-                contains = values.contains(card.getBorder().toLowerCase());
-                break;
-
-            case "timeshifted":
-                contains = values.contains(card.isTimeshifted() ? TRUE : FALSE);
-                break;
-
-            case "hand":
-                contains = values.contains(Integer.toString(card.getHand()));
-                break;
-
-            case "life":
-                contains = values.contains(Integer.toString(card.getLife()));
-                break;
-
-            case "reserved":
-                contains = values.contains(card.isReserved() ? TRUE : FALSE);
-                break;
-
-            case "releasedate":
-                contains = values.contains(card.getReleaseDate().toLowerCase());
-                break;
-
-            case "starter":
-                contains = values.contains(card.isStarter() ? TRUE : FALSE);
-                break;
-
-            case "set":
-                contains = values.contains(card.getSet().toLowerCase());
-                break;
-
-            case "setname":
-                contains = values.contains(card.getSetName().toLowerCase());
-                break;
-
-            case "printings":
-                contains = intersectionHasSameSize(card.getPrintings(), values);
-                break;
-
-            case "imageurl":
-                contains = values.contains(card.getImageUrl().toLowerCase());
-                break;
-
-            case "pricehigh":
-                contains = values.contains(card.getPriceHigh().toString());
-                break;
-
-            case "pricemid":
-                contains = values.contains(card.getPriceMid().toString());
-                break;
-
-            case "pricelow":
-                contains = values.contains(card.getPriceLow().toString());
-                break;
-
-            case "onlinepricehigh":
-                contains = values.contains(card.getOnlinePriceHigh().toString());
-                break;
-
-            case "onlinepricemid":
-                contains = values.contains(card.getOnlinePriceHigh().toString());
-                break;
-
-            case "onlinepricelow":
-                contains = values.contains(card.getOnlinePriceHigh().toString());
-                break;
-
-            case "legalities":
-            case "rulings":
-            case "foreignnames":
-                throw new IllegalArgumentException("Field '" + fieldName + "' not supported for filtering.");
-
-            default:
-                throw new IllegalArgumentException("Field '" + fieldName + "' does not exist for filtering.");
-        }
-
-        return contains;
+    /**
+     * Same as {@link #getPredicate(Map)}, ordering the filters with the statistics of the cards
+     * that are going to be filtered, so the filters discarding more cards are checked first.
+     *
+     * @param statistics Statistics of the cards, computed when they were loaded. It can be null.
+     * @param dictionary Dictionary the cards were normalized with when they were loaded, to compare
+     *                   repeated values by identity. It can be null.
+     */
+    @Override
+    public FilterPlan getPredicate(Map<String, String> filters, FieldStatistics statistics, CardDictionary dictionary) {
+        return FilterPlan.compile(filters, statistics, dictionary);
     }
 
-    private boolean intersectionHasSameSize(List<String> list, Set<String> values) {
-        if (list == null || list.isEmpty()) {
-            return false;
+    /**
+     * Filters a range of chunks, splitting it in halves until there is a single chunk
+     */
+    private static class FilterTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Card> cards;
+        private final Predicate<Card> predicate;
+        private final List<List<Card>> matches;
+        private final int fromChunk;
+        private final int toChunk;
+
+        private FilterTask(List<Card> cards, Predicate<Card> predicate, List<List<Card>> matches,
+                           int fromChunk, int toChunk) {
+            this.cards = cards;
+            this.predicate = predicate;
+            this.matches = matches;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
         }
 
-        List<String> intersectionList = list.stream()
-                .map(String::toLowerCase)
-                .filter(values::contains)
-                .collect(Collectors.toList());
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                invokeAll(new FilterTask(cards, predicate, matches, fromChunk, middle),
+                        new FilterTask(cards, predicate, matches, middle, toChunk));
+                return;
+            }
 
-        return !intersectionList.isEmpty() &&
-                intersectionList.size() == values.size() &&
-                list.size() == values.size();
+            List<Card> chunkMatches = new ArrayList<>();
+            int end = Math.min(cards.size(), (fromChunk + 1) * CHUNK_SIZE);
+            for (int i = fromChunk * CHUNK_SIZE; i < end; i++) {
+                Card card = cards.get(i);
+                if (predicate.test(card)) {
+                    chunkMatches.add(card);
+                }
+            }
+            matches.set(fromChunk, chunkMatches);
+        }
     }
 }
@@ -3,10 +3,12 @@ package com.lingokids.mtg.services.impl;
 import com.lingokids.mtg.model.Card;
 import com.lingokids.mtg.services.GroupingService;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.function.Function;
 
 import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
 
 /**
  * This service groups cards by 1 or 2 fields. If no groupingBy field is provided
@@ -20,6 +22,9 @@ import static java.util.stream.Collectors.groupingBy;
  *
  * "Map<String, Map<String, List<Card>>>"
  *
+ * Groups keep the order in which they appear in the list, so a storage returning the
+ * cards sorted returns the groups sorted too.
+ *
  * Grouping is done using Functional Programming: Java 8 streams + Lambdas
  *
  */
@@ -32,11 +37,12 @@ public class GroupingServiceImpl implements GroupingService {
         }
 
         if (groupBy.size() == 1) {
-            return cards.stream().collect(groupingBy(getFunction(groupBy.get(0))));
+            return cards.stream().collect(groupingBy(getFunction(groupBy.get(0)), LinkedHashMap::new, toList()));
         }
 
         if (groupBy.size() == 2) {
-            return cards.stream().collect(groupingBy(getFunction(groupBy.get(0)), groupingBy(getFunction(groupBy.get(1)))));
+            return cards.stream().collect(groupingBy(getFunction(groupBy.get(0)), LinkedHashMap::new,
+                    groupingBy(getFunction(groupBy.get(1)), LinkedHashMap::new, toList())));
         }
 
         throw new IllegalArgumentException("Grouping with more than 2 fields not implemented.");
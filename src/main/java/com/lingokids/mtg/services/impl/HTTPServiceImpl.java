@@ -1,18 +1,44 @@
 package com.lingokids.mtg.services.impl;
 
+import com.lingokids.mtg.factories.HTTPClientFactory;
+import com.lingokids.mtg.http.HTTPClientProfile;
+import com.lingokids.mtg.http.RetryPolicy;
+import com.lingokids.mtg.http.TokenBucket;
+import com.lingokids.mtg.model.HTTPResponse;
 import com.lingokids.mtg.services.HTTPService;
+import okhttp3.Headers;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Just an easy implementation to make HTTP requests.
  *
- * No optimizations, no connection pooling, no connection reuse. Just simple timeouts so
- * the connection will not hang forever if there is no response from the server.
+ * The HTTP client is shared: connections are kept alive and reused by every request,
+ * HTTP/2 is used when the server supports it and responses are compressed.
+ * See {@link HTTPClientProfile}.
+ *
+ * It respects the rate limit of the server: every request takes a token from a bucket shared by
+ * all the threads using this service, and the bucket never has more tokens than the
+ * Ratelimit-Remaining header says. Responses 429 and 5xx are retried after the Retry-After
+ * delay or an exponential backoff with jitter. A 429 pauses the whole bucket, so other
+ * threads don't keep hitting the server.
  *
  * It has a potential to make a lot of optimizations and make the reading of the cards
  * from the external API faster.
@@ -21,38 +47,212 @@ import java.util.concurrent.TimeUnit;
 public class HTTPServiceImpl implements HTTPService {
 
     /**
-     * Timeouts when making HTTP requests
+     * Rate limit headers
      */
-    private static long connectTimeout = 2;
-    private static long writeTimeout = 2;
-    private static long readTimeout = 5;
+    private static final String RATELIMIT_REMAINING = "Ratelimit-Remaining";
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final int TOO_MANY_REQUESTS = 429;
 
     /**
      * HTTP client
      */
-    private OkHttpClient client;
+    private final OkHttpClient client;
+
+    /**
+     * Rate limit shared by all requests and when to retry them
+     */
+    private final TokenBucket tokenBucket;
+    private final RetryPolicy retryPolicy;
 
     /**
-     * Create a new HTTP Client to make requests with provided timeouts
-     * so the connection will not hang forever if the server doesn't answer
+     * Use the shared HTTP Client with the default profile
      */
     public HTTPServiceImpl() {
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(connectTimeout, TimeUnit.SECONDS)
-                .writeTimeout(writeTimeout, TimeUnit.SECONDS)
-                .readTimeout(readTimeout, TimeUnit.SECONDS)
-                .build();
+        this(new TokenBucket(), new RetryPolicy());
+    }
+
+    /**
+     * Use the shared HTTP Client with a custom rate limit and retry policy
+     *
+     * @param tokenBucket Rate limit shared by all requests
+     * @param retryPolicy When to retry a request and how long to wait
+     */
+    public HTTPServiceImpl(TokenBucket tokenBucket, RetryPolicy retryPolicy) {
+        this(HTTPClientFactory.getHTTPClientInstance(), tokenBucket, retryPolicy);
+    }
+
+    /**
+     * @param client HTTP Client, it should be shared so connections are reused
+     * @param tokenBucket Rate limit shared by all requests
+     * @param retryPolicy When to retry a request and how long to wait
+     */
+    public HTTPServiceImpl(OkHttpClient client, TokenBucket tokenBucket, RetryPolicy retryPolicy) {
+        this.client = client;
+        this.tokenBucket = tokenBucket;
+        this.retryPolicy = retryPolicy;
     }
 
     @Override
     public String doGet(String url) throws IOException {
-        Request request = new Request.Builder().url(url).build();
-        try (Response response = client.newCall(request).execute()) {
-            if (response.isSuccessful()) {
-                return response.body().string();
-            } else {
-                throw new IOException("Error reading cards from server. Status code " + response.code());
+        return doGetResponse(url).getBody();
+    }
+
+    /**
+     * Same as doGet but the response headers are also returned, so the caller can
+     * read pagination information.
+     *
+     * @param url Complete URL
+     * @return Status code, body and headers of the response
+     * @throws IOException If the request fails or the status code is not 2xx
+     */
+    @Override
+    public HTTPResponse doGetResponse(String url) throws IOException {
+        return doGetStream(url, (response, body) -> {
+            response.setBody(new String(readAllBytes(body), getCharset(response)));
+            return response;
+        });
+    }
+
+    /**
+     * Makes the request and hands the body to the handler as a stream straight from the
+     * connection, so it's never copied to a String.
+     *
+     * @param url Complete URL
+     * @param handler Consumer of the response body
+     * @return Whatever the handler returns
+     * @throws IOException If the request fails, the status code is not 2xx or the handler fails
+     */
+    @Override
+    public <T> T doGetStream(String url, BodyHandler<T> handler) throws IOException {
+        return doGetStream(url, Collections.emptyMap(), handler);
+    }
+
+    /**
+     * Same as doGetStream but with extra request headers. It's used to make conditional
+     * requests (If-None-Match, If-Modified-Since). In that case a 304 Not Modified is not an
+     * error: the handler is called with that status code and an empty body.
+     *
+     * @param url Complete URL
+     * @param requestHeaders Headers added to the request
+     * @param handler Consumer of the response body
+     * @return Whatever the handler returns
+     * @throws IOException If the request fails, the status code is not 2xx or 304, or the handler fails
+     */
+    @Override
+    public <T> T doGetStream(String url, Map<String, String> requestHeaders, BodyHandler<T> handler) throws IOException {
+        Request.Builder builder = new Request.Builder().url(url);
+        requestHeaders.forEach(builder::header);
+        Request request = builder.build();
+
+        for (int attempt = 0; ; attempt++) {
+            tokenBucket.acquire();
+
+            long delay;
+            try (Response response = client.newCall(request).execute()) {
+                updateRateLimit(response);
+
+                if (response.isSuccessful() || response.code() == NOT_MODIFIED) {
+                    HTTPResponse httpResponse = new HTTPResponse();
+                    httpResponse.setCode(response.code());
+                    httpResponse.setHeaders(convertHeaders(response.headers()));
+                    try (InputStream body = response.body().byteStream()) {
+                        return handler.handle(httpResponse, body);
+                    }
+                } else if (retryPolicy.shouldRetry(response.code(), attempt)) {
+                    delay = getRetryDelay(response, attempt);
+                    System.err.println("Status code " + response.code() + " for " + url + ". Retrying in " + delay + " ms");
+                } else {
+                    throw new IOException("Error reading cards from server. Status code " + response.code());
+                }
+            }
+
+            sleep(delay);
+        }
+    }
+
+    private void updateRateLimit(Response response) {
+        String remaining = response.header(RATELIMIT_REMAINING);
+        if (remaining != null) {
+            try {
+                tokenBucket.limitTo(Long.parseLong(remaining.trim()));
+            } catch (NumberFormatException e) {
+                // Ignore a malformed header, the bucket keeps its own count
             }
         }
     }
+
+    /**
+     * Delay requested by the server in Retry-After header or exponential backoff. Server is
+     * saturated on 429, so every other request waits too.
+     */
+    private long getRetryDelay(Response response, int attempt) {
+        long retryAfter = parseRetryAfter(response.header(RETRY_AFTER));
+        long delay = retryAfter >= 0
+                ? retryPolicy.getRetryAfterDelayMillis(retryAfter)
+                : retryPolicy.getDelayMillis(attempt);
+
+        if (response.code() == TOO_MANY_REQUESTS) {
+            tokenBucket.pauseFor(delay);
+        }
+        return delay;
+    }
+
+    /**
+     * Retry-After can be a number of seconds or an HTTP date
+     *
+     * @return Milliseconds to wait or -1 if header is not present or malformed
+     */
+    private long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException e2) {
+                return -1;
+            }
+        }
+    }
+
+    private void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Charset of the Content-Type header, UTF-8 if it's not present or not supported
+     */
+    private Charset getCharset(HTTPResponse response) {
+        String contentType = response.getHeader(CONTENT_TYPE);
+        MediaType mediaType = contentType == null ? null : MediaType.parse(contentType);
+        return mediaType == null ? StandardCharsets.UTF_8 : mediaType.charset(StandardCharsets.UTF_8);
+    }
+
+    private byte[] readAllBytes(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private Map<String, List<String>> convertHeaders(Headers headers) {
+        Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String name : headers.names()) {
+            map.put(name, headers.values(name));
+        }
+        return map;
+    }
 }
@@ -0,0 +1,209 @@
+package com.lingokids.mtg.services.impl;
+
+import com.lingokids.mtg.filter.CardField;
+import com.lingokids.mtg.filter.CardIndex;
+import com.lingokids.mtg.filter.RangeIndex;
+import com.lingokids.mtg.filter.TextIndex;
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.services.IndexService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This implementation of the Index service keeps the bitmaps, the words and the ranges of the {@link CardIndex}
+ * in "mtg_cards.bitmaps" in $HOME, with the version of the cards they were built from.
+ *
+ * If the file is missing, it's from other version of the cards or it can't be read, the index is
+ * built again and saved. Without version the index is only built.
+ *
+ * File format: magic number, format version, version of the cards, number of cards and number
+ * of fields. Then for every field its name, the number of values and, for every value, the
+ * position of the representative card and the words of the bitmap. Then the number of text
+ * fields and for every one its name, the number of words and, for every word, the word, the
+ * number of cards having it and their positions. Then the number of range fields and for every
+ * one its name, the number of cards with the field and, for every card sorted, its key and position.
+ *
+ */
+public class IndexServiceImpl implements IndexService {
+
+    private static final String FILENAME = "mtg_cards.bitmaps";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x4D544749;
+    private static final int FORMAT_VERSION = 5;
+
+    @Override
+    public CardIndex getIndex(List<Card> cards, String version) throws IOException {
+        if (version == null) {
+            return CardIndex.build(cards);
+        }
+
+        CardIndex index = read(cards, version);
+        if (index == null) {
+            index = CardIndex.build(cards);
+            write(index, version);
+        }
+        return index;
+    }
+
+    @Override
+    public void delete() throws IOException {
+        Files.deleteIfExists(getPath());
+    }
+
+    /**
+     * @return Index read from the file or null if it's not valid for the cards
+     */
+    private CardIndex read(List<Card> cards, String version) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(getPath())))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION
+                    || !input.readUTF().equals(version) || input.readInt() != cards.size()) {
+                return null;
+            }
+
+            Map<CardField, Map<Integer, BitSet>> bitmaps = new EnumMap<>(CardField.class);
+            int fields = input.readInt();
+            for (int i = 0; i < fields; i++) {
+                CardField field = CardField.of(input.readUTF());
+                int values = input.readInt();
+                Map<Integer, BitSet> fieldBitmaps = new HashMap<>();
+                for (int j = 0; j < values; j++) {
+                    int representative = input.readInt();
+                    long[] words = new long[input.readInt()];
+                    for (int k = 0; k < words.length; k++) {
+                        words[k] = input.readLong();
+                    }
+                    if (representative < 0 || representative >= cards.size()) {
+                        return null;
+                    }
+                    fieldBitmaps.put(representative, BitSet.valueOf(words));
+                }
+                bitmaps.put(field, fieldBitmaps);
+            }
+
+            Map<CardField, TextIndex> texts = new EnumMap<>(CardField.class);
+            int textFields = input.readInt();
+            for (int i = 0; i < textFields; i++) {
+                CardField field = CardField.of(input.readUTF());
+                String[] words = new String[input.readInt()];
+                int[][] postings = new int[words.length][];
+                for (int j = 0; j < words.length; j++) {
+                    words[j] = input.readUTF();
+                    postings[j] = new int[input.readInt()];
+                    for (int k = 0; k < postings[j].length; k++) {
+                        postings[j][k] = input.readInt();
+                        if (postings[j][k] < 0 || postings[j][k] >= cards.size()) {
+                            return null;
+                        }
+                    }
+                }
+                texts.put(field, new TextIndex(words, postings));
+            }
+
+            Map<CardField, RangeIndex> ranges = new EnumMap<>(CardField.class);
+            int rangeFields = input.readInt();
+            for (int i = 0; i < rangeFields; i++) {
+                CardField field = CardField.of(input.readUTF());
+                long[] keys = new long[input.readInt()];
+                int[] positions = new int[keys.length];
+                for (int j = 0; j < keys.length; j++) {
+                    keys[j] = input.readLong();
+                    positions[j] = input.readInt();
+                    if (positions[j] < 0 || positions[j] >= cards.size()) {
+                        return null;
+                    }
+                }
+                ranges.put(field, new RangeIndex(keys, positions));
+            }
+
+            if (!bitmaps.keySet().equals(CardIndex.INDEXED_FIELDS) || !texts.keySet().equals(CardIndex.TEXT_FIELDS)
+                    || !ranges.keySet().equals(CardIndex.RANGE_FIELDS)) {
+                return null;
+            }
+            return new CardIndex(cards, bitmaps, texts, ranges);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Index of the cards couldn't be read, building it again: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The file is written with other name and then renamed, so it's never read half written
+     */
+    private void write(CardIndex index, String version) throws IOException {
+        Path path = getPath();
+        Path temporary = path.resolveSibling(FILENAME + TEMPORARY_SUFFIX);
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(version);
+            output.writeInt(index.getCards().size());
+            output.writeInt(CardIndex.INDEXED_FIELDS.size());
+            for (CardField field : CardIndex.INDEXED_FIELDS) {
+                output.writeUTF(field.getKey());
+                Map<Integer, BitSet> bitmaps = index.getBitmaps(field);
+                output.writeInt(bitmaps.size());
+                for (Map.Entry<Integer, BitSet> bitmap : bitmaps.entrySet()) {
+                    output.writeInt(bitmap.getKey());
+                    long[] words = bitmap.getValue().toLongArray();
+                    output.writeInt(words.length);
+                    for (long word : words) {
+                        output.writeLong(word);
+                    }
+                }
+            }
+
+            output.writeInt(CardIndex.TEXT_FIELDS.size());
+            for (CardField field : CardIndex.TEXT_FIELDS) {
+                output.writeUTF(field.getKey());
+                TextIndex text = index.getText(field);
+                String[] words = text.getWords();
+                output.writeInt(words.length);
+                for (int i = 0; i < words.length; i++) {
+                    output.writeUTF(words[i]);
+                    int[] postings = text.getPostings(i);
+                    output.writeInt(postings.length);
+                    for (int position : postings) {
+                        output.writeInt(position);
+                    }
+                }
+            }
+
+            output.writeInt(CardIndex.RANGE_FIELDS.size());
+            for (CardField field : CardIndex.RANGE_FIELDS) {
+                output.writeUTF(field.getKey());
+                RangeIndex range = index.getRange(field);
+                long[] keys = range.getKeys();
+                int[] positions = range.getPositions();
+                output.writeInt(keys.length);
+                for (int i = 0; i < keys.length; i++) {
+                    output.writeLong(keys[i]);
+                    output.writeInt(positions[i]);
+                }
+            }
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path getPath() {
+        return Paths.get(System.getProperty("user.home"), FILENAME);
+    }
+}
@@ -8,8 +8,10 @@ import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.lingokids.mtg.services.PrinterService;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Set;
 
 /**
@@ -30,6 +32,16 @@ public class PrinterServiceImpl implements PrinterService {
 
     @Override
     public String print(Object input, Set<String> properties, String filename, boolean pretty) throws IOException {
+        String jsonString = format(input, properties, pretty);
+        output(jsonString, filename);
+        return jsonString;
+    }
+
+    /**
+     * JSON that would be printed, without printing it
+     */
+    @Override
+    public String format(Object input, Set<String> properties, boolean pretty) throws JsonProcessingException {
         SimpleBeanPropertyFilter filter;
         if (properties != null && !properties.isEmpty()) {
             filter = SimpleBeanPropertyFilter.filterOutAllExcept(properties);
@@ -44,14 +56,18 @@ public class PrinterServiceImpl implements PrinterService {
             writer = writer.withDefaultPrettyPrinter();
         }
 
-        String jsonString = writer.writeValueAsString(input);
+        return writer.writeValueAsString(input);
+    }
 
+    /**
+     * Prints JSON already formatted to a file or to stdout
+     */
+    @Override
+    public void output(String json, String filename) throws IOException {
         if (filename != null && !filename.trim().isEmpty()) {
-            writer.writeValue(new File(filename), input);
+            Files.write(Paths.get(filename), json.getBytes(StandardCharsets.UTF_8));
         } else {
-            System.out.println(jsonString);
+            System.out.println(json);
         }
-
-        return jsonString;
     }
 }
@@ -0,0 +1,198 @@
+package com.lingokids.mtg.services.impl;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.lingokids.mtg.model.Checkpoint;
+import com.lingokids.mtg.model.Page;
+import com.lingokids.mtg.model.PageFingerprint;
+import com.lingokids.mtg.services.RefreshStateService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * This implementation of the Refresh State service keeps the fingerprints of the pages
+ * in a file named "mtg_cards.pages.json" located in $HOME directory, next to "mtg_cards.json".
+ *
+ * Pages of an unfinished refresh are staged in the directory "mtg_cards.staging", one file
+ * per page plus a "checkpoint.json" file with the url and the total number of pages.
+ * Files are written to a temporary name and then moved, so a refresh killed while
+ * writing never leaves a half written page.
+ *
+ */
+public class RefreshStateServiceImpl implements RefreshStateService {
+
+    /**
+     * Constant with the name of file containing the fingerprints of the pages
+     */
+    private static final String FINGERPRINTS_FILENAME = "mtg_cards.pages.json";
+
+    /**
+     * Staging directory and its files
+     */
+    private static final String STAGING_DIRECTORY = "mtg_cards.staging";
+    private static final String CHECKPOINT_FILENAME = "checkpoint.json";
+    private static final String PAGE_FILENAME = "page-%d.json";
+    private static final Pattern PAGE_FILE = Pattern.compile("page-(\\d+)\\.json");
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * JSON serializer/deserializer
+     */
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter objectWriter;
+
+    public RefreshStateServiceImpl() {
+        SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.serializeAll();
+        FilterProvider filters = new SimpleFilterProvider().addFilter("customFilter", filter);
+        objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectWriter = objectMapper.writer(filters);
+    }
+
+    /**
+     * Reads the fingerprints of the last refresh
+     *
+     * @return Fingerprints sorted by page number. Empty if there was no previous refresh
+     * @throws IOException
+     */
+    @Override
+    public Map<Integer, PageFingerprint> readFingerprints() throws IOException {
+        Map<Integer, PageFingerprint> fingerprints = new TreeMap<>();
+        File file = new File(getFingerprintsPath());
+
+        if (file.exists()) {
+            List<PageFingerprint> list = objectMapper.readValue(file, new TypeReference<List<PageFingerprint>>() {
+            });
+            for (PageFingerprint fingerprint : list) {
+                fingerprints.put(fingerprint.getPage(), fingerprint);
+            }
+        }
+
+        return fingerprints;
+    }
+
+    @Override
+    public void writeFingerprints(Collection<PageFingerprint> fingerprints) throws IOException {
+        objectMapper.writeValue(new File(getFingerprintsPath()), new ArrayList<>(fingerprints));
+    }
+
+    @Override
+    public void deleteFingerprints() throws IOException {
+        Files.deleteIfExists(Paths.get(getFingerprintsPath()));
+    }
+
+    /**
+     * Reads the checkpoint of an unfinished refresh of the same url, with the numbers of its
+     * staged pages. A checkpoint of a different url is deleted.
+     *
+     * @param url Url of the refresh
+     * @return Checkpoint of the unfinished refresh, or a new one without pages
+     * @throws IOException
+     */
+    @Override
+    public Checkpoint readCheckpoint(String url) throws IOException {
+        File file = getStagingPath().resolve(CHECKPOINT_FILENAME).toFile();
+
+        if (file.exists()) {
+            Checkpoint checkpoint = objectMapper.readValue(file, Checkpoint.class);
+            if (url.equals(checkpoint.getUrl())) {
+                checkpoint.setStagedPages(listStagedPages());
+                return checkpoint;
+            }
+            deleteCheckpoint();
+        }
+
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setUrl(url);
+        checkpoint.setStagedPages(new TreeSet<>());
+        return checkpoint;
+    }
+
+    /**
+     * Saves url and total pages of the checkpoint. Pages are staged one by one with stagePage
+     */
+    @Override
+    public void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+        Checkpoint header = new Checkpoint();
+        header.setUrl(checkpoint.getUrl());
+        header.setTotalPages(checkpoint.getTotalPages());
+        writeAtomically(CHECKPOINT_FILENAME, header);
+    }
+
+    @Override
+    public void stagePage(Page page) throws IOException {
+        writeAtomically(String.format(PAGE_FILENAME, page.getNumber()), page);
+    }
+
+    @Override
+    public void deleteCheckpoint() throws IOException {
+        Path staging = getStagingPath();
+        if (Files.exists(staging)) {
+            try (Stream<Path> files = Files.list(staging)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(staging);
+        }
+    }
+
+    /**
+     * @param number Page number
+     * @return Staged page or null if it was not staged
+     */
+    @Override
+    public Page readStagedPage(int number) throws IOException {
+        File file = getStagingPath().resolve(String.format(PAGE_FILENAME, number)).toFile();
+        return file.exists() ? objectMapper.readValue(file, Page.class) : null;
+    }
+
+    private Set<Integer> listStagedPages() throws IOException {
+        Set<Integer> pages = new TreeSet<>();
+        try (Stream<Path> files = Files.list(getStagingPath())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = PAGE_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    pages.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return pages;
+    }
+
+    private void writeAtomically(String filename, Object value) throws IOException {
+        Path staging = Files.createDirectories(getStagingPath());
+        Path temporary = staging.resolve(filename + TEMPORARY_SUFFIX);
+        objectWriter.writeValue(temporary.toFile(), value);
+        Files.move(temporary, staging.resolve(filename), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String getFingerprintsPath() {
+        return System.getProperty("user.home") + File.separator + FINGERPRINTS_FILENAME;
+    }
+
+    private Path getStagingPath() {
+        return Paths.get(System.getProperty("user.home"), STAGING_DIRECTORY);
+    }
+}
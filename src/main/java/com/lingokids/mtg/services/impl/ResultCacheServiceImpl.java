@@ -0,0 +1,200 @@
+package com.lingokids.mtg.services.impl;
+
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.services.ResultCacheService;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * This implementation of the Result cache service keeps the output of every query in a file
+ * in "mtg_cards.results" directory in $HOME, ready to be printed.
+ *
+ * The key is a hash of the query in canonical form and the version of the cards, so queries
+ * written in a different way but with the same output share the result:
+ *
+ * - Filters: fields and values in lowercase, values sorted and without duplicates, like
+ *   {@link FilterServiceImpl} compares them.
+ * - Grouping fields: in lowercase, the order matters.
+ * - Properties: sorted and without duplicates, they are case-sensitive.
+ *
+ * Results are evicted when they take more than the maximum size, the least recently used first.
+ * Every hit updates the modification time of the file.
+ *
+ */
+public class ResultCacheServiceImpl implements ResultCacheService {
+
+    private static final String DIRECTORY = "mtg_cards.results";
+    private static final String RESULT_SUFFIX = ".json";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * 64 MB, results of "group by set" of all the cards take around 20 MB
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final long maxBytes;
+
+    public ResultCacheServiceImpl() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes Maximum size of all the results together
+     */
+    public ResultCacheServiceImpl(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String getKey(CardQuery query, boolean pretty, String version) {
+        StringBuilder canonical = new StringBuilder(version).append('\n');
+
+        List<String> filters = new ArrayList<>();
+        if (query.getFilters() != null) {
+            for (Map.Entry<String, String> filter : query.getFilters().entrySet()) {
+                Set<String> values = filter.getValue() == null ? new TreeSet<>() : Arrays.stream(filter.getValue().split(","))
+                        .filter(value -> !value.isEmpty())
+                        .map(String::toLowerCase)
+                        .collect(Collectors.toCollection(TreeSet::new));
+                filters.add(filter.getKey().toLowerCase() + "=" + String.join(",", values));
+            }
+        }
+        filters.sort(Comparator.naturalOrder());
+        canonical.append("filters:").append(String.join(";", filters)).append('\n');
+
+        if (query.getGroupBy() != null) {
+            canonical.append("groupBy:").append(query.getGroupBy().stream().map(String::toLowerCase)
+                    .collect(Collectors.joining(","))).append('\n');
+        }
+        if (query.getProperties() != null && !query.getProperties().isEmpty()) {
+            canonical.append("properties:").append(String.join(",", new TreeSet<>(query.getProperties()))).append('\n');
+        }
+        canonical.append("pretty:").append(pretty);
+
+        return hash(canonical.toString());
+    }
+
+    /**
+     * Prints the result of the key, bytes are copied from the file without parsing them
+     *
+     * @param filename File to write the result to, stdout if it's null or empty
+     * @return False if there is no result for the key
+     */
+    @Override
+    public boolean output(String key, String filename) throws IOException {
+        Path path = getResultPath(key);
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        if (filename != null && !filename.trim().isEmpty()) {
+            Files.copy(path, Paths.get(filename), StandardCopyOption.REPLACE_EXISTING);
+        } else if (Charset.defaultCharset().equals(StandardCharsets.UTF_8)) {
+            PrintStream output = System.out;
+            Files.copy(path, output);
+            output.println();
+        } else {
+            System.out.println(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        }
+
+        System.err.println("Result read from cache " + path);
+        return true;
+    }
+
+    @Override
+    public void put(String key, String json) throws IOException {
+        Path directory = getDirectory();
+        Files.createDirectories(directory);
+
+        Path path = getResultPath(key);
+        Path temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+        Files.write(temporary, json.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        evict();
+    }
+
+    @Override
+    public void clear() throws IOException {
+        Path directory = getDirectory();
+        if (!Files.exists(directory)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used results until all of them fit in the maximum size
+     */
+    private void evict() throws IOException {
+        List<Path> results = new ArrayList<>();
+        long size = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(getDirectory(), "*" + RESULT_SUFFIX)) {
+            for (Path file : files) {
+                results.add(file);
+                size += Files.size(file);
+            }
+        }
+
+        if (size <= maxBytes) {
+            return;
+        }
+
+        results.sort(Comparator.comparing(file -> file.toFile().lastModified()));
+        for (Path file : results) {
+            if (size <= maxBytes) {
+                break;
+            }
+            size -= Files.size(file);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Path getDirectory() {
+        return Paths.get(System.getProperty("user.home"), DIRECTORY);
+    }
+
+    private Path getResultPath(String key) {
+        return getDirectory().resolve(key + RESULT_SUFFIX);
+    }
+}
@@ -0,0 +1,428 @@
+package com.lingokids.mtg.services.impl;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.model.Partition;
+import com.lingokids.mtg.model.PartitionManifest;
+import com.lingokids.mtg.services.StorageService;
+import com.lingokids.mtg.snapshot.SnapshotReader;
+import com.lingokids.mtg.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * This implementation of the Storage service keeps the cards in binary columnar snapshots,
+ * see {@link com.lingokids.mtg.snapshot.SnapshotFormat}. Reading them doesn't parse any JSON,
+ * so loading all the cards takes milliseconds instead of seconds.
+ *
+ * Cards are partitioned in the order they were written: every partition is a snapshot file in
+ * "mtg_cards.partitions" directory in $HOME with consecutive cards, plus a manifest listing them
+ * in order and the sets of every partition. A partition ends when a new set starts once it has
+ * {@link #PARTITION_CARDS} cards, or when it has {@link #MAX_PARTITION_CARDS}. Reading all of them
+ * returns the cards in the order they were written.
+ *
+ * When a query filters by set or set name only the partitions having them are read, and only
+ * their cards of those sets are returned. Otherwise all of them are read in parallel.
+ *
+ * Partitions are not keyed by set, that would lose the order of the cards or need it stored
+ * apart. It's a trade-off that depends on the order of the API: the real one returns the cards
+ * set by set, so a partition has a big set or a few small ones, and reading a set reads about 1%
+ * of the bytes (StorageBenchmark, sets of 250 cards). An API mixing sets card by card would make
+ * every partition have every set, so a set filter would read all of them, while the number of
+ * files is still bounded.
+ *
+ * Read cards can be consumed one by one, so only the cards of the partitions being decoded
+ * and the ones kept by the consumer are in memory.
+ *
+ * A new manifest replaces the previous one atomically, so readers always see a complete cache.
+ * Partition files have the generation in their name. The files of the previous manifest are kept
+ * until the next one is written, since a reader, like the daemon, may have read that manifest and
+ * not its partitions yet. Older files are deleted.
+ *
+ * The cards are also written to an export storage, usually the JSON file, so they can be
+ * read by other tools. If there is no snapshot yet, cards are read from the export storage.
+ *
+ */
+public class SnapshotStorageServiceImpl implements StorageService {
+
+    private static final String DIRECTORY = "mtg_cards.partitions";
+    private static final String MANIFEST_FILENAME = "manifest.json";
+    private static final String PARTITION_FILENAME = "%d-%d.snapshot";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int MANIFEST_VERSION = 2;
+
+    /**
+     * Cards of a partition before it ends with a new set, and cards it can have at most
+     */
+    static final int PARTITION_CARDS = 500;
+    static final int MAX_PARTITION_CARDS = 4 * PARTITION_CARDS;
+
+    /**
+     * Storage where cards are exported, null if they are not exported
+     */
+    private final StorageService exportStorageService;
+
+    private final SnapshotReader snapshotReader;
+    private final SnapshotWriter snapshotWriter;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Maximum number of partitions read at the same time
+     */
+    private final int parallelism;
+
+    public SnapshotStorageServiceImpl() {
+        this(null);
+    }
+
+    /**
+     * @param exportStorageService Storage where cards are exported too, it can be null
+     */
+    public SnapshotStorageServiceImpl(StorageService exportStorageService) {
+        this.exportStorageService = exportStorageService;
+        this.snapshotReader = new SnapshotReader();
+        this.snapshotWriter = new SnapshotWriter();
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public boolean dataExists() {
+        return Files.exists(getManifestPath()) || (exportStorageService != null && exportStorageService.dataExists());
+    }
+
+    /**
+     * The manifest is replaced when cards are written, so its size and modification time change
+     *
+     * @return Version of the manifest, of the export storage if there is no manifest, or null if there are no cards
+     */
+    @Override
+    public String getVersion() throws IOException {
+        Path manifestPath = getManifestPath();
+        if (Files.exists(manifestPath)) {
+            return "snapshot:" + Files.size(manifestPath) + ":" + Files.getLastModifiedTime(manifestPath).toMillis();
+        }
+
+        return exportStorageService != null ? exportStorageService.getVersion() : null;
+    }
+
+    @Override
+    public List<Card> read() throws IOException {
+        return read(CardQuery.all());
+    }
+
+    @Override
+    public List<Card> read(CardQuery query) throws IOException {
+        List<Card> cards = new ArrayList<>();
+        read(query, cards::add);
+        return cards;
+    }
+
+    /**
+     * Reads only the partitions of the sets in the filters of the query. Partitions are decoded
+     * in parallel but only a few of them are in memory at the same time: the consumer receives
+     * the cards of a partition while the next ones are being decoded.
+     */
+    @Override
+    public void read(CardQuery query, Consumer<Card> consumer) throws IOException {
+        Path manifestPath = getManifestPath();
+        if (!Files.exists(manifestPath) && exportStorageService != null) {
+            exportStorageService.read(query, consumer);
+            return;
+        }
+
+        PartitionManifest manifest = objectMapper.readValue(manifestPath.toFile(), PartitionManifest.class);
+        // Version 1 had a partition per set, it's read the same way
+        if (manifest.getVersion() < 1 || manifest.getVersion() > MANIFEST_VERSION) {
+            throw new IOException("Cache version " + manifest.getVersion() + " not supported. Use --refresh to fix it.");
+        }
+
+        Set<String> sets = query.getFilterValues("set");
+        Set<String> setNames = query.getFilterValues("setname");
+        List<Partition> partitions = manifest.getPartitions().stream()
+                .filter(partition -> matchesAny(partition.getSets(), sets) && matchesAny(partition.getSetNames(), setNames))
+                .collect(Collectors.toList());
+
+        System.err.println("Reading cards from " + partitions.size() + " of " + manifest.getPartitions().size()
+                + " partitions in " + getDirectory());
+        readPartitions(partitions, query.needsDetails(), sets.isEmpty() && setNames.isEmpty() ? consumer : card -> {
+            if (matches(card.getSet(), sets) && matches(card.getSetName(), setNames)) {
+                consumer.accept(card);
+            }
+        });
+    }
+
+    private boolean matchesAny(List<String> partitionValues, Set<String> values) {
+        return values.isEmpty() || partitionValues.stream().anyMatch(value -> matches(value, values));
+    }
+
+    private boolean matches(String value, Set<String> values) {
+        return values.isEmpty() || (value != null && values.contains(value.toLowerCase()));
+    }
+
+    private void readPartitions(List<Partition> partitions, boolean details, Consumer<Card> consumer) throws IOException {
+        if (partitions.size() <= 1) {
+            for (Partition partition : partitions) {
+                readPartition(partition, details).forEach(consumer);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, partitions.size()));
+        try {
+            Iterator<Partition> pending = partitions.iterator();
+            Deque<Future<List<Card>>> window = new ArrayDeque<>();
+            while (pending.hasNext() && window.size() < parallelism) {
+                window.add(submit(executor, pending.next(), details));
+            }
+
+            while (!window.isEmpty()) {
+                List<Card> cards = waitFor(window.poll());
+                if (pending.hasNext()) {
+                    window.add(submit(executor, pending.next(), details));
+                }
+                cards.forEach(consumer);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Future<List<Card>> submit(ExecutorService executor, Partition partition, boolean details) {
+        return executor.submit(() -> readPartition(partition, details));
+    }
+
+    private List<Card> readPartition(Partition partition, boolean details) throws IOException {
+        return snapshotReader.read(getDirectory().resolve(partition.getFile()), details);
+    }
+
+    private List<Card> waitFor(Future<List<Card>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading cards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error reading cards", e.getCause());
+        }
+    }
+
+    @Override
+    public void write(List<Card> cardList) throws IOException {
+        try (CardWriter writer = openWriter()) {
+            writer.append(cardList);
+            writer.commit();
+        }
+    }
+
+    /**
+     * A columnar file can't be written card by card, so the cards of a partition are kept until
+     * it is complete or the writer is committed. Export writer receives them as they arrive.
+     */
+    @Override
+    public CardWriter openWriter() throws IOException {
+        return new SnapshotCardWriter(exportStorageService != null ? exportStorageService.openWriter() : null);
+    }
+
+    @Override
+    public void delete() throws IOException {
+        Path directory = getDirectory();
+        if (Files.exists(directory)) {
+            Files.deleteIfExists(getManifestPath());
+            deleteFilesExcept(directory, new HashSet<>());
+            Files.deleteIfExists(directory);
+        }
+        if (exportStorageService != null) {
+            exportStorageService.delete();
+        }
+    }
+
+    private void deleteFilesExcept(Path directory, Set<String> keep) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!keep.contains(name) && !name.equals(MANIFEST_FILENAME)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Current time in milliseconds, or a later generation than the files in the directory,
+     * so files kept for the readers of the previous manifest are never overwritten
+     */
+    private long newGeneration(Path directory) throws IOException {
+        long generation = System.currentTimeMillis();
+        if (Files.exists(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    int separator = name.indexOf('-');
+                    if (separator > 0) {
+                        try {
+                            generation = Math.max(generation, Long.parseLong(name.substring(0, separator)) + 1);
+                        } catch (NumberFormatException e) {
+                            // Not a partition file
+                        }
+                    }
+                }
+            }
+        }
+        return generation;
+    }
+
+    private Path getDirectory() {
+        return Paths.get(System.getProperty("user.home"), DIRECTORY);
+    }
+
+    private Path getManifestPath() {
+        return getDirectory().resolve(MANIFEST_FILENAME);
+    }
+
+    /**
+     * Keeps only the cards of the current partition. Once it's complete it's written, so the cards
+     * already written are not in memory. Partitions are not part of the cache until the manifest
+     * listing them is written on commit.
+     */
+    private class SnapshotCardWriter implements CardWriter {
+        private final CardWriter exportWriter;
+        private final Path directory = getDirectory();
+        private final long generation;
+        private final List<Partition> partitions = new ArrayList<>();
+        private final Set<String> files = new HashSet<>();
+        private List<Card> pending = new ArrayList<>();
+        private boolean committed;
+
+        private SnapshotCardWriter(CardWriter exportWriter) throws IOException {
+            this.exportWriter = exportWriter;
+            this.generation = newGeneration(directory);
+        }
+
+        @Override
+        public void append(Collection<Card> cardList) throws IOException {
+            for (Card card : cardList) {
+                if (isComplete(card)) {
+                    writePartition();
+                }
+                pending.add(card);
+            }
+            if (exportWriter != null) {
+                exportWriter.append(cardList);
+            }
+        }
+
+        /**
+         * @param next Card that comes after the cards of the partition
+         */
+        private boolean isComplete(Card next) {
+            return pending.size() >= MAX_PARTITION_CARDS || (pending.size() >= PARTITION_CARDS
+                    && !Objects.equals(pending.get(pending.size() - 1).getSet(), next.getSet()));
+        }
+
+        private void writePartition() throws IOException {
+            Partition partition = new Partition();
+            partition.setSets(pending.stream().map(Card::getSet).distinct().collect(Collectors.toList()));
+            partition.setSetNames(pending.stream().map(Card::getSetName).distinct().collect(Collectors.toList()));
+            partition.setFile(String.format(PARTITION_FILENAME, generation, partitions.size()));
+            partition.setCards(pending.size());
+
+            Files.createDirectories(directory);
+            files.add(partition.getFile());
+            snapshotWriter.write(pending, directory.resolve(partition.getFile()));
+            partitions.add(partition);
+            pending = new ArrayList<>();
+        }
+
+        /**
+         * Export is committed first, so the snapshot is never newer than the export.
+         * Partitions are written before the manifest that references them, and the partitions
+         * of the manifest replaced are kept for the readers that already have it.
+         */
+        @Override
+        public void commit() throws IOException {
+            if (exportWriter != null) {
+                exportWriter.commit();
+            }
+
+            if (!pending.isEmpty()) {
+                writePartition();
+            }
+
+            PartitionManifest manifest = new PartitionManifest();
+            manifest.setVersion(MANIFEST_VERSION);
+            manifest.setPartitions(partitions);
+
+            Files.createDirectories(directory);
+            Path manifestPath = getManifestPath();
+            Set<String> keep = new HashSet<>(files);
+            keep.addAll(getPartitionFiles(manifestPath));
+            Path temporary = manifestPath.resolveSibling(MANIFEST_FILENAME + TEMPORARY_SUFFIX);
+            objectMapper.writeValue(temporary.toFile(), manifest);
+            Files.move(temporary, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+
+            deleteFilesExcept(directory, keep);
+        }
+
+        /**
+         * @return Files of the partitions of the manifest, empty if there is none or it can't be read
+         */
+        private Set<String> getPartitionFiles(Path manifestPath) {
+            if (!Files.exists(manifestPath)) {
+                return new HashSet<>();
+            }
+            try {
+                return objectMapper.readValue(manifestPath.toFile(), PartitionManifest.class).getPartitions().stream()
+                        .map(Partition::getFile)
+                        .collect(Collectors.toSet());
+            } catch (IOException e) {
+                return new HashSet<>();
+            }
+        }
+
+        /**
+         * Partitions written by a writer that was not committed are deleted
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!committed) {
+                    for (String file : files) {
+                        Files.deleteIfExists(directory.resolve(file));
+                    }
+                }
+            } finally {
+                if (exportWriter != null) {
+                    exportWriter.close();
+                }
+            }
+        }
+    }
+}
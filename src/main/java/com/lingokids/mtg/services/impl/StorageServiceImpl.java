@@ -1,27 +1,59 @@
 package com.lingokids.mtg.services.impl;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.model.ChunkIndex;
 import com.lingokids.mtg.services.StorageService;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 /**
  * This implementation of the Storage service check/read/write/delete on the local filesystem
  *
  * It uses a file named "mtg_cards.json" located in $HOME directory.
  *
+ * The details of the cards (texts, rulings, foreign names and legalities) are more than half of
+ * the data, so they are saved apart in "mtg_cards.details.json", in the same order as the cards.
+ * They are only read when the query needs them.
+ *
+ * While writing, the byte position of every chunk of cards is saved in "mtg_cards.index.json".
+ * With that index the files are read in chunks parsed concurrently on a fork-join pool, and
+ * the cards of every chunk are returned in order. Without index, or if it doesn't belong to the
+ * files, they are parsed sequentially.
+ *
  * This improves querying a lot: from several minutes downloading all the cards from the API to a few
  * seconds reading the list of cards from the local file.
  *
@@ -32,19 +64,48 @@ public class StorageServiceImpl implements StorageService {
      * Constant with the name of file containing 58169 cards
      */
     private static final String FILENAME = "mtg_cards.json";
+    private static final String DETAILS_FILENAME = "mtg_cards.details.json";
+    private static final String INDEX_FILENAME = "mtg_cards.index.json";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
 
     /**
-     * JSON serializer/deserializer
+     * Cards parsed by a task. 58169 cards are 57 chunks.
+     */
+    public static final int CARDS_PER_CHUNK = 1024;
+
+    /**
+     * JSON serializer/deserializer. Cards are written twice: without details to the cards
+     * file and only with the id and details to the details file.
      */
     private final ObjectMapper objectMapper;
-    private final ObjectWriter objectWriter;
+    private final ObjectReader cardReader;
+    private final ObjectWriter cardsWriter;
+    private final ObjectWriter detailsWriter;
+
+    /**
+     * Pool parsing the chunks
+     */
+    private final ForkJoinPool pool;
 
     public StorageServiceImpl() {
-        SimpleBeanPropertyFilter filter = SimpleBeanPropertyFilter.serializeAll();
-        FilterProvider filters = new SimpleFilterProvider().addFilter("customFilter", filter);
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool Pool parsing the chunks, its parallelism is the number of chunks parsed at the same time
+     */
+    public StorageServiceImpl(ForkJoinPool pool) {
+        this.pool = pool;
         objectMapper = new ObjectMapper();
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        objectWriter = objectMapper.writer(filters);
+        cardReader = objectMapper.readerFor(Card.class);
+
+        Set<String> detailFields = new TreeSet<>(Card.DETAIL_FIELDS);
+        detailFields.add("id");
+        cardsWriter = objectMapper.writer(new SimpleFilterProvider()
+                .addFilter("customFilter", SimpleBeanPropertyFilter.serializeAllExcept(Card.DETAIL_FIELDS)));
+        detailsWriter = objectMapper.writer(new SimpleFilterProvider()
+                .addFilter("customFilter", SimpleBeanPropertyFilter.filterOutAllExcept(detailFields)));
     }
 
     /**
@@ -59,17 +120,222 @@ public class StorageServiceImpl implements StorageService {
     }
 
     /**
-     * Reads the data from File
+     * Files are replaced when cards are written, so their size and modification time change
+     *
+     * @return Version of the files or null if there are no cards
+     */
+    @Override
+    public String getVersion() throws IOException {
+        Path path = Paths.get(getAbsolutePath());
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        Path detailsPath = getDetailsPath();
+        String version = "json:" + Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+        if (Files.exists(detailsPath)) {
+            version += ":" + Files.size(detailsPath) + ":" + Files.getLastModifiedTime(detailsPath).toMillis();
+        }
+        return version;
+    }
+
+    /**
+     * Reads the data from File, details included
      *
      * @return The list of cards read from external storage
      * @throws IOException
      */
     @Override
     public List<Card> read() throws IOException {
+        return read(CardQuery.all());
+    }
+
+    /**
+     * Reads the data from File. Details file is only read if the query needs them.
+     *
+     * @param query Query to be answered with the cards
+     * @return The list of cards read from external storage
+     * @throws IOException If a file can't be read or details don't belong to the cards
+     */
+    @Override
+    public List<Card> read(CardQuery query) throws IOException {
+        List<Card> cards = new ArrayList<>();
+        read(query, cards::add);
+        return cards;
+    }
+
+    /**
+     * Reads the cards one by one with a streaming parser, so only the cards kept by the consumer
+     * stay in memory. If the query needs details, details file is read at the same time, card by
+     * card, and merged with the cards.
+     *
+     * A cache written by a previous version has no details file, but its cards have all the fields.
+     *
+     * @param query Query to be answered with the cards
+     * @param consumer Receives the cards in the order they were written
+     * @throws IOException If a file can't be read or details don't belong to the cards
+     */
+    @Override
+    public void read(CardQuery query, Consumer<Card> consumer) throws IOException {
         String path = getAbsolutePath();
         System.err.println("Reading cards from file " + path);
-        return objectMapper.readValue(new File(path), new TypeReference<List<Card>>() {
-        });
+
+        Path detailsPath = getDetailsPath();
+        boolean details = query.needsDetails() && Files.exists(detailsPath);
+
+        ChunkIndex index = readIndex(details);
+        if (index != null && pool.getParallelism() > 1) {
+            readChunks(index, details, consumer);
+            return;
+        }
+
+        try (MappingIterator<Card> cards = cardReader.readValues(new File(path));
+             MappingIterator<Card> cardDetails = details ? cardReader.readValues(detailsPath.toFile()) : null) {
+            while (cards.hasNextValue()) {
+                Card card = cards.nextValue();
+                if (cardDetails != null) {
+                    if (!cardDetails.hasNextValue()) {
+                        throw detailsMismatch(detailsPath);
+                    }
+                    copyDetails(cardDetails.nextValue(), card);
+                }
+                consumer.accept(card);
+            }
+        }
+    }
+
+    /**
+     * @return Index of the files or null if there is no index or it doesn't belong to the files
+     */
+    private ChunkIndex readIndex(boolean details) {
+        try {
+            Path indexPath = getIndexPath();
+            if (!Files.exists(indexPath)) {
+                return null;
+            }
+
+            ChunkIndex index = objectMapper.readValue(indexPath.toFile(), ChunkIndex.class);
+            boolean valid = index.getCardsSize() == Files.size(Paths.get(getAbsolutePath()))
+                    && (!details || index.getDetailsSize() == Files.size(getDetailsPath()));
+            return valid ? index : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Chunks are parsed concurrently but only a few of them are in memory at the same time:
+     * the consumer receives the cards of a chunk while the next ones are being parsed.
+     */
+    private void readChunks(ChunkIndex index, boolean details, Consumer<Card> consumer) throws IOException {
+        ByteBuffer cardsFile = map(Paths.get(getAbsolutePath()));
+        ByteBuffer detailsFile = details ? map(getDetailsPath()) : null;
+
+        int chunks = index.getCardOffsets().size() - 1;
+        int windowSize = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<List<Card>>> window = new ArrayDeque<>();
+        int nextChunk = 0;
+        try {
+            while (nextChunk < chunks && window.size() < windowSize) {
+                window.add(pool.submit(parseChunk(index, nextChunk++, cardsFile, detailsFile)));
+            }
+
+            while (!window.isEmpty()) {
+                List<Card> cards = waitFor(window.poll());
+                if (nextChunk < chunks) {
+                    window.add(pool.submit(parseChunk(index, nextChunk++, cardsFile, detailsFile)));
+                }
+                cards.forEach(consumer);
+            }
+        } finally {
+            window.forEach(task -> task.cancel(true));
+        }
+    }
+
+    private Callable<List<Card>> parseChunk(ChunkIndex index, int chunk, ByteBuffer cardsFile, ByteBuffer detailsFile) {
+        ByteBuffer cardsChunk = slice(cardsFile, index.getCardOffsets(), chunk);
+        ByteBuffer detailsChunk = detailsFile != null ? slice(detailsFile, index.getDetailOffsets(), chunk) : null;
+
+        return () -> {
+            List<Card> cards = parseChunk(cardsChunk);
+            if (detailsChunk != null) {
+                List<Card> cardDetails = parseChunk(detailsChunk);
+                if (cardDetails.size() != cards.size()) {
+                    throw detailsMismatch(getDetailsPath());
+                }
+                for (int i = 0; i < cards.size(); i++) {
+                    copyDetails(cardDetails.get(i), cards.get(i));
+                }
+            }
+            return cards;
+        };
+    }
+
+    /**
+     * A chunk is a piece of a JSON array: the cards separated by commas, maybe with a comma
+     * before the first one. It's parsed as an array on its own.
+     */
+    private List<Card> parseChunk(ByteBuffer chunk) throws IOException {
+        if (chunk.hasRemaining() && chunk.get(chunk.position()) == ',') {
+            chunk.position(chunk.position() + 1);
+        }
+
+        byte[] json = new byte[chunk.remaining() + 2];
+        json[0] = '[';
+        chunk.get(json, 1, chunk.remaining());
+        json[json.length - 1] = ']';
+
+        List<Card> cards = new ArrayList<>();
+        try (MappingIterator<Card> iterator = cardReader.readValues(json)) {
+            while (iterator.hasNextValue()) {
+                cards.add(iterator.nextValue());
+            }
+        }
+        return cards;
+    }
+
+    private ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private ByteBuffer slice(ByteBuffer file, List<Long> offsets, int chunk) {
+        ByteBuffer slice = file.duplicate();
+        slice.limit(offsets.get(chunk + 1).intValue());
+        slice.position(offsets.get(chunk).intValue());
+        return slice;
+    }
+
+    private List<Card> waitFor(ForkJoinTask<List<Card>> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading cards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error reading cards", e.getCause());
+        }
+    }
+
+    private IOException detailsMismatch(Path path) {
+        return new IOException("Details file " + path + " doesn't match the cards. Use --refresh to fix it.");
+    }
+
+    private void copyDetails(Card from, Card to) throws IOException {
+        if (!to.getId().equals(from.getId())) {
+            throw detailsMismatch(getDetailsPath());
+        }
+
+        to.setText(from.getText());
+        to.setOriginalText(from.getOriginalText());
+        to.setFlavor(from.getFlavor());
+        to.setRulings(from.getRulings());
+        to.setForeignNames(from.getForeignNames());
+        to.setLegalities(from.getLegalities());
     }
 
     /**
@@ -80,22 +346,178 @@ public class StorageServiceImpl implements StorageService {
      */
     @Override
     public void write(List<Card> cardList) throws IOException {
-        String path = getAbsolutePath();
-        objectWriter.writeValue(new File(path), cardList);
+        try (CardWriter writer = openWriter()) {
+            writer.append(cardList);
+            writer.commit();
+        }
     }
 
     /**
-     * Deletes cache file
+     * Opens a writer that appends cards to temporary files. On commit the temporary files
+     * replace the cache files, so a failed refresh never leaves a half written cache.
+     *
+     * @return Writer of cards
+     * @throws IOException
+     */
+    @Override
+    public CardWriter openWriter() throws IOException {
+        return new JsonCardWriter();
+    }
+
+    /**
+     * Deletes cache files
      *
      * @throws IOException
      */
     @Override
     public void delete() throws IOException {
         Path path = Paths.get(getAbsolutePath());
+        Files.deleteIfExists(getIndexPath());
         Files.deleteIfExists(path);
+        Files.deleteIfExists(getDetailsPath());
     }
 
     private String getAbsolutePath() {
         return System.getProperty("user.home") + File.separator + FILENAME;
     }
+
+    private Path getDetailsPath() {
+        return Paths.get(System.getProperty("user.home"), DETAILS_FILENAME);
+    }
+
+    private Path getIndexPath() {
+        return Paths.get(System.getProperty("user.home"), INDEX_FILENAME);
+    }
+
+    /**
+     * Writes the cards and their details card by card, and where every chunk starts
+     */
+    private class JsonCardWriter implements CardWriter {
+        private final JsonArrayFile cards;
+        private final JsonArrayFile details;
+        private final List<Long> cardOffsets = new ArrayList<>();
+        private final List<Long> detailOffsets = new ArrayList<>();
+        private int written;
+
+        private JsonCardWriter() throws IOException {
+            this.cards = new JsonArrayFile(Paths.get(getAbsolutePath()), cardsWriter);
+            this.details = new JsonArrayFile(getDetailsPath(), detailsWriter);
+        }
+
+        @Override
+        public void append(Collection<Card> cardList) throws IOException {
+            for (Card card : cardList) {
+                if (written++ % CARDS_PER_CHUNK == 0) {
+                    cardOffsets.add(cards.position());
+                    detailOffsets.add(details.position());
+                }
+                cards.write(card);
+                details.write(card);
+            }
+        }
+
+        /**
+         * Details are replaced first, so the cards file is never newer than its details.
+         * If the second move fails, reading details detects that they don't match.
+         * Index is replaced last, an index of previous files is ignored because of their size.
+         */
+        @Override
+        public void commit() throws IOException {
+            cardOffsets.add(cards.position());
+            detailOffsets.add(details.position());
+
+            ChunkIndex index = new ChunkIndex();
+            index.setCardsPerChunk(CARDS_PER_CHUNK);
+            index.setCardOffsets(cardOffsets);
+            index.setDetailOffsets(detailOffsets);
+
+            index.setDetailsSize(details.commit());
+            index.setCardsSize(cards.commit());
+
+            Path indexPath = getIndexPath();
+            Path temporary = indexPath.resolveSibling(INDEX_FILENAME + TEMPORARY_SUFFIX);
+            objectMapper.writeValue(temporary.toFile(), index);
+            Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                details.close();
+            } finally {
+                cards.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a JSON array value by value with a streaming generator to a temporary file
+     */
+    private class JsonArrayFile {
+        private final Path target;
+        private final Path temporary;
+        private final CountingOutputStream output;
+        private final JsonGenerator generator;
+        private final ObjectWriter writer;
+        private boolean committed;
+
+        private JsonArrayFile(Path target, ObjectWriter writer) throws IOException {
+            this.target = target;
+            this.temporary = target.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX);
+            this.output = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)));
+            this.generator = objectMapper.getFactory().createGenerator(output, JsonEncoding.UTF8);
+            this.writer = writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            generator.writeStartArray();
+        }
+
+        private void write(Object value) throws IOException {
+            writer.writeValue(generator, value);
+        }
+
+        /**
+         * @return Bytes written so far, the generator is flushed
+         */
+        private long position() throws IOException {
+            generator.flush();
+            return output.count;
+        }
+
+        /**
+         * @return Size of the file
+         */
+        private long commit() throws IOException {
+            generator.writeEndArray();
+            generator.close();
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            return output.count;
+        }
+
+        private void close() throws IOException {
+            if (!committed) {
+                generator.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
 }
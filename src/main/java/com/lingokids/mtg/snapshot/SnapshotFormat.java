@@ -0,0 +1,37 @@
+package com.lingokids.mtg.snapshot;
+
+/**
+ * Binary columnar snapshot of the cards.
+ *
+ * The header has a magic number, the schema version, the number of cards and the number of
+ * columns. Then every column is stored one after the other, with all the values of the cards in
+ * the same order, and prefixed with its size in bytes, so a reader can skip it.
+ *
+ * Column encodings:
+ * <ul>
+ *     <li>String: length in bytes and UTF-8 bytes of every value, length -1 is null</li>
+ *     <li>Dictionary: distinct values as strings and a 4 bytes code for every card, -1 is null.
+ *     Used for values repeated by a lot of cards, like set, rarity, artist, type or layout</li>
+ *     <li>List: a dictionary of the values, then for every card the size of the list and
+ *     the codes of its values, size -1 is null</li>
+ *     <li>Double, int and boolean: fixed width values</li>
+ *     <li>Decimal: unscaled value as long and scale as byte, scale -128 is null</li>
+ *     <li>Details: detail fields of every card, with their own dictionary for repeated values.
+ *     Only decoded when needed</li>
+ * </ul>
+ *
+ * The order of the columns is fixed by the schema version. Any change of columns or encodings
+ * needs a new version.
+ *
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x4D544753;
+    static final int VERSION = 1;
+    static final int COLUMNS = 41;
+
+    static final int NULL = -1;
+    static final byte NULL_SCALE = Byte.MIN_VALUE;
+
+    private SnapshotFormat() {}
+}
@@ -0,0 +1,303 @@
+package com.lingokids.mtg.snapshot;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.ForeignName;
+import com.lingokids.mtg.model.Legal;
+import com.lingokids.mtg.model.Ruling;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static com.lingokids.mtg.snapshot.SnapshotFormat.COLUMNS;
+import static com.lingokids.mtg.snapshot.SnapshotFormat.MAGIC;
+import static com.lingokids.mtg.snapshot.SnapshotFormat.NULL;
+import static com.lingokids.mtg.snapshot.SnapshotFormat.NULL_SCALE;
+import static com.lingokids.mtg.snapshot.SnapshotFormat.VERSION;
+
+/**
+ * Reads the cards from a snapshot file mapped in memory. See {@link SnapshotFormat}.
+ *
+ * Strings of dictionary columns are decoded once and shared by all the cards with the same value.
+ * Details are only decoded when asked, otherwise their column is skipped.
+ *
+ */
+public class SnapshotReader {
+
+    /**
+     * @param path Snapshot file
+     * @param details True to decode the details of the cards
+     * @return Cards in the same order they were written
+     * @throws IOException If the file can't be read, it's not a snapshot or its version is not supported
+     */
+    public List<Card> read(Path path, boolean details) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, details);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Snapshot file " + path + " is corrupted. Use --refresh to fix it.", e);
+        }
+    }
+
+    private List<Card> read(ByteBuffer buffer, boolean details) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot file.");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Snapshot version " + version + " not supported. Use --refresh to fix it.");
+        }
+
+        int count = readSize(buffer);
+        if (buffer.getInt() != COLUMNS) {
+            throw new IOException("Snapshot has an unexpected number of columns.");
+        }
+
+        List<Card> cards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            cards.add(new Card());
+        }
+
+        readStrings(buffer, cards, Card::setId);
+        readDictionary(buffer, cards, Card::setLayout);
+        readStrings(buffer, cards, Card::setName);
+        readList(buffer, cards, Card::setNames);
+        readDictionary(buffer, cards, Card::setManaCost);
+        readDoubles(buffer, cards, Card::setCmc);
+        readList(buffer, cards, Card::setColors);
+        readList(buffer, cards, Card::setColorIdentity);
+        readDictionary(buffer, cards, Card::setType);
+        readList(buffer, cards, Card::setSupertypes);
+        readList(buffer, cards, Card::setTypes);
+        readList(buffer, cards, Card::setSubtypes);
+        readDictionary(buffer, cards, Card::setRarity);
+        readDictionary(buffer, cards, Card::setOriginalType);
+        readDictionary(buffer, cards, Card::setArtist);
+        readStrings(buffer, cards, Card::setNumber);
+        readDictionary(buffer, cards, Card::setPower);
+        readDictionary(buffer, cards, Card::setToughness);
+        readDictionary(buffer, cards, Card::setLoyalty);
+        readInts(buffer, cards, Card::setMultiverseid);
+        readList(buffer, cards, Card::setVariations);
+        readStrings(buffer, cards, Card::setImageName);
+        readDictionary(buffer, cards, Card::setWatermark);
+        readDictionary(buffer, cards, Card::setBorder);
+        readBooleans(buffer, cards, Card::setTimeshifted);
+        readInts(buffer, cards, Card::setHand);
+        readInts(buffer, cards, Card::setLife);
+        readBooleans(buffer, cards, Card::setReserved);
+        readDictionary(buffer, cards, Card::setReleaseDate);
+        readBooleans(buffer, cards, Card::setStarter);
+        readDictionary(buffer, cards, Card::setSet);
+        readDictionary(buffer, cards, Card::setSetName);
+        readList(buffer, cards, Card::setPrintings);
+        readStrings(buffer, cards, Card::setImageUrl);
+        readDecimals(buffer, cards, Card::setPriceHigh);
+        readDecimals(buffer, cards, Card::setPriceMid);
+        readDecimals(buffer, cards, Card::setPriceLow);
+        readDecimals(buffer, cards, Card::setOnlinePriceHigh);
+        readDecimals(buffer, cards, Card::setOnlinePriceMid);
+        readDecimals(buffer, cards, Card::setOnlinePriceLow);
+
+        if (details) {
+            readDetails(buffer, cards);
+        } else {
+            skipColumn(buffer);
+        }
+
+        return cards;
+    }
+
+    private void readStrings(ByteBuffer buffer, List<Card> cards, BiConsumer<Card, String> setter) {
+        buffer.getInt();
+        for (Card card : cards) {
+            setter.accept(card, readString(buffer));
+        }
+    }
+
+    private void readDictionary(ByteBuffer buffer, List<Card> cards, BiConsumer<Card, String> setter) {
+        buffer.getInt();
+        String[] dictionary = readDictionary(buffer);
+        for (Card card : cards) {
+            int code = buffer.getInt();
+            setter.accept(card, decode(dictionary, code));
+        }
+    }
+
+    private void readList(ByteBuffer buffer, List<Card> cards, BiConsumer<Card, List<String>> setter) {
+        buffer.getInt();
+        String[] dictionary = readDictionary(buffer);
+        for (Card card : cards) {
+            int size = readNullableSize(buffer);
+            if (size == NULL) {
+                continue;
+            }
+
+            String[] values = new String[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = dictionary[buffer.getInt()];
+            }
+            setter.accept(card, new ArrayList<>(Arrays.asList(values)));
+        }
+    }
+
+    private void readDoubles(ByteBuffer buffer, List<Card> cards, BiConsumer<Card, Double> setter) {
+        buffer.getInt();
+        for (Card card : cards) {
+            setter.accept(card, buffer.getDouble());
+        }
+    }
+
+    private void readInts(ByteBuffer buffer, List<Card> cards, BiConsumer<Card, Integer> setter) {
+        buffer.getInt();
+        for (Card card : cards) {
+            setter.accept(card, buffer.getInt());
+        }
+    }
+
+    private void readBooleans(ByteBuffer buffer, List<Card> cards, BiConsumer<Card, Boolean> setter) {
+        buffer.getInt();
+        for (Card card : cards) {
+            setter.accept(card, buffer.get() != 0);
+        }
+    }
+
+    private void readDecimals(ByteBuffer buffer, List<Card> cards, BiConsumer<Card, BigDecimal> setter) {
+        buffer.getInt();
+        for (Card card : cards) {
+            long unscaled = buffer.getLong();
+            byte scale = buffer.get();
+            if (scale != NULL_SCALE) {
+                setter.accept(card, new BigDecimal(BigInteger.valueOf(unscaled), scale));
+            }
+        }
+    }
+
+    private void readDetails(ByteBuffer buffer, List<Card> cards) {
+        buffer.getInt();
+        String[] dictionary = readDictionary(buffer);
+        for (Card card : cards) {
+            card.setText(readString(buffer));
+            card.setOriginalText(readString(buffer));
+            card.setFlavor(readString(buffer));
+            card.setLegalities(readLegalities(buffer, dictionary));
+            card.setRulings(readRulings(buffer, dictionary));
+            card.setForeignNames(readForeignNames(buffer, dictionary));
+        }
+    }
+
+    private List<Legal> readLegalities(ByteBuffer buffer, String[] dictionary) {
+        int size = readNullableSize(buffer);
+        if (size == NULL) {
+            return null;
+        }
+
+        List<Legal> legalities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Legal legal = new Legal();
+            legal.setFormat(decode(dictionary, buffer.getInt()));
+            legal.setLegality(decode(dictionary, buffer.getInt()));
+            legalities.add(legal);
+        }
+        return legalities;
+    }
+
+    private List<Ruling> readRulings(ByteBuffer buffer, String[] dictionary) {
+        int size = readNullableSize(buffer);
+        if (size == NULL) {
+            return null;
+        }
+
+        List<Ruling> rulings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Ruling ruling = new Ruling();
+            ruling.setDate(decode(dictionary, buffer.getInt()));
+            ruling.setText(readString(buffer));
+            rulings.add(ruling);
+        }
+        return rulings;
+    }
+
+    private List<ForeignName> readForeignNames(ByteBuffer buffer, String[] dictionary) {
+        int size = readNullableSize(buffer);
+        if (size == NULL) {
+            return null;
+        }
+
+        List<ForeignName> foreignNames = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ForeignName foreignName = new ForeignName();
+            foreignName.setName(readString(buffer));
+            foreignName.setText(readString(buffer));
+            foreignName.setType(readString(buffer));
+            foreignName.setFlavor(readString(buffer));
+            foreignName.setImageUrl(readString(buffer));
+            foreignName.setLanguage(decode(dictionary, buffer.getInt()));
+            foreignName.setMultiverseid(buffer.getInt());
+            foreignNames.add(foreignName);
+        }
+        return foreignNames;
+    }
+
+    private String decode(String[] dictionary, int code) {
+        return code == NULL ? null : dictionary[code];
+    }
+
+    private void skipColumn(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        buffer.position(buffer.position() + size);
+    }
+
+    private String[] readDictionary(ByteBuffer buffer) {
+        String[] dictionary = new String[readSize(buffer)];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(buffer);
+        }
+        return dictionary;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = readNullableSize(buffer);
+        if (length == NULL) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Number of elements or bytes that follow, every one takes at least a byte
+     * @throws IllegalArgumentException If it's negative or bigger than the rest of the file
+     */
+    private int readSize(ByteBuffer buffer) {
+        return checkSize(buffer, buffer.getInt());
+    }
+
+    /**
+     * @return Like {@link #readSize(ByteBuffer)}, or {@link SnapshotFormat#NULL} for a null value
+     */
+    private int readNullableSize(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        return size == NULL ? NULL : checkSize(buffer, size);
+    }
+
+    private int checkSize(ByteBuffer buffer, int size) {
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid size " + size + " before position " + buffer.position());
+        }
+        return size;
+    }
+}
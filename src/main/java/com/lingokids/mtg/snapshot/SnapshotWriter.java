@@ -0,0 +1,283 @@
+package com.lingokids.mtg.snapshot;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.ForeignName;
+import com.lingokids.mtg.model.Legal;
+import com.lingokids.mtg.model.Ruling;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.lingokids.mtg.snapshot.SnapshotFormat.COLUMNS;
+import static com.lingokids.mtg.snapshot.SnapshotFormat.MAGIC;
+import static com.lingokids.mtg.snapshot.SnapshotFormat.NULL;
+import static com.lingokids.mtg.snapshot.SnapshotFormat.NULL_SCALE;
+import static com.lingokids.mtg.snapshot.SnapshotFormat.VERSION;
+
+/**
+ * Writes the cards to a snapshot file. See {@link SnapshotFormat}.
+ *
+ * Columns must be written in the same order they are read by {@link SnapshotReader}.
+ *
+ */
+public class SnapshotWriter {
+
+    /**
+     * @param cards Cards to be written
+     * @param path File, it's replaced if it exists
+     * @throws IOException If the file can't be written
+     */
+    public void write(List<Card> cards, Path path) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(cards.size());
+            output.writeInt(COLUMNS);
+
+            writeStrings(output, cards, Card::getId);
+            writeDictionary(output, cards, Card::getLayout);
+            writeStrings(output, cards, Card::getName);
+            writeList(output, cards, Card::getNames);
+            writeDictionary(output, cards, Card::getManaCost);
+            writeDoubles(output, cards, Card::getCmc);
+            writeList(output, cards, Card::getColors);
+            writeList(output, cards, Card::getColorIdentity);
+            writeDictionary(output, cards, Card::getType);
+            writeList(output, cards, Card::getSupertypes);
+            writeList(output, cards, Card::getTypes);
+            writeList(output, cards, Card::getSubtypes);
+            writeDictionary(output, cards, Card::getRarity);
+            writeDictionary(output, cards, Card::getOriginalType);
+            writeDictionary(output, cards, Card::getArtist);
+            writeStrings(output, cards, Card::getNumber);
+            writeDictionary(output, cards, Card::getPower);
+            writeDictionary(output, cards, Card::getToughness);
+            writeDictionary(output, cards, Card::getLoyalty);
+            writeInts(output, cards, Card::getMultiverseid);
+            writeList(output, cards, Card::getVariations);
+            writeStrings(output, cards, Card::getImageName);
+            writeDictionary(output, cards, Card::getWatermark);
+            writeDictionary(output, cards, Card::getBorder);
+            writeBooleans(output, cards, Card::isTimeshifted);
+            writeInts(output, cards, Card::getHand);
+            writeInts(output, cards, Card::getLife);
+            writeBooleans(output, cards, Card::isReserved);
+            writeDictionary(output, cards, Card::getReleaseDate);
+            writeBooleans(output, cards, Card::isStarter);
+            writeDictionary(output, cards, Card::getSet);
+            writeDictionary(output, cards, Card::getSetName);
+            writeList(output, cards, Card::getPrintings);
+            writeStrings(output, cards, Card::getImageUrl);
+            writeDecimals(output, cards, Card::getPriceHigh);
+            writeDecimals(output, cards, Card::getPriceMid);
+            writeDecimals(output, cards, Card::getPriceLow);
+            writeDecimals(output, cards, Card::getOnlinePriceHigh);
+            writeDecimals(output, cards, Card::getOnlinePriceMid);
+            writeDecimals(output, cards, Card::getOnlinePriceLow);
+            writeDetails(output, cards);
+        }
+    }
+
+    private void writeStrings(DataOutputStream output, List<Card> cards, Function<Card, String> getter) throws IOException {
+        Column column = new Column();
+        for (Card card : cards) {
+            column.writeString(getter.apply(card));
+        }
+        column.writeTo(output);
+    }
+
+    private void writeDictionary(DataOutputStream output, List<Card> cards, Function<Card, String> getter) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        int[] codes = new int[cards.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = dictionary.encode(getter.apply(cards.get(i)));
+        }
+
+        Column column = new Column();
+        dictionary.writeTo(column);
+        for (int code : codes) {
+            column.data.writeInt(code);
+        }
+        column.writeTo(output);
+    }
+
+    private void writeList(DataOutputStream output, List<Card> cards, Function<Card, List<String>> getter) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        Column values = new Column();
+        for (Card card : cards) {
+            List<String> list = getter.apply(card);
+            if (list == null) {
+                values.data.writeInt(NULL);
+            } else {
+                values.data.writeInt(list.size());
+                for (String value : list) {
+                    values.data.writeInt(dictionary.encode(value));
+                }
+            }
+        }
+
+        Column column = new Column();
+        dictionary.writeTo(column);
+        values.bytes.writeTo(column.data);
+        column.writeTo(output);
+    }
+
+    private void writeDoubles(DataOutputStream output, List<Card> cards, Function<Card, Double> getter) throws IOException {
+        Column column = new Column();
+        for (Card card : cards) {
+            column.data.writeDouble(getter.apply(card));
+        }
+        column.writeTo(output);
+    }
+
+    private void writeInts(DataOutputStream output, List<Card> cards, Function<Card, Integer> getter) throws IOException {
+        Column column = new Column();
+        for (Card card : cards) {
+            column.data.writeInt(getter.apply(card));
+        }
+        column.writeTo(output);
+    }
+
+    private void writeBooleans(DataOutputStream output, List<Card> cards, Function<Card, Boolean> getter) throws IOException {
+        Column column = new Column();
+        for (Card card : cards) {
+            column.data.writeBoolean(getter.apply(card));
+        }
+        column.writeTo(output);
+    }
+
+    private void writeDecimals(DataOutputStream output, List<Card> cards, Function<Card, BigDecimal> getter) throws IOException {
+        Column column = new Column();
+        for (Card card : cards) {
+            BigDecimal value = getter.apply(card);
+            if (value == null) {
+                column.data.writeLong(0);
+                column.data.writeByte(NULL_SCALE);
+            } else {
+                if (value.scale() <= NULL_SCALE || value.scale() > Byte.MAX_VALUE) {
+                    throw new IOException("Decimal " + value + " can't be written to snapshot.");
+                }
+                column.data.writeLong(value.unscaledValue().longValueExact());
+                column.data.writeByte(value.scale());
+            }
+        }
+        column.writeTo(output);
+    }
+
+    /**
+     * Details are written card by card, with a dictionary for the values repeated by a lot
+     * of cards: formats, legalities, dates of rulings and languages
+     */
+    private void writeDetails(DataOutputStream output, List<Card> cards) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        Column values = new Column();
+        for (Card card : cards) {
+            values.writeString(card.getText());
+            values.writeString(card.getOriginalText());
+            values.writeString(card.getFlavor());
+            writeLegalities(values, dictionary, card.getLegalities());
+            writeRulings(values, dictionary, card.getRulings());
+            writeForeignNames(values, dictionary, card.getForeignNames());
+        }
+
+        Column column = new Column();
+        dictionary.writeTo(column);
+        values.bytes.writeTo(column.data);
+        column.writeTo(output);
+    }
+
+    private void writeLegalities(Column column, Dictionary dictionary, List<Legal> legalities) throws IOException {
+        column.data.writeInt(legalities == null ? NULL : legalities.size());
+        if (legalities != null) {
+            for (Legal legal : legalities) {
+                column.data.writeInt(dictionary.encode(legal.getFormat()));
+                column.data.writeInt(dictionary.encode(legal.getLegality()));
+            }
+        }
+    }
+
+    private void writeRulings(Column column, Dictionary dictionary, List<Ruling> rulings) throws IOException {
+        column.data.writeInt(rulings == null ? NULL : rulings.size());
+        if (rulings != null) {
+            for (Ruling ruling : rulings) {
+                column.data.writeInt(dictionary.encode(ruling.getDate()));
+                column.writeString(ruling.getText());
+            }
+        }
+    }
+
+    private void writeForeignNames(Column column, Dictionary dictionary, List<ForeignName> foreignNames) throws IOException {
+        column.data.writeInt(foreignNames == null ? NULL : foreignNames.size());
+        if (foreignNames != null) {
+            for (ForeignName foreignName : foreignNames) {
+                column.writeString(foreignName.getName());
+                column.writeString(foreignName.getText());
+                column.writeString(foreignName.getType());
+                column.writeString(foreignName.getFlavor());
+                column.writeString(foreignName.getImageUrl());
+                column.data.writeInt(dictionary.encode(foreignName.getLanguage()));
+                column.data.writeInt(foreignName.getMultiverseid());
+            }
+        }
+    }
+
+    /**
+     * Column is built in memory, because its size is written before the values
+     */
+    private static class Column {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(bytes);
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                data.writeInt(NULL);
+            } else {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                data.writeInt(utf8.length);
+                data.write(utf8);
+            }
+        }
+
+        private void writeTo(DataOutputStream output) throws IOException {
+            output.writeInt(bytes.size());
+            bytes.writeTo((OutputStream) output);
+        }
+    }
+
+    /**
+     * Distinct values in order of appearance
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private int encode(String value) {
+            if (value == null) {
+                return NULL;
+            }
+            return codes.computeIfAbsent(value, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+        }
+
+        private void writeTo(Column column) throws IOException {
+            column.data.writeInt(values.size());
+            for (String value : values) {
+                column.writeString(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.lingokids.mtg.benchmark;
+
+import com.lingokids.mtg.daemon.CardDaemon;
+import com.lingokids.mtg.daemon.DaemonClient;
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.services.CardLoaderService;
+import com.lingokids.mtg.services.impl.FilterServiceImpl;
+import com.lingokids.mtg.services.impl.GroupingServiceImpl;
+import com.lingokids.mtg.services.impl.PrinterServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Time to answer a query with the cards already in memory of 'mtg serve', inside the daemon
+ * and through its HTTP API. It's not run with the unit tests:
+ *
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=DaemonBenchmark -Dbenchmark.iterations=1000
+ * </pre>
+ *
+ */
+public class DaemonBenchmark {
+
+    private final int pages = Integer.getInteger("benchmark.pages", 582);
+    private final int pageSize = Integer.getInteger("benchmark.pageSize", 100);
+    private final int iterations = Integer.getInteger("benchmark.iterations", 200);
+
+    private String userHome;
+    private Path home;
+
+    @Before
+    public void createHome() throws IOException {
+        userHome = System.getProperty("user.home");
+        home = Files.createTempDirectory("mtg-benchmark");
+        System.setProperty("user.home", home.toString());
+    }
+
+    @After
+    public void deleteHome() throws IOException {
+        System.setProperty("user.home", userHome);
+        try (Stream<Path> files = Files.walk(home)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void query() throws IOException {
+        List<Card> cards = SimulatedCardsAPI.generateCards(pages, pageSize);
+        CardLoaderService cardLoaderService = new CardLoaderService() {
+            @Override
+            public List<Card> getCards(String url, boolean refresh) {
+                return cards;
+            }
+
+            @Override
+            public List<Card> getCards(String url, boolean refresh, boolean incremental) {
+                return cards;
+            }
+
+            @Override
+            public List<Card> getCards(String url, boolean refresh, boolean incremental, CardQuery query) {
+                return cards;
+            }
+        };
+        CardDaemon daemon = new CardDaemon(cardLoaderService, new FilterServiceImpl(), new GroupingServiceImpl(), new PrinterServiceImpl());
+        daemon.start(0);
+        DaemonClient daemonClient = new DaemonClient();
+
+        Map<String, String> filters = new HashMap<>();
+        filters.put("set", cards.get(0).getSet());
+        filters.put("rarity", cards.get(0).getRarity());
+        CardQuery oneSet = new CardQuery();
+        oneSet.setFilters(filters);
+        oneSet.setProperties(Collections.singleton("name"));
+        Map<String, String> nameFilters = new HashMap<>();
+        nameFilters.put("set", cards.get(0).getSet());
+        nameFilters.put("name", cards.get(0).getName());
+        CardQuery oneCard = new CardQuery();
+        oneCard.setFilters(nameFilters);
+        CardQuery colors = new CardQuery();
+        colors.setFilters(Collections.singletonMap("colors", "red"));
+        colors.setProperties(Collections.singleton("name"));
+
+        try {
+            System.out.println();
+            System.out.println("Daemon benchmark: " + cards.size() + " cards, median of " + iterations + " queries");
+            measure("One card in daemon", () -> daemon.query(oneCard, false));
+            measure("One card over HTTP", () -> daemonClient.query(oneCard, false).getJson());
+            measure("Set and rarity in daemon", () -> daemon.query(oneSet, false));
+            measure("Set and rarity over HTTP", () -> daemonClient.query(oneSet, false).getJson());
+            measure("Colors in daemon", () -> daemon.query(colors, false));
+            measure("Colors over HTTP", () -> daemonClient.query(colors, false).getJson());
+        } finally {
+            daemon.stop();
+        }
+    }
+
+    private void measure(String name, Query query) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            query.run();
+        }
+
+        long[] times = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            String result = query.run();
+            times[i] = System.nanoTime() - start;
+            assertNotNull(result);
+        }
+
+        Arrays.sort(times);
+        System.out.printf("  %-26s %8.3f ms%n", name, times[iterations / 2] / 1_000_000.0);
+    }
+
+    private interface Query {
+        String run() throws IOException;
+    }
+}
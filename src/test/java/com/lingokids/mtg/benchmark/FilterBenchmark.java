@@ -0,0 +1,193 @@
+package com.lingokids.mtg.benchmark;
+
+import com.lingokids.mtg.filter.CardDictionary;
+import com.lingokids.mtg.filter.CardIndex;
+import com.lingokids.mtg.filter.FieldStatistics;
+import com.lingokids.mtg.filter.FilterPlan;
+import com.lingokids.mtg.model.Card;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * JMH comparison of filtering all the cards with the predicate looking up fields by name for
+ * every card and with the compiled {@link FilterPlan}, with the filters in the order of the query
+ * and ordered with the {@link FieldStatistics} of the cards, comparing the cards normalized with a
+ * {@link CardDictionary} by identity, and resolving the indexed fields with the {@link CardIndex}
+ * first. It also prints the heap taken by the cards before and after normalizing them.
+ * It's not run with the unit tests:
+ *
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=FilterBenchmark -Dbenchmark.forks=1
+ * mvn test -Pbenchmark -Dtest=FilterBenchmark "-Dbenchmark.filters=set=KTK|cmc=3.0"
+ * </pre>
+ *
+ * The time and the bytes allocated for every scan of the cards are printed for every query.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FilterBenchmark {
+
+    @Param({"set=KTK;rarity=rare", "cmc=3.0", "colors=red", "name=synthetic card 4242", "reserved=false;multiverseid=100042",
+            "flavor=a synthetic card for synthetic benchmarks.;artist=artist 7",
+            "set=KTK;colors=red;rarity=mythic rare"})
+    public String filters;
+
+    @Param("582")
+    public int pages = 582;
+
+    private List<Card> cards;
+    private Predicate<Card> switchPredicate;
+    private Predicate<Card> filterPlan;
+    private FilterPlan orderedFilterPlan;
+    private List<Card> normalizedCards;
+    private FilterPlan internedFilterPlan;
+    private CardIndex index;
+    private FilterPlan residualFilterPlan;
+
+    @Setup
+    public void generateCatalogue() throws IOException {
+        cards = SimulatedCardsAPI.generateCards(pages, 100);
+        normalizedCards = SimulatedCardsAPI.generateCards(pages, 100);
+        CardDictionary dictionary = new CardDictionary();
+        normalizedCards.forEach(dictionary::normalize);
+
+        Map<String, String> map = toMap(filters);
+        switchPredicate = SwitchPredicate.getPredicate(map);
+        filterPlan = FilterPlan.compile(map);
+        orderedFilterPlan = FilterPlan.compile(map, FieldStatistics.of(cards), null);
+        internedFilterPlan = FilterPlan.compile(map, FieldStatistics.of(normalizedCards), dictionary);
+        index = CardIndex.build(cards);
+        residualFilterPlan = orderedFilterPlan.without(CardIndex.INDEXED_FIELDS);
+    }
+
+    @Benchmark
+    public int switchPredicate() {
+        return count(switchPredicate);
+    }
+
+    @Benchmark
+    public int filterPlan() {
+        return count(filterPlan);
+    }
+
+    @Benchmark
+    public int orderedFilterPlan() {
+        return count(orderedFilterPlan);
+    }
+
+    @Benchmark
+    public int indexedFilterPlan() {
+        BitSet selected = index.select(orderedFilterPlan);
+        return count(selected != null ? index.getCards(selected) : cards, residualFilterPlan);
+    }
+
+    @Benchmark
+    public int internedFilterPlan() {
+        return count(normalizedCards, internedFilterPlan);
+    }
+
+    private int count(Predicate<Card> predicate) {
+        return count(cards, predicate);
+    }
+
+    private int count(List<Card> cards, Predicate<Card> predicate) {
+        int matches = 0;
+        for (int i = 0; i < cards.size(); i++) {
+            if (predicate.test(cards.get(i))) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private static Map<String, String> toMap(String filters) {
+        Map<String, String> map = new HashMap<>();
+        for (String filter : filters.split(";")) {
+            String[] fieldAndValue = filter.split("=", 2);
+            map.put(fieldAndValue[0], fieldAndValue[1]);
+        }
+        return map;
+    }
+
+    /**
+     * Heap taken by the cards as they are parsed and once they are normalized
+     */
+    @Test
+    public void heap() throws IOException {
+        long empty = usedHeap();
+        List<Card> parsedCards = SimulatedCardsAPI.generateCards(pages, 100);
+        long parsed = usedHeap();
+        CardDictionary dictionary = new CardDictionary();
+        parsedCards.forEach(dictionary::normalize);
+        long normalized = usedHeap();
+
+        System.out.println();
+        System.out.println("Heap of " + parsedCards.size() + " cards, " + dictionary.size() + " canonical strings");
+        System.out.printf("  %-26s %8.1f MB%n", "Parsed", (parsed - empty) / 1_048_576.0);
+        System.out.printf("  %-26s %8.1f MB%n", "Normalized", (normalized - empty) / 1_048_576.0);
+    }
+
+    private long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        OptionsBuilder builder = new OptionsBuilder();
+        String filters = System.getProperty("benchmark.filters");
+        if (filters != null) {
+            builder.param("filters", filters.split("\\|"));
+        }
+
+        Options options = builder
+                .include(FilterBenchmark.class.getName() + "\\.")
+                .forks(Integer.getInteger("benchmark.forks", 1))
+                .warmupIterations(Integer.getInteger("benchmark.warmups", 3))
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(Integer.getInteger("benchmark.iterations", 5))
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.println("Filter benchmark: time and bytes allocated per scan of all the cards");
+        for (RunResult result : results) {
+            String name = result.getParams().getBenchmark().replaceAll(".*\\.", "")
+                    + " " + result.getParams().getParam("filters");
+            Result allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+            System.out.printf("  %-58s %8.3f ms %12.0f B%n", name, result.getPrimaryResult().getScore(),
+                    allocation != null ? allocation.getScore() : Double.NaN);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.lingokids.mtg.benchmark;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.services.impl.FilterServiceImpl;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * JMH benchmark of filtering all the cards with the filter service on 1, 2, 4... threads, up to
+ * the available processors or benchmark.parallelism. It's not run with the unit tests:
+ *
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=ParallelFilterBenchmark -Dbenchmark.parallelism=32
+ * </pre>
+ *
+ * The time of every scan and the speedup against a single thread are printed for every parallelism.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelFilterBenchmark {
+
+    @Param("1")
+    public int parallelism;
+
+    @Param("582")
+    public int pages;
+
+    @Param("flavor=a synthetic card for synthetic benchmarks.")
+    public String filter;
+
+    private List<Card> cards;
+    private Predicate<Card> predicate;
+    private ForkJoinPool pool;
+    private FilterServiceImpl filterService;
+
+    @Setup
+    public void generateCatalogue() throws IOException {
+        cards = SimulatedCardsAPI.generateCards(pages, 100);
+
+        pool = new ForkJoinPool(parallelism);
+        filterService = new FilterServiceImpl(pool, FilterServiceImpl.DEFAULT_THRESHOLD);
+        String[] fieldAndValue = filter.split("=", 2);
+        predicate = filterService.getPredicate(Collections.singletonMap(fieldAndValue[0], fieldAndValue[1]));
+    }
+
+    @TearDown
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<Card> filter() {
+        return filterService.filter(cards, predicate);
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        int processors = Integer.getInteger("benchmark.parallelism", Runtime.getRuntime().availableProcessors());
+        String[] parallelisms = IntStream.iterate(1, threads -> threads * 2)
+                .limit(32 - Integer.numberOfLeadingZeros(processors))
+                .mapToObj(Integer::toString)
+                .toArray(String[]::new);
+
+        Options options = new OptionsBuilder()
+                .include(ParallelFilterBenchmark.class.getName() + "\\.")
+                .param("parallelism", parallelisms)
+                .forks(Integer.getInteger("benchmark.forks", 1))
+                .warmupIterations(Integer.getInteger("benchmark.warmups", 3))
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(Integer.getInteger("benchmark.iterations", 5))
+                .measurementTime(TimeValue.seconds(1))
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Map<Integer, Double> times = results.stream().collect(Collectors.toMap(
+                result -> Integer.parseInt(result.getParams().getParam("parallelism")),
+                result -> result.getPrimaryResult().getScore(),
+                (first, second) -> first,
+                TreeMap::new));
+
+        System.out.println();
+        System.out.println("Parallel filter benchmark: time per scan of all the cards, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        times.forEach((threads, time) -> System.out.printf("  %-26s %8.3f ms %6.2fx%n",
+                threads + (threads == 1 ? " thread" : " threads"), time, times.get(1) / time));
+    }
+}
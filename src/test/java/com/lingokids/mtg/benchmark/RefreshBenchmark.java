@@ -0,0 +1,135 @@
+package com.lingokids.mtg.benchmark;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.lingokids.mtg.factories.HTTPClientFactory;
+import com.lingokids.mtg.http.HTTPClientProfile;
+import com.lingokids.mtg.http.RetryPolicy;
+import com.lingokids.mtg.http.TokenBucket;
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.services.RefreshStateService;
+import com.lingokids.mtg.services.impl.APIAssemblerImpl;
+import com.lingokids.mtg.services.impl.CardLoaderServiceImpl;
+import com.lingokids.mtg.services.impl.HTTPServiceImpl;
+import com.lingokids.mtg.services.impl.RefreshStateServiceImpl;
+import com.lingokids.mtg.services.impl.StorageServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Full refresh against a simulated API, so changes in the fetch engine can be compared
+ * run to run without the real API. It's not run with the unit tests:
+ *
+ * <pre>
+ * mvn test -Pbenchmark -Dbenchmark.latencyMillis=150 -Dbenchmark.throttleRate=0.02
+ * </pre>
+ *
+ * Cards are stored in a temporary directory, the cache in the user home is not touched.
+ *
+ */
+public class RefreshBenchmark {
+
+    private final int pages = Integer.getInteger("benchmark.pages", 582);
+    private final int pageSize = Integer.getInteger("benchmark.pageSize", 100);
+    private final int latencyMillis = Integer.getInteger("benchmark.latencyMillis", 100);
+    private final int jitterMillis = Integer.getInteger("benchmark.jitterMillis", 50);
+    private final double throttleRate = Double.parseDouble(System.getProperty("benchmark.throttleRate", "0"));
+    private final int concurrency = Integer.getInteger("benchmark.concurrency", APIAssemblerImpl.DEFAULT_CONCURRENCY);
+
+    private SimulatedCardsAPI simulatedAPI;
+    private WireMockServer server;
+    private String userHome;
+    private Path home;
+
+    @Before
+    public void startServer() throws IOException {
+        simulatedAPI = new SimulatedCardsAPI(pages, pageSize, throttleRate);
+        server = new WireMockServer(options().dynamicPort().extensions(simulatedAPI));
+        server.start();
+        server.stubFor(get(urlPathEqualTo("/v1/cards"))
+                .willReturn(aResponse()
+                        .withTransformers(SimulatedCardsAPI.NAME)
+                        .withUniformRandomDelay(Math.max(0, latencyMillis - jitterMillis), latencyMillis + jitterMillis)));
+
+        userHome = System.getProperty("user.home");
+        home = Files.createTempDirectory("mtg-benchmark");
+        System.setProperty("user.home", home.toString());
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.stop();
+        System.setProperty("user.home", userHome);
+        try (Stream<Path> files = Files.walk(home)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void fullRefresh() throws IOException {
+        TimedHTTPService httpService = new TimedHTTPService(new HTTPServiceImpl(
+                HTTPClientFactory.getHTTPClientInstance(new HTTPClientProfile(concurrency)),
+                new TokenBucket(), new RetryPolicy()));
+        RefreshStateService refreshStateService = new RefreshStateServiceImpl();
+        CardLoaderServiceImpl cardLoaderService = new CardLoaderServiceImpl(new StorageServiceImpl(),
+                new APIAssemblerImpl(httpService, concurrency, refreshStateService), refreshStateService);
+
+        System.gc();
+        resetPeakHeap();
+        long start = System.nanoTime();
+        List<Card> cards = cardLoaderService.getCards(server.baseUrl() + "/v1/cards", true);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        assertEquals(pages * pageSize, cards.size());
+
+        System.out.println();
+        System.out.println("Refresh benchmark: " + pages + " pages of " + pageSize + " cards, latency "
+                + latencyMillis + "+/-" + jitterMillis + " ms, 429 rate " + throttleRate + ", concurrency " + concurrency);
+        System.out.printf("  %-18s %.2f s%n", "Elapsed", seconds);
+        System.out.printf("  %-18s %.0f cards/s%n", "Throughput", cards.size() / seconds);
+        System.out.printf("  %-18s %.1f ms%n", "Page latency p50", httpService.getPercentileMillis(50));
+        System.out.printf("  %-18s %.1f ms%n", "Page latency p99", httpService.getPercentileMillis(99));
+        System.out.printf("  %-18s %d (%d answered with 429)%n", "Requests", server.getAllServeEvents().size(),
+                simulatedAPI.getThrottled());
+        System.out.printf("  %-18s %.1f MB%n", "Peak heap", getPeakHeap() / (1024.0 * 1024.0));
+    }
+
+    private void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sum of the peaks of every heap pool, they may not happen at the same time
+     * so it's an upper bound
+     */
+    private long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,203 @@
+package com.lingokids.mtg.benchmark;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.QueryParameter;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.parsers.CardsResponseParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.like;
+
+/**
+ * Stand-in for https://api.magicthegathering.io/v1/cards serving a synthetic catalogue.
+ *
+ * Every page has the pagination headers of the real API and a strong ETag. A fraction of
+ * the requests is answered with 429 Too Many Requests, like the real API does when it's busy.
+ * Latency is configured in the stub that uses this transformer.
+ *
+ * By default consecutive cards alternate between a few sets, the worst case for anything keyed
+ * by set. With a set size, cards come set by set like in the real API, every set with that
+ * number of cards.
+ *
+ */
+public class SimulatedCardsAPI extends ResponseDefinitionTransformer {
+
+    public static final String NAME = "simulated-cards-api";
+
+    private static final String[] SETS = {"KTK", "FRF", "DTK", "ORI", "BFZ", "OGW", "SOI", "EMN", "KLD", "AER"};
+    private static final String[] RARITIES = {"Common", "Uncommon", "Rare", "Mythic Rare"};
+    private static final String[] COLORS = {"White", "Blue", "Black", "Red", "Green"};
+
+    private final int pages;
+    private final int pageSize;
+    private final double throttleRate;
+    private final int setSize;
+
+    private final Map<Integer, byte[]> bodies = new ConcurrentHashMap<>();
+    private final AtomicInteger throttled = new AtomicInteger();
+
+    /**
+     * @param pages Number of pages of the catalogue
+     * @param pageSize Cards in every page
+     * @param throttleRate Fraction of the requests answered with 429, between 0 and 1
+     */
+    public SimulatedCardsAPI(int pages, int pageSize, double throttleRate) {
+        this(pages, pageSize, throttleRate, 0);
+    }
+
+    /**
+     * @param pages Number of pages of the catalogue
+     * @param pageSize Cards in every page
+     * @param throttleRate Fraction of the requests answered with 429, between 0 and 1
+     * @param setSize Cards of every set, in order, or 0 to alternate sets card by card
+     */
+    public SimulatedCardsAPI(int pages, int pageSize, double throttleRate, int setSize) {
+        this.pages = pages;
+        this.pageSize = pageSize;
+        this.throttleRate = throttleRate;
+        this.setSize = setSize;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean applyGlobally() {
+        return false;
+    }
+
+    @Override
+    public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition,
+                                        FileSource files, Parameters parameters) {
+        if (throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate) {
+            throttled.incrementAndGet();
+            return like(responseDefinition).but()
+                    .withStatus(429)
+                    .withBody("")
+                    .build();
+        }
+
+        int page = getPage(request);
+        return like(responseDefinition).but()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withHeader("Total-Count", String.valueOf(pages * pageSize))
+                .withHeader("Page-Size", String.valueOf(pageSize))
+                .withHeader("ETag", "\"page-" + page + "\"")
+                .withBody(bodies.computeIfAbsent(page, this::generatePage))
+                .build();
+    }
+
+    /**
+     * @return Number of requests answered with 429
+     */
+    public int getThrottled() {
+        return throttled.get();
+    }
+
+    private int getPage(Request request) {
+        QueryParameter page = request.queryParameter("page");
+        try {
+            return page.isPresent() ? Integer.parseInt(page.firstValue()) : 1;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Catalogue of the simulated API parsed like the real one, to benchmark without HTTP
+     *
+     * @param pages Number of pages of the catalogue
+     * @param pageSize Cards in every page
+     * @return Cards of all the pages, in order
+     */
+    public static List<Card> generateCards(int pages, int pageSize) throws IOException {
+        return generateCards(pages, pageSize, 0);
+    }
+
+    /**
+     * @param pages Number of pages of the catalogue
+     * @param pageSize Cards in every page
+     * @param setSize Cards of every set, in order, or 0 to alternate sets card by card
+     * @return Cards of all the pages, in order
+     */
+    public static List<Card> generateCards(int pages, int pageSize, int setSize) throws IOException {
+        SimulatedCardsAPI simulatedAPI = new SimulatedCardsAPI(pages, pageSize, 0, setSize);
+        CardsResponseParser parser = new CardsResponseParser();
+        List<Card> cards = new ArrayList<>();
+        for (int page = 1; page <= pages; page++) {
+            cards.addAll(parser.parse(new ByteArrayInputStream(simulatedAPI.generatePage(page))));
+        }
+        return cards;
+    }
+
+    /**
+     * @param page Number of page, starting at 1
+     * @return JSON of the page as returned by the API
+     */
+    byte[] generatePage(int page) {
+        StringBuilder json = new StringBuilder("{\"cards\":[");
+        if (page >= 1 && page <= pages) {
+            for (int i = 0; i < pageSize; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendCard(json, (page - 1) * pageSize + i);
+            }
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A card with the usual fields and sizes of the real API, including rulings,
+     * foreign names and legalities
+     */
+    private void appendCard(StringBuilder json, int index) {
+        String set = setSize > 0 ? String.format("S%03d", index / setSize) : SETS[index % SETS.length];
+        String color = COLORS[index % COLORS.length];
+        json.append("{\"id\":\"card-").append(index).append('"')
+                .append(",\"name\":\"Synthetic Card ").append(index).append('"')
+                .append(",\"manaCost\":\"{2}{").append(color.charAt(0)).append("}\"")
+                .append(",\"cmc\":").append(index % 8)
+                .append(",\"colors\":[\"").append(color).append("\"]")
+                .append(",\"colorIdentity\":[\"").append(color.charAt(0)).append("\"]")
+                .append(",\"type\":\"Creature — Human Warrior\"")
+                .append(",\"types\":[\"Creature\"],\"subtypes\":[\"Human\",\"Warrior\"]")
+                .append(",\"rarity\":\"").append(RARITIES[index % RARITIES.length]).append('"')
+                .append(",\"set\":\"").append(set).append("\",\"setName\":\"Synthetic ").append(set).append('"')
+                .append(",\"text\":\"When this creature enters the battlefield, draw a card, then discard a card.\"")
+                .append(",\"originalText\":\"When this creature comes into play, draw a card, then discard a card.\"")
+                .append(",\"flavor\":\"A synthetic card for synthetic benchmarks.\"")
+                .append(",\"artist\":\"Artist ").append(index % 97).append('"')
+                .append(",\"number\":\"").append(index % 300).append('"')
+                .append(",\"power\":\"2\",\"toughness\":\"2\",\"layout\":\"normal\"")
+                .append(",\"multiverseid\":").append(100000 + index)
+                .append(",\"imageUrl\":\"http://gatherer.wizards.com/Handlers/Image.ashx?multiverseid=")
+                .append(100000 + index).append("&type=card\"")
+                .append(",\"printings\":[\"").append(set).append("\"]")
+                .append(",\"rulings\":[{\"date\":\"2014-09-20\",\"text\":\"The card is drawn before it is discarded.\"}]")
+                .append(",\"foreignNames\":[{\"name\":\"Carta Sintética ").append(index)
+                .append("\",\"language\":\"Spanish\",\"multiverseid\":").append(200000 + index).append('}')
+                .append(",{\"name\":\"Carte Synthétique ").append(index)
+                .append("\",\"language\":\"French\",\"multiverseid\":").append(300000 + index).append("}]")
+                .append(",\"legalities\":[{\"format\":\"Commander\",\"legality\":\"Legal\"}")
+                .append(",{\"format\":\"Legacy\",\"legality\":\"Legal\"}")
+                .append(",{\"format\":\"Vintage\",\"legality\":\"Legal\"}]")
+                .append('}');
+    }
+}
@@ -0,0 +1,125 @@
+package com.lingokids.mtg.benchmark;
+
+import com.lingokids.mtg.MagicTheGathering;
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.services.StorageService;
+import com.lingokids.mtg.services.impl.SnapshotStorageServiceImpl;
+import com.lingokids.mtg.services.impl.StorageServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Time from launching the mtg command until it prints the cards of a set, with a plain JVM,
+ * with the AppCDS launcher and with the native image. Launchers that were not built are skipped.
+ * It's not run with the unit tests:
+ *
+ * <pre>
+ * mvn clean package -Pappcds
+ * mvn package -Pnative -DskipTests
+ * mvn test -Pbenchmark -Dtest=StartupBenchmark -Dbenchmark.iterations=20
+ * </pre>
+ *
+ */
+public class StartupBenchmark {
+
+    private static final String APPCDS_LAUNCHER = "target/appassembler/bin/mtg";
+    private static final String APPCDS_ARCHIVE = "target/appassembler/mtg.jsa";
+    private static final String NATIVE_IMAGE = "target/mtg";
+
+    private final int pages = Integer.getInteger("benchmark.pages", 582);
+    private final int pageSize = Integer.getInteger("benchmark.pageSize", 100);
+    private final int iterations = Integer.getInteger("benchmark.iterations", 10);
+    private final boolean windows = System.getProperty("os.name").toLowerCase().startsWith("windows");
+
+    private String userHome;
+    private Path home;
+
+    @Before
+    public void createHome() throws IOException {
+        userHome = System.getProperty("user.home");
+        home = Files.createTempDirectory("mtg-benchmark");
+        System.setProperty("user.home", home.toString());
+    }
+
+    @After
+    public void deleteHome() throws IOException {
+        System.setProperty("user.home", userHome);
+        try (Stream<Path> files = Files.walk(home)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void launch() throws IOException, InterruptedException {
+        List<Card> cards = SimulatedCardsAPI.generateCards(pages, pageSize);
+        StorageService storageService = new SnapshotStorageServiceImpl(new StorageServiceImpl());
+        storageService.write(cards);
+        List<String> query = Arrays.asList("--no-cache", "--properties=id,name,set", "set=" + cards.get(0).getSet());
+
+        System.out.println();
+        System.out.println("Startup benchmark: " + cards.size() + " cards, median of " + iterations + " launches");
+
+        List<String> jvm = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Duser.home=" + home,
+                "-cp", System.getProperty("java.class.path"),
+                MagicTheGathering.class.getName()));
+        jvm.addAll(query);
+        measure("JVM", jvm, null);
+
+        Path launcher = Paths.get(APPCDS_LAUNCHER + (windows ? ".bat" : ""));
+        if (Files.exists(launcher) && Files.exists(Paths.get(APPCDS_ARCHIVE))) {
+            List<String> appcds = new ArrayList<>();
+            appcds.add(launcher.toAbsolutePath().toString());
+            appcds.addAll(query);
+            measure("AppCDS", appcds, "-Duser.home=" + home);
+        } else {
+            System.out.println("  AppCDS not built, run: mvn clean package -Pappcds");
+        }
+
+        Path nativeImage = Paths.get(NATIVE_IMAGE + (windows ? ".exe" : ""));
+        if (Files.exists(nativeImage)) {
+            List<String> image = new ArrayList<>();
+            image.add(nativeImage.toAbsolutePath().toString());
+            image.add("-Duser.home=" + home);
+            image.addAll(query);
+            measure("Native image", image, null);
+        } else {
+            System.out.println("  Native image not built, run with GraalVM: mvn package -Pnative");
+        }
+    }
+
+    private void measure(String name, List<String> command, String javaOptions) throws IOException, InterruptedException {
+        long[] times = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            ProcessBuilder processBuilder = new ProcessBuilder(command)
+                    .redirectOutput(home.resolve("output.json").toFile())
+                    .redirectError(home.resolve("error.log").toFile());
+            if (javaOptions != null) {
+                processBuilder.environment().put("JAVA_OPTS", javaOptions);
+            }
+
+            long start = System.nanoTime();
+            int exitCode = processBuilder.start().waitFor();
+            times[i] = System.nanoTime() - start;
+            assertEquals(name + " failed, see " + home.resolve("error.log"), 0, exitCode);
+        }
+
+        Arrays.sort(times);
+        System.out.printf("  %-26s %8.1f ms%n", name, times[iterations / 2] / 1_000_000.0);
+    }
+}
@@ -0,0 +1,144 @@
+package com.lingokids.mtg.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.model.Partition;
+import com.lingokids.mtg.model.PartitionManifest;
+import com.lingokids.mtg.services.StorageService;
+import com.lingokids.mtg.services.impl.DatabaseStorageServiceImpl;
+import com.lingokids.mtg.services.impl.SnapshotStorageServiceImpl;
+import com.lingokids.mtg.services.impl.StorageServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Time to read the whole synthetic catalogue from every storage, with and without details.
+ * The synthetic catalogue alternates sets card by card, so snapshots are also measured with
+ * the cards set by set, like the real API returns them, and {@code benchmark.setSize} cards
+ * in every set. For them it reports the share of the bytes of the snapshot read for one set.
+ * It's not run with the unit tests:
+ *
+ * <pre>
+ * mvn test -Pbenchmark -Dtest=StorageBenchmark -Dbenchmark.iterations=10
+ * </pre>
+ *
+ */
+public class StorageBenchmark {
+
+    private final int pages = Integer.getInteger("benchmark.pages", 582);
+    private final int pageSize = Integer.getInteger("benchmark.pageSize", 100);
+    private final int iterations = Integer.getInteger("benchmark.iterations", 5);
+    private final int setSize = Integer.getInteger("benchmark.setSize", 250);
+
+    private String userHome;
+    private Path home;
+
+    @Before
+    public void createHome() throws IOException {
+        userHome = System.getProperty("user.home");
+        home = Files.createTempDirectory("mtg-benchmark");
+        System.setProperty("user.home", home.toString());
+    }
+
+    @After
+    public void deleteHome() throws IOException {
+        System.setProperty("user.home", userHome);
+        try (Stream<Path> files = Files.walk(home)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void readCatalogue() throws IOException {
+        List<Card> cards = SimulatedCardsAPI.generateCards(pages, pageSize);
+        StorageService json = new StorageServiceImpl();
+        StorageService snapshot = new SnapshotStorageServiceImpl(json);
+        snapshot.write(cards);
+        StorageService database = new DatabaseStorageServiceImpl();
+        database.write(cards);
+
+        System.out.println();
+        System.out.println("Storage benchmark: " + cards.size() + " cards, median of " + iterations + " reads");
+        CardQuery all = CardQuery.all();
+        CardQuery lean = new CardQuery();
+        lean.setProperties(new HashSet<>(Arrays.asList("id", "name", "set", "colors", "rarity")));
+        CardQuery oneSet = new CardQuery();
+        oneSet.setFilters(Collections.singletonMap("set", cards.get(0).getSet()));
+        long oneSetCards = cards.stream().filter(card -> card.getSet().equals(cards.get(0).getSet())).count();
+
+        measure("JSON", json, all, cards.size());
+        measure("JSON without details", json, lean, cards.size());
+        for (int cores = 1; cores <= Runtime.getRuntime().availableProcessors(); cores *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(cores);
+            try {
+                measure("JSON on " + cores + " cores", new StorageServiceImpl(pool), all, cards.size());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        measure("Snapshot", snapshot, all, cards.size());
+        measure("Snapshot without details", snapshot, lean, cards.size());
+        measure("Snapshot of one set", snapshot, oneSet, oneSetCards);
+        measure("Database", database, all, cards.size());
+        measure("Database without details", database, lean, cards.size());
+        measure("Database of one set", database, oneSet, oneSetCards);
+
+        List<Card> orderedCards = SimulatedCardsAPI.generateCards(pages, pageSize, setSize);
+        snapshot.write(orderedCards);
+        String set = orderedCards.get(orderedCards.size() / 2).getSet();
+        CardQuery orderedSet = new CardQuery();
+        orderedSet.setFilters(Collections.singletonMap("set", set));
+
+        System.out.println("Cards set by set, " + setSize + " cards per set");
+        measure("Snapshot", snapshot, all, orderedCards.size());
+        measure("Snapshot of one set", snapshot, orderedSet, setSize);
+        System.out.printf("  %-26s %8.1f %%%n", "Bytes read for one set", 100.0 * getBytesRead(set));
+    }
+
+    /**
+     * @return Size of the partitions having the set divided by the size of all of them
+     */
+    private double getBytesRead(String set) throws IOException {
+        Path directory = home.resolve("mtg_cards.partitions");
+        PartitionManifest manifest = new ObjectMapper().readValue(directory.resolve("manifest.json").toFile(), PartitionManifest.class);
+        long read = 0;
+        long total = 0;
+        for (Partition partition : manifest.getPartitions()) {
+            long size = Files.size(directory.resolve(partition.getFile()));
+            total += size;
+            if (partition.getSets().contains(set)) {
+                read += size;
+            }
+        }
+        return (double) read / total;
+    }
+
+    private void measure(String name, StorageService storageService, CardQuery query, long expected) throws IOException {
+        long[] times = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            List<Card> cards = storageService.read(query);
+            times[i] = System.nanoTime() - start;
+            assertEquals(expected, cards.size());
+        }
+
+        Arrays.sort(times);
+        System.out.printf("  %-26s %8.1f ms%n", name, times[iterations / 2] / 1_000_000.0);
+    }
+}
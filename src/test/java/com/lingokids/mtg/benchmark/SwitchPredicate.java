@@ -0,0 +1,267 @@
+package com.lingokids.mtg.benchmark;
+
+import com.lingokids.mtg.model.Card;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Predicate of the filters as the filter service built it before filter plans, looking up the
+ * field by name and converting its value for every card. {@link FilterBenchmark} compares it
+ * with {@link com.lingokids.mtg.filter.FilterPlan}.
+ *
+ */
+class SwitchPredicate {
+
+    private static final String TRUE = "true";
+    private static final String FALSE = "false";
+
+    /**
+     * All the filters combined in a single predicate, so cards can be filtered one by one
+     * while they are read. Values of the filters are converted only once.
+     *
+     * @param filters Map of filters (field, comma separated values), it can be null
+     * @return Predicate true for the cards matching all the filters
+     */
+    static Predicate<Card> getPredicate(Map<String, String> filters) {
+        Predicate<Card> predicate = card -> true;
+        if (filters == null) {
+            return predicate;
+        }
+
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            String field = filter.getKey();
+            Set<String> values = convertArrayToSet(filter.getValue());
+
+            if (values != null && !values.isEmpty()) {
+                predicate = predicate.and(card -> containsValue(card, field, values));
+            }
+        }
+
+        return predicate;
+    }
+
+    /**
+     * Converts a String containing values separated by commas to a Set (no duplicates) and
+     * in lowercase to ease comparison in next steps
+     * <p>
+     * Example "Red,BLUE" -> Set[red, blue]
+     *
+     * @param value Comma separated values
+     * @return Set containing the values and without duplicates
+     */
+    private static Set<String> convertArrayToSet(String value) {
+        String[] values = value.split(",");
+        return Arrays.stream(values)
+                .filter(text -> text != null && text.length() > 0)
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet());
+    }
+
+    private static boolean containsValue(Card card, String fieldName, Set<String> values) {
+        boolean contains = false;
+
+        switch (fieldName.toLowerCase()) {
+            case "id":
+                contains = values.contains(card.getId().toLowerCase());
+                break;
+
+            case "layout":
+                contains = values.contains(card.getLayout().toLowerCase());
+                break;
+
+            case "name":
+                contains = values.contains(card.getName().toLowerCase());
+                break;
+
+            case "names":
+                contains = intersectionHasSameSize(card.getNames(), values);
+                break;
+
+            case "manacost":
+                contains = values.contains(card.getManaCost().toLowerCase());
+                break;
+
+            case "cmc":
+                contains = values.contains(Double.toString(card.getCmc()));
+                break;
+
+            case "colors":
+                contains = intersectionHasSameSize(card.getColors(), values);
+                break;
+
+            case "coloridentity":
+                contains = intersectionHasSameSize(card.getColorIdentity(), values);
+                break;
+
+            case "type":
+                contains = values.contains(card.getType().toLowerCase());
+                break;
+
+            case "supertypes":
+                contains = intersectionHasSameSize(card.getSupertypes(), values);
+                break;
+
+            case "types":
+                contains = intersectionHasSameSize(card.getTypes(), values);
+                break;
+
+            case "subtypes":
+                contains = intersectionHasSameSize(card.getSubtypes(), values);
+                break;
+
+            case "rarity":
+                contains = values.contains(card.getRarity().toLowerCase());
+                break;
+
+            case "text":
+                contains = values.contains(card.getText().toLowerCase());
+                break;
+
+            case "originaltext":
+                contains = values.contains(card.getOriginalText().toLowerCase());
+                break;
+
+            case "originaltype":
+                contains = values.contains(card.getOriginalType().toLowerCase());
+                break;
+
+            case "flavor":
+                contains = values.contains(card.getFlavor().toLowerCase());
+                break;
+
+            case "artist":
+                contains = values.contains(card.getArtist().toLowerCase());
+                break;
+
+            case "number":
+                contains = values.contains(card.getNumber().toLowerCase());
+                break;
+
+            case "power":
+                contains = values.contains(card.getPower().toLowerCase());
+                break;
+
+            case "toughness":
+                contains = values.contains(card.getToughness().toLowerCase());
+                break;
+
+            case "loyalty":
+                contains = values.contains(card.getLoyalty().toLowerCase());
+                break;
+
+            case "multiverseid":
+                contains = values.contains(Integer.toString(card.getMultiverseid()));
+                break;
+
+            case "variations":
+                contains = intersectionHasSameSize(card.getVariations(), values);
+                break;
+
+            case "imagename":
+                contains = values.contains(card.getImageName().toLowerCase());
+                break;
+
+            case "watermark":
+                contains = values.contains(card.getWatermark().toLowerCase());
+                break;
+
+            case "border":
+                contains = values.contains(card.getBorder().toLowerCase());
+                break;
+
+            case "timeshifted":
+                contains = values.contains(card.isTimeshifted() ? TRUE : FALSE);
+                break;
+
+            case "hand":
+                contains = values.contains(Integer.toString(card.getHand()));
+                break;
+
+            case "life":
+                contains = values.contains(Integer.toString(card.getLife()));
+                break;
+
+            case "reserved":
+                contains = values.contains(card.isReserved() ? TRUE : FALSE);
+                break;
+
+            case "releasedate":
+                contains = values.contains(card.getReleaseDate().toLowerCase());
+                break;
+
+            case "starter":
+                contains = values.contains(card.isStarter() ? TRUE : FALSE);
+                break;
+
+            case "set":
+                contains = values.contains(card.getSet().toLowerCase());
+                break;
+
+            case "setname":
+                contains = values.contains(card.getSetName().toLowerCase());
+                break;
+
+            case "printings":
+                contains = intersectionHasSameSize(card.getPrintings(), values);
+                break;
+
+            case "imageurl":
+                contains = values.contains(card.getImageUrl().toLowerCase());
+                break;
+
+            case "pricehigh":
+                contains = values.contains(card.getPriceHigh().toString());
+                break;
+
+            case "pricemid":
+                contains = values.contains(card.getPriceMid().toString());
+                break;
+
+            case "pricelow":
+                contains = values.contains(card.getPriceLow().toString());
+                break;
+
+            case "onlinepricehigh":
+                contains = values.contains(card.getOnlinePriceHigh().toString());
+                break;
+
+            case "onlinepricemid":
+                contains = values.contains(card.getOnlinePriceHigh().toString());
+                break;
+
+            case "onlinepricelow":
+                contains = values.contains(card.getOnlinePriceHigh().toString());
+                break;
+
+            case "legalities":
+            case "rulings":
+            case "foreignnames":
+                throw new IllegalArgumentException("Field '" + fieldName + "' not supported for filtering.");
+
+            default:
+                throw new IllegalArgumentException("Field '" + fieldName + "' does not exist for filtering.");
+        }
+
+        return contains;
+    }
+
+    private static boolean intersectionHasSameSize(List<String> list, Set<String> values) {
+        if (list == null || list.isEmpty()) {
+            return false;
+        }
+
+        List<String> intersectionList = list.stream()
+                .map(String::toLowerCase)
+                .filter(values::contains)
+                .collect(Collectors.toList());
+
+        return !intersectionList.isEmpty() &&
+                intersectionList.size() == values.size() &&
+                list.size() == values.size();
+    }
+}
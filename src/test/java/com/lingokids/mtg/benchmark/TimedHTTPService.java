@@ -0,0 +1,75 @@
+package com.lingokids.mtg.benchmark;
+
+import com.lingokids.mtg.model.HTTPResponse;
+import com.lingokids.mtg.services.HTTPService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Measures how long every page takes, from the request until the body is parsed.
+ * Retries are included in the time of the page.
+ *
+ */
+public class TimedHTTPService implements HTTPService {
+
+    private final HTTPService httpService;
+    private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+    public TimedHTTPService(HTTPService httpService) {
+        this.httpService = httpService;
+    }
+
+    @Override
+    public String doGet(String url) throws IOException {
+        return doGetResponse(url).getBody();
+    }
+
+    @Override
+    public HTTPResponse doGetResponse(String url) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return httpService.doGetResponse(url);
+        } finally {
+            latencies.add(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public <T> T doGetStream(String url, BodyHandler<T> handler) throws IOException {
+        return doGetStream(url, Collections.emptyMap(), handler);
+    }
+
+    @Override
+    public <T> T doGetStream(String url, Map<String, String> requestHeaders, BodyHandler<T> handler) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return httpService.doGetStream(url, requestHeaders, handler);
+        } finally {
+            latencies.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return Latency in milliseconds of the given percentile, nearest-rank method
+     */
+    public double getPercentileMillis(double percentile) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1)) / 1_000_000.0;
+    }
+
+    public int getRequests() {
+        return latencies.size();
+    }
+}
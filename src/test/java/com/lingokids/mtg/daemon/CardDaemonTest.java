@@ -0,0 +1,160 @@
+package com.lingokids.mtg.daemon;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.services.CardLoaderService;
+import com.lingokids.mtg.services.PrinterService;
+import com.lingokids.mtg.services.StorageService;
+import com.lingokids.mtg.services.impl.FilterServiceImpl;
+import com.lingokids.mtg.services.impl.GroupingServiceImpl;
+import com.lingokids.mtg.services.impl.PrinterServiceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CardDaemonTest {
+
+    @Mock
+    private CardLoaderService cardLoaderService;
+
+    @Mock
+    private StorageService storageService;
+
+    private final PrinterService printerService = new PrinterServiceImpl();
+    private final DaemonClient daemonClient = new DaemonClient();
+    private CardDaemon daemon;
+
+    private final List<Card> cards = Arrays.asList(
+            card("1", "KTK", "Rare", "Red"),
+            card("2", "ZEN", "Common", "Green"),
+            card("3", "KTK", "Common"),
+            card("4", "M10", "Rare"));
+
+    @Before
+    public void startDaemon() throws IOException {
+        when(cardLoaderService.getCards(isNull(), eq(false), eq(false), any(CardQuery.class))).thenReturn(cards);
+        daemon = new CardDaemon(cardLoaderService, new FilterServiceImpl(), new GroupingServiceImpl(), printerService);
+        daemon.start(0);
+    }
+
+    @After
+    public void stopDaemon() {
+        daemon.stop();
+    }
+
+    /**
+     * Result of the daemon is the same the CLI prints
+     */
+    @Test
+    public void shouldAnswerLikeTheCLI() throws IOException {
+        CardQuery query = query("set", "ktk,m10", "rarity", "rare");
+        query.setProperties(new HashSet<>(Arrays.asList("id", "set")));
+
+        String expected = printerService.format(Arrays.asList(cards.get(0), cards.get(3)), query.getProperties(), true);
+        assertEquals(expected, daemonClient.query(query, true).getJson());
+
+        CardQuery grouped = query("rarity", "common");
+        grouped.setGroupBy(Collections.singletonList("set"));
+        Map<String, List<Card>> groups = new LinkedHashMap<>();
+        groups.put("ZEN", Collections.singletonList(cards.get(1)));
+        groups.put("KTK", Collections.singletonList(cards.get(2)));
+        assertEquals(printerService.format(groups, null, false), daemonClient.query(grouped, false).getJson());
+    }
+
+    /**
+     * Colorless cards are within any colors, the index selects them like the scan of the CLI
+     */
+    @Test
+    public void shouldAnswerLikeTheCLIForCardsWithoutTheField() throws IOException {
+        CardQuery query = query("colors:within", "red,blue");
+        query.setProperties(Collections.singleton("id"));
+
+        List<Card> scanned = new FilterServiceImpl().filter(cards, query.getFilters());
+        assertEquals(Arrays.asList(cards.get(0), cards.get(2), cards.get(3)), scanned);
+        assertEquals(printerService.format(scanned, query.getProperties(), false), daemonClient.query(query, false).getJson());
+    }
+
+    @Test
+    public void shouldRejectInvalidQueries() throws IOException {
+        try {
+            daemonClient.query(query("unknown", "value"), false);
+            fail("Query should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Field 'unknown' does not exist for filtering.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldReloadCards() throws IOException {
+        daemonClient.reload();
+
+        verify(cardLoaderService, times(2)).getCards(isNull(), eq(false), eq(false), any(CardQuery.class));
+    }
+
+    /**
+     * Cards are read again if a refresh changed them without asking the daemon
+     */
+    @Test
+    public void shouldReloadCardsIfStorageChanged() throws IOException {
+        daemon.stop();
+        when(storageService.getVersion()).thenReturn("1", "1", "2", "2");
+        daemon = new CardDaemon(cardLoaderService, storageService, null, new FilterServiceImpl(),
+                new GroupingServiceImpl(), printerService);
+        daemon.start(0);
+
+        assertEquals("1", daemonClient.query(CardQuery.all(), false).getVersion());
+        assertEquals("2", daemonClient.query(CardQuery.all(), false).getVersion());
+        assertEquals("2", daemon.getVersion());
+        verify(cardLoaderService, times(3)).getCards(isNull(), eq(false), eq(false), any(CardQuery.class));
+    }
+
+    @Test
+    public void shouldNotAnswerOnceStopped() throws IOException {
+        daemon.stop();
+
+        assertNull(daemonClient.query(CardQuery.all(), false));
+    }
+
+    private CardQuery query(String... fieldsAndValues) {
+        Map<String, String> filters = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            filters.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        CardQuery query = new CardQuery();
+        query.setFilters(filters);
+        return query;
+    }
+
+    private Card card(String id, String set, String rarity, String... colors) {
+        Card card = new Card();
+        card.setId(id);
+        card.setSet(set);
+        card.setRarity(rarity);
+        card.setColors(new ArrayList<>(Arrays.asList(colors)));
+        return card;
+    }
+}
@@ -0,0 +1,135 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CardDictionaryTest {
+
+    private final CardDictionary dictionary = new CardDictionary();
+
+    @Test
+    public void shouldShareEqualValues() {
+        Card first = card("1", new String("KTK"), new String("Red"));
+        Card second = card("2", new String("KTK"), new String("Red"));
+        assertNotSame(first.getSet(), second.getSet());
+
+        dictionary.normalize(first);
+        dictionary.normalize(second);
+
+        assertSame(first.getSet(), second.getSet());
+        assertSame(first.getColors(), second.getColors());
+        assertEquals(Collections.singletonList("Red"), second.getColors());
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void shouldFindTheCanonicalStringsOfLowercaseKeys() {
+        String upper = dictionary.intern("KTK");
+        String lower = dictionary.intern(new String("ktk"));
+        dictionary.intern("ZEN");
+
+        assertArrayEquals(new String[]{upper, lower}, dictionary.getVariants(Collections.singleton("ktk")));
+        assertSame(upper, dictionary.getVariants(Collections.singleton("ktk"))[0]);
+        assertEquals(0, dictionary.getVariants(Collections.singleton("m10")).length);
+    }
+
+    /**
+     * Filters compiled with the dictionary match the same normalized cards as filters comparing text
+     */
+    @Test
+    public void shouldMatchNormalizedCardsLikeText() {
+        List<Card> cards = new ArrayList<>(Arrays.asList(
+                card("1", "KTK", "Red"),
+                card("2", "ktk", "White", "Red"),
+                card("3", "ZEN", "Red"),
+                card("4", "M10", "Blue")));
+        cards.forEach(dictionary::normalize);
+
+        for (Map<String, String> filters : Arrays.asList(
+                filters("set", "KTK"), filters("colors", "red,WHITE"), filters("colors", "red"),
+                filters("set", "ktk,zen", "colors", "red"), filters("set", "m11"))) {
+            assertEquals(matching(cards, FilterPlan.compile(filters)),
+                    matching(cards, FilterPlan.compile(filters, null, dictionary)));
+        }
+    }
+
+    /**
+     * Every interned field is normalized, otherwise filters compiled with the dictionary wouldn't match it
+     */
+    @Test
+    public void shouldNormalizeAllTheInternedFields() {
+        Card card = new Card();
+        card.setLayout(new String("normal"));
+        card.setName(new String("Goblin Guide"));
+        card.setText(new String("Haste"));
+        card.setOriginalText(new String("Haste"));
+        card.setFlavor(new String("They rush in."));
+        card.setManaCost(new String("{R}"));
+        card.setColors(Collections.singletonList(new String("Red")));
+        card.setColorIdentity(Collections.singletonList(new String("R")));
+        card.setType(new String("Creature"));
+        card.setSupertypes(Collections.singletonList(new String("Legendary")));
+        card.setTypes(Collections.singletonList(new String("Creature")));
+        card.setSubtypes(Collections.singletonList(new String("Goblin")));
+        card.setRarity(new String("Rare"));
+        card.setOriginalType(new String("Creature"));
+        card.setArtist(new String("Artist"));
+        card.setNumber(new String("1"));
+        card.setPower(new String("2"));
+        card.setToughness(new String("2"));
+        card.setLoyalty(new String("3"));
+        card.setWatermark(new String("Boros"));
+        card.setBorder(new String("black"));
+        card.setReleaseDate(new String("2014-09-26"));
+        card.setSet(new String("KTK"));
+        card.setSetName(new String("Khans of Tarkir"));
+        card.setPrintings(Collections.singletonList(new String("KTK")));
+        dictionary.normalize(card);
+
+        for (CardField field : CardField.values()) {
+            if (field.isInterned()) {
+                Object value = field.getValue(card);
+                String key = value instanceof List ? (String) ((List<?>) value).get(0) : (String) value;
+                Map<String, String> filter = filters(field.getKey(), key);
+                assertTrue(field.getKey(), FilterPlan.compile(filter, null, dictionary).test(card));
+            }
+        }
+    }
+
+    private List<String> matching(List<Card> cards, FilterPlan plan) {
+        return cards.stream().filter(plan).map(Card::getId).collect(Collectors.toList());
+    }
+
+    private Map<String, String> filters(String... fieldsAndValues) {
+        Map<String, String> filters = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            filters.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        return filters;
+    }
+
+    private Card card(String id, String set, String... colors) {
+        Card card = new Card();
+        card.setId(id);
+        card.setSet(set);
+        card.setColors(new ArrayList<>(Arrays.asList(colors)));
+        return card;
+    }
+}
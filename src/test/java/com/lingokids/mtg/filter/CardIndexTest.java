@@ -0,0 +1,129 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CardIndexTest {
+
+    private static final List<Card> cards = Arrays.asList(
+            card("1", "KTK", "Rare", "Red"),
+            card("2", "ktk", "Common", "White", "Red"),
+            card("3", "ZEN", "Common", "Red"),
+            card("4", "KTK", "Mythic Rare", "Blue", "Red"),
+            card("5", "M10", null));
+
+    static {
+        cards.get(0).setText("Draw a card.");
+        cards.get(1).setText("Destroy target creature. Draw a card.");
+        cards.get(3).setText("Draw two cards, then discard a card.");
+        for (int i = 0; i < cards.size(); i++) {
+            cards.get(i).setCmc(4 - i);
+        }
+        cards.get(1).setPriceMid(new BigDecimal("0.25"));
+        cards.get(2).setPriceMid(new BigDecimal("1.50"));
+    }
+
+    private final CardIndex index = CardIndex.build(cards);
+
+    @Test
+    public void shouldKeepABitmapForEveryValue() {
+        assertEquals(3, index.getBitmaps(CardField.SET).size());
+        assertEquals(bits(0, 1, 3), index.getBitmaps(CardField.SET).get(0));
+        assertEquals(4, index.getBitmaps(CardField.COLORS).size());
+        assertEquals(bits(4), index.getBitmaps(CardField.COLORS).get(4));
+        assertEquals(Collections.emptyMap(), index.getBitmaps(CardField.NAME));
+    }
+
+    /**
+     * Indexed filters select the same cards the filters match, the rest are left to the plan
+     */
+    @Test
+    public void shouldSelectCardsMatchingIndexedFilters() {
+        assertEquals(Collections.singletonList("2"), select("set", "KTK", "colors", "red,white"));
+        assertEquals(Collections.singletonList("4"), select("set", "ktk", "colors", "blue,red", "rarity", "mythic rare"));
+        assertEquals(Arrays.asList("1", "3"), select("colors", "red"));
+        assertEquals(Arrays.asList("1", "3", "4", "5"), select("colors:within", "red,blue"));
+        assertEquals(Collections.emptyList(), select("rarity", "mythic rare", "set", "m10"));
+        assertEquals(Collections.emptyList(), select("set", "ktk", "rarity", "uncommon"));
+        assertNull(index.select(plan("name", "goblin guide")));
+
+        FilterPlan plan = plan("set", "ktk", "id", "2");
+        assertEquals(Collections.singletonList(CardField.ID), plan.without(CardIndex.INDEXED_FIELDS).getFields());
+    }
+
+    /**
+     * Cards having the words are selected, the plan still checks their order
+     */
+    @Test
+    public void shouldSelectCardsHavingTheWordsOfTextSearches() {
+        assertEquals(Arrays.asList("1", "2", "4"), select("text:contains", "draw a card"));
+        assertEquals(Arrays.asList("1", "2", "4"), select("text:contains", "draw a card", "set", "ktk"));
+        assertEquals(Collections.singletonList("4"), select("text:contains", "then disc*"));
+        assertEquals(Collections.emptyList(), select("flavor:contains", "draw"));
+        assertNull(index.select(plan("text", "draw a card.")));
+
+        FilterPlan plan = plan("text:contains", "draw a card", "set", "ktk");
+        assertEquals(Collections.singletonList(CardField.TEXT), plan.without(CardIndex.INDEXED_FIELDS).getFields());
+        assertEquals(Arrays.asList("1", "2"), index.getCards(index.select(plan)).stream()
+                .filter(plan).map(Card::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * Ranges select the cards by binary search of the sorted keys. Card 5 has no mana cost nor
+     * cmc, so it's not in the index.
+     */
+    @Test
+    public void shouldSelectCardsInRanges() {
+        assertArrayEquals(new int[]{3, 2, 1, 0}, index.getRange(CardField.CMC).getPositions());
+        assertEquals(Arrays.asList("2", "3", "4"), select("cmc", "1..3"));
+        assertEquals(Collections.singletonList("1"), select("cmc", "..0,4.."));
+        assertEquals(Arrays.asList("1", "2"), select("cmc>", "2", "set", "ktk"));
+        assertEquals(Collections.singletonList("2"), select("priceMid<1.50", ""));
+        assertEquals(Arrays.asList("2", "3"), select("priceMid>", "0"));
+        assertNull(index.select(plan("cmc", "3.0")));
+    }
+
+    private List<String> select(String... fieldsAndValues) {
+        BitSet selected = index.select(plan(fieldsAndValues));
+        return index.getCards(selected).stream().map(Card::getId).collect(Collectors.toList());
+    }
+
+    private FilterPlan plan(String... fieldsAndValues) {
+        Map<String, String> filters = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            filters.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        return FilterPlan.compile(filters);
+    }
+
+    private BitSet bits(int... positions) {
+        BitSet bits = new BitSet();
+        Arrays.stream(positions).forEach(bits::set);
+        return bits;
+    }
+
+    private static Card card(String id, String set, String rarity, String... colors) {
+        Card card = new Card();
+        card.setId(id);
+        card.setSet(set);
+        card.setRarity(rarity);
+        card.setColors(colors.length > 0 ? Arrays.asList(colors) : null);
+        return card;
+    }
+}
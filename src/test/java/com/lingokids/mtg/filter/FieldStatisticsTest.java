@@ -0,0 +1,57 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FieldStatisticsTest {
+
+    private final List<Card> cards = Arrays.asList(
+            card("KTK", "Rare", "Red", "White"),
+            card("ktk", "Common", "white", "red"),
+            card("ZEN", "Common"),
+            card("M10", null, "Blue"));
+
+    /**
+     * Values are counted as they are compared: ignoring case and the order of lists
+     */
+    @Test
+    public void shouldCountDistinctValuesLikeFiltersCompareThem() {
+        FieldStatistics statistics = FieldStatistics.of(cards);
+
+        assertEquals(4, statistics.getCards());
+        assertEquals(3, statistics.getDistinctValues(CardField.SET));
+        assertEquals(2, statistics.getDistinctValues(CardField.RARITY));
+        assertEquals(2, statistics.getDistinctValues(CardField.COLORS));
+        assertEquals(1, statistics.getDistinctValues(CardField.CMC));
+        assertEquals(0, statistics.getDistinctValues(CardField.ARTIST));
+        assertEquals(0, statistics.getDistinctValues(CardField.LEGALITIES));
+    }
+
+    @Test
+    public void shouldEstimateTheFractionOfCardsMatching() {
+        FieldStatistics statistics = FieldStatistics.of(cards);
+
+        assertEquals(1.0 / 3, statistics.estimateSelectivity(CardField.SET, 1), 1e-9);
+        assertEquals(1.0, statistics.estimateSelectivity(CardField.SET, 5), 1e-9);
+        assertEquals(0.75 / 2, statistics.estimateSelectivity(CardField.RARITY, 1), 1e-9);
+        assertEquals(0, statistics.estimateSelectivity(CardField.ARTIST, 1), 1e-9);
+        assertEquals(0, FieldStatistics.of(Collections.emptyList()).estimateSelectivity(CardField.SET, 1), 1e-9);
+    }
+
+    private Card card(String set, String rarity, String... colors) {
+        Card card = new Card();
+        card.setSet(set);
+        card.setRarity(rarity);
+        card.setColors(colors.length > 0 ? Arrays.asList(colors) : null);
+        return card;
+    }
+}
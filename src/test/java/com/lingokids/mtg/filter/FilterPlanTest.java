@@ -0,0 +1,294 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FilterPlanTest {
+
+    private final Card card;
+
+    public FilterPlanTest() {
+        card = new Card();
+        card.setId("1");
+        card.setName("Goblin Guide");
+        card.setSet("ZEN");
+        card.setCmc(1);
+        card.setMultiverseid(170987);
+        card.setColors(Arrays.asList("Red", "White"));
+        card.setReserved(true);
+        card.setPriceMid(new BigDecimal("1.50"));
+        card.setOnlinePriceMid(new BigDecimal("0.20"));
+        card.setReleaseDate("2009-10-02");
+        card.setText("Haste (This creature can attack and {T} as soon as it comes under your control.)");
+    }
+
+    @Test
+    public void shouldCompareTextIgnoringCase() {
+        assertTrue(plan("name", "GOBLIN GUIDE,island").test(card));
+        assertTrue(plan("Set", "zen").test(card));
+        assertFalse(plan("name", "goblin").test(card));
+    }
+
+    /**
+     * Numbers match the same values their text would match
+     */
+    @Test
+    public void shouldCompareNumbersLikeTheirText() {
+        assertTrue(plan("cmc", "1.0").test(card));
+        assertFalse(plan("cmc", "1").test(card));
+        assertFalse(plan("cmc", "one").test(card));
+        assertTrue(plan("multiverseid", "170987").test(card));
+        assertFalse(plan("multiverseid", "0170987").test(card));
+        assertTrue(plan("reserved", "true").test(card));
+        assertFalse(plan("reserved", "false").test(card));
+        assertTrue(plan("pricemid", "1.50").test(card));
+        assertFalse(plan("pricemid", "1.5").test(card));
+        assertTrue(plan("onlinepricemid", "0.20").test(card));
+    }
+
+    /**
+     * Lists must have all the values and nothing else
+     */
+    @Test
+    public void shouldMatchListsWithAllTheValues() {
+        assertTrue(plan("colors", "white,red").test(card));
+        assertFalse(plan("colors", "red").test(card));
+        assertFalse(plan("colors", "red,white,blue").test(card));
+    }
+
+    @Test
+    public void shouldCompareColorsByNameOrLetter() {
+        assertTrue(plan("colors", "W,r").test(card));
+        assertFalse(plan("colors", "red,silver").test(card));
+        assertFalse(plan("colors", "w,r,u").test(card));
+    }
+
+    @Test
+    public void shouldMatchColorsWithOperators() {
+        assertTrue(plan("colors:all", "red").test(card));
+        assertFalse(plan("colors:all", "red,blue").test(card));
+        assertTrue(plan("colors:any", "red,blue").test(card));
+        assertFalse(plan("colors:any", "blue,silver").test(card));
+        assertTrue(plan("colors:within", "w,u,b,r").test(card));
+        assertFalse(plan("colors:within", "red,blue").test(card));
+    }
+
+    /**
+     * Colorless cards can be played in a deck of any colors
+     */
+    @Test
+    public void shouldMatchColorlessCardsWithinAnyColors() {
+        Card colorless = new Card();
+        colorless.setName("Sol Ring");
+
+        assertTrue(plan("colorIdentity:within", "g").test(colorless));
+        assertFalse(plan("colorIdentity:any", "w,u,b,r,g").test(colorless));
+        assertFalse(plan("colorIdentity", "g").test(colorless));
+    }
+
+    @Test
+    public void shouldRejectInvalidOperatorsWhenCompiling() {
+        try {
+            plan("colors:some", "red");
+            fail("Unknown operator should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Operator 'some' does not exist for filtering.", e.getMessage());
+        }
+
+        try {
+            plan("Name:within", "goblin guide");
+            fail("Operator of other fields should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Operator 'within' not supported for field 'Name'.", e.getMessage());
+        }
+    }
+
+    /**
+     * Words are compared ignoring case and punctuation, in the same order
+     */
+    @Test
+    public void shouldSearchPhrasesInTheText() {
+        assertTrue(plan("text", "haste (this creature can attack and {t} as soon as it comes under your control.)").test(card));
+        assertFalse(plan("text", "haste").test(card));
+        assertTrue(plan("text:contains", "haste").test(card));
+        assertTrue(plan("text:contains", "ATTACK AND T").test(card));
+        assertTrue(plan("text:contains", "flying,your control").test(card));
+        assertFalse(plan("text:contains", "control your").test(card));
+        assertFalse(plan("text:contains", "has").test(card));
+        assertFalse(plan("flavor:contains", "haste").test(card));
+    }
+
+    @Test
+    public void shouldSearchPrefixesOfTheLastWord() {
+        assertTrue(plan("text:contains", "has*").test(card));
+        assertTrue(plan("text:contains", "comes under y*").test(card));
+        assertFalse(plan("text:contains", "come* under").test(card));
+        assertFalse(plan("text:contains", "*").test(card));
+    }
+
+    /**
+     * Single values in a filter with ranges are numbers, "1" is the same as "1.0"
+     */
+    @Test
+    public void shouldMatchRangesOfNumbers() {
+        assertTrue(plan("cmc", "1..3").test(card));
+        assertTrue(plan("cmc", "..1").test(card));
+        assertFalse(plan("cmc", "1.5..").test(card));
+        assertTrue(plan("cmc", "5..6,1").test(card));
+        assertTrue(plan("multiverseid", "170000..171000").test(card));
+        assertTrue(plan("priceMid", "1.5..1.5").test(card));
+        assertFalse(plan("onlinePriceMid", "0.21..").test(card));
+    }
+
+    /**
+     * Prices are kept in fixed point when they are set, ranges compare them without decimals
+     */
+    @Test
+    public void shouldKeepPricesInFixedPoint() {
+        assertEquals(15_000, card.getPriceMidFixedPoint());
+        assertEquals(Card.NO_PRICE, card.getPriceHighFixedPoint());
+        assertEquals(1_235, Card.toFixedPoint(new BigDecimal("0.123456")));
+
+        card.setPriceMid(null);
+        assertFalse(plan("priceMid<", "100").test(card));
+    }
+
+    @Test
+    public void shouldCompareNumbersAndDates() {
+        assertTrue(plan("cmc>", "1").test(card));
+        assertFalse(plan("cmc>1", "").test(card));
+        assertTrue(plan("priceMid<", "1.50").test(card));
+        assertFalse(plan("priceMid<1.50", "").test(card));
+        assertTrue(plan("priceMid<1.51", "").test(card));
+        assertTrue(plan("releaseDate>", "2009-10-02").test(card));
+        assertTrue(plan("releaseDate<2010", "").test(card));
+        assertTrue(plan("releaseDate>2009-10", "").test(card));
+        assertFalse(plan("releaseDate>2009-10-02", "").test(card));
+        assertTrue(plan("releaseDate", "2009..2009-12-31").test(card));
+    }
+
+    @Test
+    public void shouldRejectInvalidBoundsWhenCompiling() {
+        try {
+            plan("cmc>", "two");
+            fail("Bound that is not a number should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Value 'two' is not valid for field 'cmc'.", e.getMessage());
+        }
+
+        try {
+            plan("releaseDate", "2009-13-01..");
+            fail("Bound that is not a date should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Value '2009-13-01..' is not valid for field 'releaseDate'.", e.getMessage());
+        }
+
+        try {
+            plan("name>", "goblin");
+            fail("Comparison of text should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Operator '>=' not supported for field 'name'.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldNotMatchCardsWithoutTheField() {
+        assertFalse(plan("artist", "nobody").test(card));
+        assertFalse(plan("types", "creature").test(card));
+        assertFalse(plan("pricehigh", "1.50").test(card));
+        assertFalse(plan("pricehigh<", "100").test(card));
+        assertFalse(plan("hand", "..1").test(card));
+        assertFalse(plan("life<", "20").test(card));
+
+        Card bare = new Card();
+        assertFalse(plan("cmc", "..1").test(bare));
+        assertFalse(plan("multiverseid<", "1").test(bare));
+
+        bare.setManaCost("{0}");
+        assertTrue(plan("cmc", "..1").test(bare));
+    }
+
+    /**
+     * Wrong filters are rejected while compiling, before testing any card
+     */
+    @Test
+    public void shouldRejectInvalidFieldsWhenCompiling() {
+        try {
+            plan("gender", "female");
+            fail("Unknown field should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Field 'gender' does not exist for filtering.", e.getMessage());
+        }
+
+        try {
+            plan("Legalities", "legal");
+            fail("Complex field should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Field 'Legalities' not supported for filtering.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldIgnoreFiltersWithoutValues() {
+        FilterPlan plan = plan("set", ",", "name", "goblin guide");
+
+        assertEquals(Collections.singletonList(CardField.NAME), plan.getFields());
+        assertTrue(plan.test(card));
+        assertTrue(FilterPlan.compile(null).isEmpty());
+        assertTrue(FilterPlan.compile(null).test(card));
+    }
+
+    /**
+     * Without statistics cheap fields go first, with them the filters discarding more cards
+     */
+    @Test
+    public void shouldCheckCheapAndSelectiveFiltersFirst() {
+        Map<String, String> filters = new HashMap<>();
+        filters.put("types", "creature");
+        filters.put("name", "goblin guide");
+        filters.put("rarity", "common");
+        filters.put("cmc", "1.0");
+
+        assertEquals(Arrays.asList(CardField.CMC, CardField.NAME, CardField.RARITY, CardField.TYPES),
+                FilterPlan.compile(filters).getFields());
+
+        FieldStatistics statistics = FieldStatistics.of(Arrays.asList(
+                card("Goblin Guide", "Common"),
+                card("Lightning Bolt", "Common"),
+                card("Monastery Swiftspear", "Common"),
+                card("Ash Zealot", "Uncommon")));
+        assertEquals(Arrays.asList(CardField.NAME, CardField.RARITY, CardField.CMC, CardField.TYPES),
+                FilterPlan.compile(filters, statistics, null).getFields());
+    }
+
+    private Card card(String name, String rarity) {
+        Card card = new Card();
+        card.setName(name);
+        card.setRarity(rarity);
+        card.setCmc(1);
+        card.setTypes(Collections.singletonList("Creature"));
+        return card;
+    }
+
+    private FilterPlan plan(String... fieldsAndValues) {
+        Map<String, String> filters = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            filters.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        return FilterPlan.compile(filters);
+    }
+}
@@ -0,0 +1,61 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RangeIndexTest {
+
+    private final List<Card> cards = Arrays.asList(
+            card("2014-09-26"),
+            card("2009-10-02"),
+            card(null),
+            card("2014-09-26"),
+            card("2020-09-25"));
+
+    private final RangeIndex index = RangeIndex.build(cards, CardField.RELEASE_DATE::getRangeKey);
+
+    @Test
+    public void shouldSortThePositionsByKeyLeavingOutCardsWithoutTheField() {
+        assertArrayEquals(new int[]{1, 0, 3, 4}, index.getPositions());
+        assertArrayEquals(new long[]{14519, 16339, 16339, 18530}, index.getKeys());
+    }
+
+    @Test
+    public void shouldSelectTheCardsInAnyOfTheRanges() {
+        assertEquals(bits(0, 3), select(FilterOperator.EQUALS, "2014-09-26..2014-09-26"));
+        assertEquals(bits(0, 1, 3), select(FilterOperator.EQUALS, "..2014-12-31"));
+        assertEquals(bits(0, 1, 3, 4), select(FilterOperator.EQUALS, "2009..2010", "2014.."));
+        assertEquals(bits(4), select(FilterOperator.GREATER, "2014-09-26"));
+        assertEquals(bits(1), select(FilterOperator.LESS, "2014-09-26"));
+        assertEquals(bits(), select(FilterOperator.EQUALS, "2015..2019"));
+    }
+
+    private BitSet select(FilterOperator operator, String... values) {
+        RangeQuery query = (RangeQuery) CardField.RELEASE_DATE.compile("releasedate", operator,
+                new LinkedHashSet<>(Arrays.asList(values)), null);
+        return index.select(query, cards.size());
+    }
+
+    private BitSet bits(int... positions) {
+        BitSet bits = new BitSet();
+        Arrays.stream(positions).forEach(bits::set);
+        return bits;
+    }
+
+    private Card card(String releaseDate) {
+        Card card = new Card();
+        card.setReleaseDate(releaseDate);
+        return card;
+    }
+}
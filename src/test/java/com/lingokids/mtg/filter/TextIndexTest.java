@@ -0,0 +1,74 @@
+package com.lingokids.mtg.filter;
+
+import com.lingokids.mtg.model.Card;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TextIndexTest {
+
+    private final List<Card> cards = Arrays.asList(
+            card("Draw a card."),
+            card("Destroy target creature. Draw a card."),
+            card(null),
+            card("Destroy target artifact, then draw two cards."),
+            card("Draw a card."));
+
+    private final TextIndex index = TextIndex.build(cards, Card::getText);
+
+    @Test
+    public void shouldSplitTheTextInWordsInLowercase() {
+        assertEquals(Arrays.asList("destroy", "target", "creature", "draw", "a", "card"),
+                TextIndex.tokenize("Destroy target creature. Draw a card."));
+        assertEquals(Arrays.asList("t", "add", "r"), TextIndex.tokenize("{T}: Add {R}."));
+        assertEquals(Collections.emptyList(), TextIndex.tokenize(" -- "));
+    }
+
+    @Test
+    public void shouldKeepTheSortedPositionsOfEveryWord() {
+        List<String> words = Arrays.asList(index.getWords());
+
+        assertEquals(Arrays.asList("a", "artifact", "card", "cards", "creature", "destroy", "draw", "target", "then", "two"), words);
+        assertArrayEquals(new int[]{0, 1, 3, 4}, index.getPostings(words.indexOf("draw")));
+        assertArrayEquals(new int[]{1, 3}, index.getPostings(words.indexOf("destroy")));
+    }
+
+    /**
+     * The index selects the cards with all the words, the query checks their order
+     */
+    @Test
+    public void shouldSelectCardsHavingAllTheWords() {
+        assertEquals(bits(0, 1, 4), select("draw a card"));
+        assertEquals(bits(0, 1, 3, 4), select("draw*"));
+        assertEquals(bits(1, 3), select("destroy target", "draw two"));
+        assertEquals(bits(), select("exile"));
+        assertEquals(bits(), select("*"));
+    }
+
+    private BitSet select(String... phrases) {
+        TextQuery query = new TextQuery(Card::getText, new LinkedHashSet<>(Arrays.asList(phrases)));
+        return index.select(query, cards.size());
+    }
+
+    private BitSet bits(int... positions) {
+        BitSet bits = new BitSet();
+        Arrays.stream(positions).forEach(bits::set);
+        return bits;
+    }
+
+    private Card card(String text) {
+        Card card = new Card();
+        card.setText(text);
+        return card;
+    }
+}
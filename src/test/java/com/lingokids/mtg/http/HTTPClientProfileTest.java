@@ -0,0 +1,49 @@
+package com.lingokids.mtg.http;
+
+import com.lingokids.mtg.factories.HTTPClientFactory;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HTTPClientProfileTest {
+
+    @Test
+    public void shouldShareClientsWithSameProfile() {
+        OkHttpClient client = HTTPClientFactory.getHTTPClientInstance(new HTTPClientProfile(8));
+
+        assertSame(client, HTTPClientFactory.getHTTPClientInstance(new HTTPClientProfile(8)));
+        assertNotSame(client, HTTPClientFactory.getHTTPClientInstance(new HTTPClientProfile(2)));
+    }
+
+    @Test
+    public void shouldSizeDispatcherWithMaxConnections() {
+        OkHttpClient client = new HTTPClientProfile(8).newClient();
+
+        assertEquals(8, client.dispatcher().getMaxRequestsPerHost());
+        assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), client.protocols());
+        assertEquals(1, client.interceptors().size());
+    }
+
+    @Test
+    public void shouldUseOnlyHTTP1WithoutCompression() {
+        OkHttpClient client = new HTTPClientProfile(2, 1000, false, false).newClient();
+
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), client.protocols());
+        assertEquals(0, client.interceptors().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWithoutConnections() {
+        new HTTPClientProfile(0);
+    }
+}
@@ -0,0 +1,68 @@
+package com.lingokids.mtg.http;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TokenBucketTest {
+
+    @Test
+    public void shouldAllowBurstsUpToCapacity() throws IOException {
+        TokenBucket tokenBucket = new TokenBucket(5, 1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            tokenBucket.acquire();
+        }
+
+        assertTrue(System.nanoTime() - start < 500_000_000L);
+        assertTrue(tokenBucket.getAvailableTokens() < 1);
+    }
+
+    @Test
+    public void shouldWaitForRefillWhenEmpty() throws IOException {
+        TokenBucket tokenBucket = new TokenBucket(1, 20);
+        tokenBucket.acquire();
+
+        long start = System.nanoTime();
+        tokenBucket.acquire();
+        tokenBucket.acquire();
+
+        // 2 tokens at 20 tokens per second are at least 100 ms
+        assertTrue(System.nanoTime() - start >= 90_000_000L);
+    }
+
+    @Test
+    public void shouldWaitWhilePaused() throws IOException {
+        TokenBucket tokenBucket = new TokenBucket(10, 10);
+        tokenBucket.pauseFor(200);
+        tokenBucket.pauseFor(10);
+
+        long start = System.nanoTime();
+        tokenBucket.acquire();
+
+        assertTrue(System.nanoTime() - start >= 190_000_000L);
+    }
+
+    @Test
+    public void shouldNeverHaveMoreTokensThanRemaining() {
+        TokenBucket tokenBucket = new TokenBucket(100, 0.001);
+        tokenBucket.limitTo(3);
+
+        assertEquals(3, tokenBucket.getAvailableTokens(), 0.01);
+
+        tokenBucket.limitTo(50);
+        assertEquals(3, tokenBucket.getAvailableTokens(), 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowExceptionOnInvalidRate() {
+        new TokenBucket(10, 0);
+    }
+}
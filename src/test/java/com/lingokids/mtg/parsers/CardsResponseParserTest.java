@@ -0,0 +1,76 @@
+package com.lingokids.mtg.parsers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.lingokids.mtg.model.Card;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CardsResponseParserTest {
+    /**
+     * Parser to be tested
+     */
+    private final CardsResponseParser parser;
+
+    public CardsResponseParserTest() {
+        parser = new CardsResponseParser();
+    }
+
+    @Test
+    public void shouldParseThreeCards() throws IOException {
+        try (InputStream input = new FileInputStream("test/3cards.json")) {
+            List<Card> cards = parser.parse(input);
+
+            assertNotNull(cards);
+            assertEquals(3, cards.size());
+            assertEquals("1", cards.get(0).getId());
+            assertEquals("Mindswipe", cards.get(1).getName());
+            assertEquals(2, cards.get(2).getColors().size());
+        }
+    }
+
+    @Test
+    public void shouldParseEmptyResponse() throws IOException {
+        try (InputStream input = new FileInputStream("test/empty.json")) {
+            assertTrue(parser.parse(input).isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldSkipUnknownFields() throws IOException {
+        String json = "{\"meta\": {\"page\": [1, 2]}, \"cards\": [{\"id\": \"1\", \"unknown\": {\"a\": 1}}], \"other\": 5}";
+
+        List<Card> cards = parser.parse(stream(json));
+
+        assertEquals(1, cards.size());
+        assertEquals("1", cards.get(0).getId());
+    }
+
+    @Test(expected = JsonProcessingException.class)
+    public void shouldThrowExceptionOnBrokenJson() throws IOException {
+        try (InputStream input = new FileInputStream("test/broken.json")) {
+            parser.parse(input);
+        }
+    }
+
+    @Test(expected = JsonProcessingException.class)
+    public void shouldThrowExceptionOnTruncatedJson() throws IOException {
+        parser.parse(stream("{\"cards\": [{\"id\": \"1\"}"));
+    }
+
+    private InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,23 +2,49 @@ package com.lingokids.mtg.services.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.Checkpoint;
+import com.lingokids.mtg.model.HTTPResponse;
+import com.lingokids.mtg.model.Page;
+import com.lingokids.mtg.model.PageFingerprint;
 import com.lingokids.mtg.services.HTTPService;
+import com.lingokids.mtg.services.RefreshStateService;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -27,7 +53,7 @@ public class APIAssemblerImplTest {
      * Service to be tested
      */
     @InjectMocks
-    private final APIAssemblerImpl apiAssembler;
+    private APIAssemblerImpl apiAssembler;
 
     /**
      * We will mock the http service
@@ -59,8 +85,8 @@ public class APIAssemblerImplTest {
     public void shouldReadThreeCards() throws IOException {
         // Prepare answers from fake server
         String page = "?page=";
-        when(httpService.doGet(url + page + "1")).thenReturn(jsonResult);
-        when(httpService.doGet(url + page + "2")).thenReturn(emptyResult);
+        when(httpService.doGetStream(eq(url + page + "1"), anyMap(), any())).thenAnswer(stream(jsonResult, null));
+        when(httpService.doGetStream(eq(url + page + "2"), anyMap(), any())).thenAnswer(stream(emptyResult, null));
 
         // Call service
         List<Card> cards = apiAssembler.getCards(url);
@@ -74,20 +100,221 @@ public class APIAssemblerImplTest {
         assertEquals("Uncommon", cards.get(2).getRarity());
     }
 
+    @Test
+    public void shouldReadPagesConcurrentlyInOrderWhenTotalCountIsKnown() throws IOException {
+        apiAssembler = new APIAssemblerImpl(httpService, 3);
+
+        // 9 cards, 3 per page: 3 pages and no request for an empty page
+        String page = "?page=";
+        when(httpService.doGetStream(eq(url + page + "1"), anyMap(), any())).thenAnswer(stream(jsonResult, "9"));
+        when(httpService.doGetStream(eq(url + page + "2"), anyMap(), any())).thenAnswer(stream(jsonResult.replace("\"id\": \"", "\"id\": \"2-"), "9"));
+        when(httpService.doGetStream(eq(url + page + "3"), anyMap(), any())).thenAnswer(stream(jsonResult.replace("\"id\": \"", "\"id\": \"3-"), "9"));
+
+        List<Card> cards = apiAssembler.getCards(url);
+
+        assertNotNull(cards);
+        assertEquals(9, cards.size());
+        assertEquals("1", cards.get(0).getId());
+        assertEquals("2-1", cards.get(3).getId());
+        assertEquals("3-3", cards.get(8).getId());
+        verify(httpService, never()).doGetStream(eq(url + page + "4"), anyMap(), any());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowExceptionOnInvalidConcurrency() {
+        new APIAssemblerImpl(httpService, 0);
+    }
+
     @Test(expected = JsonProcessingException.class)
     public void shouldThrowExceptionOnBrokenJson() throws IOException {
-        when(httpService.doGet(anyString())).thenReturn(brokenResult);
+        when(httpService.doGetStream(anyString(), anyMap(), any())).thenAnswer(stream(brokenResult, null));
 
         apiAssembler.getCards(url);
     }
 
     @Test(expected = IOException.class)
     public void shouldThrowExceptionOnCommunicationException() throws IOException {
-        when(httpService.doGet(anyString())).thenThrow(new IOException());
+        when(httpService.doGetStream(anyString(), anyMap(), any())).thenThrow(new IOException());
 
         apiAssembler.getCards(url);
     }
 
+    @Test(expected = IOException.class)
+    public void shouldThrowExceptionIfAConcurrentPageFails() throws IOException {
+        String page = "?page=";
+        when(httpService.doGetStream(eq(url + page + "1"), anyMap(), any())).thenAnswer(stream(jsonResult, "6"));
+        when(httpService.doGetStream(eq(url + page + "2"), anyMap(), any())).thenThrow(new IOException());
+
+        apiAssembler.getCards(url);
+    }
+
+    @Test
+    public void shouldNotParseUnchangedPagesWhenFingerprintsAreKnown() throws IOException {
+        String page = "?page=";
+        when(httpService.doGetStream(eq(url + page + "1"), anyMap(), any())).thenAnswer(stream(jsonResult, "6"));
+        when(httpService.doGetStream(eq(url + page + "2"), anyMap(), any())).thenAnswer(stream(jsonResult.replace("\"id\": \"", "\"id\": \"2-"), "6"));
+
+        Map<Integer, PageFingerprint> knownPages = new TreeMap<>();
+        for (Page knownPage : apiAssembler.getPages(url, Collections.emptyMap())) {
+            knownPages.put(knownPage.getNumber(), knownPage.getFingerprint());
+        }
+        assertEquals(2, knownPages.size());
+        assertEquals("\"v1\"", knownPages.get(1).getEtag());
+        assertEquals(Arrays.asList("2-1", "2-2", "2-3"), knownPages.get(2).getCardIds());
+
+        // Page 1 answers Not Modified, page 2 answers the same body, page 3 is new
+        when(httpService.doGetStream(eq(url + page + "1"), eq(Collections.singletonMap("If-None-Match", "\"v1\"")), any()))
+                .thenAnswer(stream("", "9", HTTPService.NOT_MODIFIED));
+        when(httpService.doGetStream(eq(url + page + "3"), anyMap(), any())).thenAnswer(stream(jsonResult.replace("\"id\": \"", "\"id\": \"3-"), "9"));
+
+        List<Page> pages = apiAssembler.getPages(url, knownPages);
+
+        assertEquals(3, pages.size());
+        assertFalse(pages.get(0).isModified());
+        assertNull(pages.get(0).getCards());
+        assertEquals(knownPages.get(1), pages.get(0).getFingerprint());
+        assertFalse(pages.get(1).isModified());
+        assertEquals(knownPages.get(2).getHash(), pages.get(1).getFingerprint().getHash());
+        assertTrue(pages.get(2).isModified());
+        assertEquals("3-1", pages.get(2).getCards().get(0).getId());
+    }
+
+    @Test
+    public void shouldParseChangedPagesWhenFingerprintsAreKnown() throws IOException {
+        String page = "?page=";
+        PageFingerprint known = new PageFingerprint();
+        known.setPage(1);
+        known.setHash("not the same hash");
+        known.setCardIds(Collections.singletonList("1"));
+
+        when(httpService.doGetStream(eq(url + page + "1"), anyMap(), any())).thenAnswer(stream(jsonResult, "3"));
+
+        List<Page> pages = apiAssembler.getPages(url, Collections.singletonMap(1, known));
+
+        assertEquals(1, pages.size());
+        assertTrue(pages.get(0).isModified());
+        assertEquals(3, pages.get(0).getCards().size());
+        assertEquals(Arrays.asList("1", "2", "3"), pages.get(0).getFingerprint().getCardIds());
+    }
+
+    /**
+     * The body is hashed before it's parsed: a broken body with the known hash is never parsed
+     */
+    @Test
+    public void shouldCompareTheHashBeforeParsingKnownPages() throws IOException, NoSuchAlgorithmException {
+        String page = "?page=";
+        PageFingerprint known = new PageFingerprint();
+        known.setPage(1);
+        known.setHash(sha256(brokenResult));
+        known.setCardIds(Arrays.asList("1", "2", "3"));
+
+        when(httpService.doGetStream(eq(url + page + "1"), anyMap(), any())).thenAnswer(stream(brokenResult, "3"));
+
+        List<Page> pages = apiAssembler.getPages(url, Collections.singletonMap(1, known));
+
+        assertEquals(1, pages.size());
+        assertFalse(pages.get(0).isModified());
+        assertNull(pages.get(0).getCards());
+        assertEquals(known.getCardIds(), pages.get(0).getFingerprint().getCardIds());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldThrowExceptionOnNotModifiedForUnknownPages() throws IOException {
+        String page = "?page=";
+        when(httpService.doGetStream(eq(url + page + "1"), anyMap(), any())).thenAnswer(stream("", "3", HTTPService.NOT_MODIFIED));
+
+        apiAssembler.getPages(url, Collections.emptyMap());
+    }
+
+    @Test
+    public void shouldResumeFromCheckpointWithoutRequestingStagedPages() throws IOException {
+        RefreshStateService refreshStateService = mock(RefreshStateService.class);
+        apiAssembler = new APIAssemblerImpl(httpService, 2, refreshStateService);
+
+        Page staged = new Page();
+        staged.setNumber(2);
+        staged.setModified(true);
+        staged.setCards(Collections.singletonList(new Card()));
+        staged.getCards().get(0).setId("staged");
+
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setUrl(url);
+        checkpoint.setTotalPages(3);
+        checkpoint.setStagedPages(new TreeSet<>(Collections.singleton(2)));
+        when(refreshStateService.readCheckpoint(url)).thenReturn(checkpoint);
+        when(refreshStateService.readStagedPage(2)).thenReturn(staged);
+
+        String page = "?page=";
+        when(httpService.doGetStream(eq(url + page + "1"), anyMap(), any())).thenAnswer(stream(jsonResult, "9"));
+        when(httpService.doGetStream(eq(url + page + "3"), anyMap(), any())).thenAnswer(stream(jsonResult.replace("\"id\": \"", "\"id\": \"3-"), "9"));
+
+        List<Card> cards = apiAssembler.getCards(url);
+
+        assertEquals(7, cards.size());
+        assertEquals("staged", cards.get(3).getId());
+        assertEquals("3-1", cards.get(4).getId());
+        verify(httpService, never()).doGetStream(eq(url + page + "2"), anyMap(), any());
+        verify(refreshStateService, times(2)).stagePage(any(Page.class));
+        verify(refreshStateService, never()).writeCheckpoint(any(Checkpoint.class));
+    }
+
+    @Test
+    public void shouldStagePagesAndSaveTotalPages() throws IOException {
+        RefreshStateService refreshStateService = mock(RefreshStateService.class);
+        apiAssembler = new APIAssemblerImpl(httpService, 2, refreshStateService);
+
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setUrl(url);
+        checkpoint.setStagedPages(new TreeSet<>());
+        when(refreshStateService.readCheckpoint(url)).thenReturn(checkpoint);
+
+        String page = "?page=";
+        when(httpService.doGetStream(eq(url + page + "1"), anyMap(), any())).thenAnswer(stream(jsonResult, "6"));
+        when(httpService.doGetStream(eq(url + page + "2"), anyMap(), any())).thenAnswer(stream(jsonResult, "6"));
+
+        apiAssembler.getCards(url);
+
+        verify(refreshStateService, times(2)).stagePage(any(Page.class));
+        verify(refreshStateService, times(2)).writeCheckpoint(checkpoint);
+        assertEquals(2, checkpoint.getTotalPages());
+    }
+
+    private Answer<Object> stream(String body, String totalCount) {
+        return stream(body, totalCount, 200);
+    }
+
+    private Answer<Object> stream(String body, String totalCount, int code) {
+        return invocation -> {
+            HTTPService.BodyHandler<?> handler = invocation.getArgument(2);
+            InputStream input = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+            HTTPResponse response = response(totalCount);
+            response.setCode(code);
+            return handler.handle(response, input);
+        };
+    }
+
+    private HTTPResponse response(String totalCount) {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (totalCount != null) {
+            headers.put("Total-Count", Collections.singletonList(totalCount));
+            headers.put("Page-Size", Collections.singletonList("3"));
+        }
+        headers.put("ETag", Collections.singletonList("\"v1\""));
+
+        HTTPResponse response = new HTTPResponse();
+        response.setCode(200);
+        response.setHeaders(headers);
+        return response;
+    }
+
+    private String sha256(String body) throws NoSuchAlgorithmException {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
     private String readFile(String path) throws IOException {
         Path uri = Paths.get(path);
         return Files.lines(uri).collect(Collectors.joining("\n"));
@@ -1,17 +1,42 @@
 package com.lingokids.mtg.services.impl;
 
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.model.Page;
+import com.lingokids.mtg.model.PageFingerprint;
 import com.lingokids.mtg.services.APIAssembler;
+import com.lingokids.mtg.services.APIAssembler.PageConsumer;
+import com.lingokids.mtg.services.FilterService;
+import com.lingokids.mtg.services.RefreshStateService;
 import com.lingokids.mtg.services.StorageService;
+import com.lingokids.mtg.services.StorageService.CardWriter;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
@@ -26,28 +51,38 @@ public class CardLoaderServiceImplTest {
     private final CardLoaderServiceImpl cardLoaderService;
 
     /**
-     * We will mock Storage Service and API assembler
+     * We will mock Storage Service, API assembler and Refresh State Service
      */
     @Mock
     private StorageService storageService;
 
+    @Mock
+    private CardWriter cardWriter;
+
     @Mock
     private APIAssembler apiAssembler;
 
+    @Mock
+    private RefreshStateService refreshStateService;
+
+    @Spy
+    private FilterService filterService = new FilterServiceImpl();
+
     public CardLoaderServiceImplTest() {
-        cardLoaderService = new CardLoaderServiceImpl(storageService, apiAssembler);
+        cardLoaderService = new CardLoaderServiceImpl(storageService, apiAssembler, refreshStateService);
     }
 
     @Test
     public void shouldReloadCardsIfNoFile() throws IOException {
         when(storageService.dataExists()).thenReturn(false);
+        when(storageService.openWriter()).thenReturn(cardWriter);
 
         cardLoaderService.getCards("", true);
         cardLoaderService.getCards("", false);
 
-        verify(apiAssembler, times(2)).getCards(anyString());
-        verify(storageService, times(2)).write(anyList());
-        verify(storageService, times(0)).read();
+        verify(apiAssembler, times(2)).getPages(anyString(), anyMap(), any(PageConsumer.class));
+        verify(cardWriter, times(2)).commit();
+        verify(storageService, times(0)).read(any(CardQuery.class), any());
     }
 
     @Test
@@ -56,17 +91,237 @@ public class CardLoaderServiceImplTest {
 
         cardLoaderService.getCards("", false);
 
-        verify(apiAssembler, times(0)).getCards(anyString());
-        verify(storageService, times(0)).write(anyList());
-        verify(storageService, times(1)).read();
+        verify(apiAssembler, times(0)).getPages(anyString(), anyMap(), any(PageConsumer.class));
+        verify(storageService, times(0)).openWriter();
+        verify(storageService, times(1)).read(any(CardQuery.class), any());
+    }
+
+    @Test
+    public void shouldReadCachedFileForQuery() throws IOException {
+        when(storageService.dataExists()).thenReturn(true);
+        CardQuery query = new CardQuery();
+        query.setFilters(Collections.singletonMap("set", "KTK"));
+
+        cardLoaderService.getCards("", false, false, query);
+
+        verify(storageService, times(1)).read(eq(query), any());
+        verify(storageService, times(0)).read();
+    }
+
+    @Test
+    public void shouldKeepOnlyMatchingCardsWhileReading() throws IOException {
+        when(storageService.dataExists()).thenReturn(true);
+        doAnswer(invocation -> {
+            Consumer<Card> consumer = invocation.getArgument(1);
+            consumer.accept(card("1", "Master the Way", "KTK"));
+            consumer.accept(card("2", "Power Sink", "PTC"));
+            consumer.accept(card("3", "Winterflame", "KTK"));
+            return null;
+        }).when(storageService).read(any(CardQuery.class), any());
+
+        CardQuery query = new CardQuery();
+        query.setFilters(Collections.singletonMap("set", "ktk"));
+        List<Card> cards = cardLoaderService.getCards("", false, false, query);
+
+        assertEquals(2, cards.size());
+        assertEquals("1", cards.get(0).getId());
+        assertEquals("3", cards.get(1).getId());
+        verify(filterService, times(0)).filter(anyList(), anyMap());
+    }
+
+    /**
+     * Storages only read the text if the query needs details, even if only the name is printed
+     */
+    @Test
+    public void shouldReadDetailsForFiltersWithOperatorOnDetailFields() throws IOException {
+        when(storageService.dataExists()).thenReturn(true);
+        doAnswer(invocation -> {
+            CardQuery read = invocation.getArgument(0);
+            Consumer<Card> consumer = invocation.getArgument(1);
+            Card card = card("1", "Divination", "M19");
+            card.setText(read.needsDetails() ? "Draw two cards." : null);
+            consumer.accept(card);
+            return null;
+        }).when(storageService).read(any(CardQuery.class), any());
+
+        CardQuery query = new CardQuery();
+        query.setFilters(Collections.singletonMap("text:contains", "draw two"));
+        query.setProperties(Collections.singleton("name"));
+        List<Card> cards = cardLoaderService.getCards("", false, false, query);
+
+        assertEquals(1, cards.size());
+        assertEquals("1", cards.get(0).getId());
+    }
+
+    @Test
+    public void shouldFilterRefreshedCards() throws IOException {
+        when(storageService.openWriter()).thenReturn(cardWriter);
+        doAnswer(pages(modifiedPage(1, card("1", "Master the Way", "KTK"), card("2", "Power Sink", "PTC"))))
+                .when(apiAssembler).getPages(anyString(), anyMap(), any(PageConsumer.class));
+
+        CardQuery query = new CardQuery();
+        query.setFilters(Collections.singletonMap("set", "ptc"));
+        List<Card> cards = cardLoaderService.getCards("", true, false, query);
+
+        assertEquals(1, cards.size());
+        assertEquals("2", cards.get(0).getId());
+        verify(cardWriter, times(1)).commit();
+        verify(filterService, times(0)).filter(anyList(), anyMap());
     }
 
     @Test
     public void shouldReloadIfCachedFileExistsButRefreshIsTrue() throws IOException {
+        when(storageService.openWriter()).thenReturn(cardWriter);
+
         cardLoaderService.getCards("", true);
 
-        verify(apiAssembler, times(1)).getCards(anyString());
-        verify(storageService, times(1)).write(anyList());
-        verify(storageService, times(0)).read();
+        verify(apiAssembler, times(1)).getPages(anyString(), anyMap(), any(PageConsumer.class));
+        verify(cardWriter, times(1)).commit();
+        verify(storageService, times(0)).read(any(CardQuery.class), any());
+        verify(refreshStateService, times(1)).writeFingerprints(anyCollection());
+        verify(refreshStateService, times(1)).deleteCheckpoint();
+    }
+
+    @Test
+    public void shouldAppendPagesAsTheyArrive() throws IOException {
+        when(storageService.openWriter()).thenReturn(cardWriter);
+
+        Page first = modifiedPage(1, card("1", "first"), card("2", "second"));
+        Page second = modifiedPage(2, card("3", "third"));
+        doAnswer(pages(first, second)).when(apiAssembler).getPages(anyString(), anyMap(), any(PageConsumer.class));
+
+        List<Card> cards = cardLoaderService.getCards("", true);
+
+        assertEquals(3, cards.size());
+        verify(cardWriter, times(1)).append(first.getCards());
+        verify(cardWriter, times(1)).append(second.getCards());
+        verify(cardWriter, times(1)).commit();
+    }
+
+    @Test
+    public void shouldKeepCheckpointIfCardsCanNotBeSaved() throws IOException {
+        when(storageService.openWriter()).thenReturn(cardWriter);
+        doThrow(new IOException()).when(cardWriter).commit();
+
+        try {
+            cardLoaderService.getCards("", true);
+            fail("IOException expected");
+        } catch (IOException e) {
+            verify(cardWriter, times(1)).close();
+            verify(refreshStateService, times(0)).deleteCheckpoint();
+        }
+    }
+
+    @Test
+    public void shouldRefreshCompletelyIfIncrementalButNoFingerprints() throws IOException {
+        when(storageService.dataExists()).thenReturn(true);
+        when(storageService.openWriter()).thenReturn(cardWriter);
+        when(refreshStateService.readFingerprints()).thenReturn(Collections.emptyMap());
+
+        cardLoaderService.getCards("", true, true);
+
+        verify(apiAssembler, times(1)).getPages(anyString(), eq(Collections.emptyMap()), any(PageConsumer.class));
+        verify(cardWriter, times(1)).commit();
+        verify(storageService, times(0)).read(any(CardQuery.class), any());
+    }
+
+    @Test
+    public void shouldMergeChangedPagesWithCachedCards() throws IOException {
+        Map<Integer, PageFingerprint> knownPages = new TreeMap<>();
+        knownPages.put(1, fingerprint(1, "1", "2"));
+        knownPages.put(2, fingerprint(2, "3", "4"));
+
+        when(storageService.dataExists()).thenReturn(true);
+        when(storageService.openWriter()).thenReturn(cardWriter);
+        when(refreshStateService.readFingerprints()).thenReturn(knownPages);
+        when(storageService.read()).thenReturn(Arrays.asList(card("1", "old"), card("2", "old"),
+                card("3", "old"), card("4", "old")));
+
+        Page unchanged = new Page();
+        unchanged.setNumber(1);
+        unchanged.setFingerprint(knownPages.get(1));
+
+        Page changed = modifiedPage(2, card("3", "new"), card("5", "new"));
+        doAnswer(pages(unchanged, changed)).when(apiAssembler).getPages(eq(""), eq(knownPages), any(PageConsumer.class));
+
+        List<Card> cards = cardLoaderService.getCards("", true, true);
+
+        assertEquals(4, cards.size());
+        assertEquals("1", cards.get(0).getId());
+        assertEquals("old", cards.get(1).getName());
+        assertEquals("3", cards.get(2).getId());
+        assertEquals("new", cards.get(2).getName());
+        assertEquals("5", cards.get(3).getId());
+        verify(cardWriter, times(1)).append(cards.subList(0, 2));
+        verify(cardWriter, times(1)).append(changed.getCards());
+        verify(cardWriter, times(1)).commit();
+        verify(refreshStateService, times(1)).writeFingerprints(anyCollection());
+    }
+
+    @Test
+    public void shouldNotReplaceFileIfNothingChanged() throws IOException {
+        Map<Integer, PageFingerprint> knownPages = new TreeMap<>();
+        knownPages.put(1, fingerprint(1, "1", "2"));
+
+        Page unchanged = new Page();
+        unchanged.setNumber(1);
+        unchanged.setFingerprint(knownPages.get(1));
+
+        when(storageService.dataExists()).thenReturn(true);
+        when(storageService.openWriter()).thenReturn(cardWriter);
+        when(storageService.read()).thenReturn(Arrays.asList(card("1", "old"), card("2", "old")));
+        when(refreshStateService.readFingerprints()).thenReturn(knownPages);
+        doAnswer(pages(unchanged)).when(apiAssembler).getPages(eq(""), eq(knownPages), any(PageConsumer.class));
+
+        List<Card> cards = cardLoaderService.getCards("", true, true);
+
+        assertEquals(2, cards.size());
+        verify(storageService, times(1)).read();
+        verify(cardWriter, times(0)).commit();
+        verify(cardWriter, times(1)).close();
+    }
+
+    private Answer<Void> pages(Page... pages) {
+        return invocation -> {
+            PageConsumer consumer = invocation.getArgument(2);
+            for (Page page : pages) {
+                consumer.accept(page);
+            }
+            return null;
+        };
+    }
+
+    private Page modifiedPage(int number, Card... cards) {
+        List<String> ids = new ArrayList<>();
+        for (Card card : cards) {
+            ids.add(card.getId());
+        }
+
+        Page page = new Page();
+        page.setNumber(number);
+        page.setModified(true);
+        page.setCards(Arrays.asList(cards));
+        page.setFingerprint(fingerprint(number, ids.toArray(new String[0])));
+        return page;
+    }
+
+    private PageFingerprint fingerprint(int page, String... ids) {
+        PageFingerprint fingerprint = new PageFingerprint();
+        fingerprint.setPage(page);
+        fingerprint.setCardIds(new ArrayList<>(Arrays.asList(ids)));
+        return fingerprint;
+    }
+
+    private Card card(String id, String name) {
+        Card card = new Card();
+        card.setId(id);
+        card.setName(name);
+        return card;
+    }
+
+    private Card card(String id, String name, String set) {
+        Card card = card(id, name);
+        card.setSet(set);
+        return card;
     }
 }
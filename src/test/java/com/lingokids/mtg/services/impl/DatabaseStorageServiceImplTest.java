@@ -0,0 +1,174 @@
+package com.lingokids.mtg.services.impl;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.model.Legal;
+import com.lingokids.mtg.services.StorageService;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DatabaseStorageServiceImplTest {
+    /**
+     * Service to be tested
+     */
+    private final DatabaseStorageServiceImpl storageService;
+
+    public DatabaseStorageServiceImplTest() {
+        storageService = new DatabaseStorageServiceImpl();
+    }
+
+    @After
+    public void deleteDatabase() throws IOException {
+        storageService.delete();
+    }
+
+    /**
+     * Steps
+     *
+     * (1) Delete database, now dataexists should be false
+     * (2) Write cards, now dataexists should be true and cards are read as they were written
+     * (3) Append cards without commit, previous cards should be kept
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldWorkThisFlow() throws IOException {
+        storageService.delete();
+        assertFalse(storageService.dataExists());
+        assertNull(storageService.getVersion());
+
+        Card card = newCard("1", "Goblin Guide", "ZEN", 1, "Red");
+        card.setText("Haste");
+        Legal legal = new Legal();
+        legal.setFormat("Modern");
+        legal.setLegality("Legal");
+        card.setLegalities(Collections.singletonList(legal));
+        List<Card> cards = Arrays.asList(card, newCard("2", "Lightning Bolt", "M10", 1, "Red"));
+        storageService.write(cards);
+        assertTrue(storageService.dataExists());
+        assertEquals(cards, storageService.read());
+        String version = storageService.getVersion();
+
+        try (StorageService.CardWriter writer = storageService.openWriter()) {
+            writer.append(Collections.singletonList(newCard("3", "Island", "M10", 0)));
+            assertEquals(2, storageService.read().size());
+        }
+        assertEquals(cards, storageService.read());
+        assertEquals(version, storageService.getVersion());
+
+        storageService.write(cards);
+        assertNotEquals(version, storageService.getVersion());
+
+        storageService.delete();
+        assertFalse(storageService.dataExists());
+    }
+
+    /**
+     * Filters on columns and side tables are done by the database, like the filter service does them
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldPushFiltersDown() throws IOException {
+        storageService.write(Arrays.asList(
+                newCard("1", "Goblin Guide", "ZEN", 1, "Red"),
+                newCard("2", "Lightning Helix", "RAV", 2, "Red", "White"),
+                newCard("3", "Boros Charm", "GTC", 2, "White", "Red"),
+                newCard("4", "Island", "M10", 0)));
+
+        assertEquals(Arrays.asList("2", "3"), readIds(filters("colors", "red,WHITE")));
+        assertEquals(Collections.singletonList("1"), readIds(filters("colors", "red")));
+        assertEquals(Arrays.asList("2", "4"), readIds(filters("set", "rav,m10")));
+        assertEquals(Collections.singletonList("1"), readIds(filters("name", "GOBLIN GUIDE")));
+        assertEquals(Arrays.asList("2", "3"), readIds(filters("cmc", "2.0")));
+        assertEquals(Collections.emptyList(), readIds(filters("cmc", "two")));
+        assertEquals(Collections.singletonList("3"), readIds(filters("Set", "GTC", "colors", "white,red")));
+
+        // Filters without column are left to the caller
+        assertEquals(4, readIds(filters("artist", "nobody")).size());
+        assertEquals(4, readIds(filters("cmc", "1..2")).size());
+    }
+
+    /**
+     * Cards are sorted by the grouping fields and then by their position
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldSortCardsByGroupingFields() throws IOException {
+        storageService.write(Arrays.asList(
+                newCard("1", "Goblin Guide", "ZEN", 1, "Red"),
+                newCard("2", "Lightning Helix", "RAV", 2, "Red", "White"),
+                newCard("3", "Boros Charm", "GTC", 2, "White", "Red"),
+                newCard("4", "Lightning Bolt", "RAV", 1, "Red")));
+
+        CardQuery query = new CardQuery();
+        query.setGroupBy(Collections.singletonList("set"));
+        assertEquals(Arrays.asList("3", "2", "4", "1"), readIds(query));
+
+        query.setGroupBy(Arrays.asList("cmc", "colors"));
+        assertEquals(Arrays.asList("1", "4", "2", "3"), readIds(query));
+    }
+
+    /**
+     * Details are only read if the query needs them
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldReadDetailsOnlyWhenAsked() throws IOException {
+        Card card = newCard("1", "Goblin Guide", "ZEN", 1, "Red");
+        card.setFlavor("They rush in.");
+        storageService.write(Collections.singletonList(card));
+
+        CardQuery query = new CardQuery();
+        query.setProperties(new HashSet<>(Arrays.asList("id", "name")));
+        Card lean = storageService.read(query).get(0);
+        assertEquals("Goblin Guide", lean.getName());
+        assertNull(lean.getFlavor());
+
+        assertEquals(card, storageService.read().get(0));
+    }
+
+    private List<String> readIds(CardQuery query) throws IOException {
+        return storageService.read(query).stream().map(Card::getId).collect(Collectors.toList());
+    }
+
+    private CardQuery filters(String... fieldsAndValues) {
+        Map<String, String> filters = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            filters.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        CardQuery query = new CardQuery();
+        query.setFilters(filters);
+        return query;
+    }
+
+    private Card newCard(String id, String name, String set, double cmc, String... colors) {
+        Card card = new Card();
+        card.setId(id);
+        card.setName(name);
+        card.setSet(set);
+        card.setCmc(cmc);
+        card.setColors(colors.length > 0 ? Arrays.asList(colors) : null);
+        return card;
+    }
+}
@@ -11,13 +11,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(MockitoJUnitRunner.class)
 public class FilterServiceImplTest {
@@ -293,6 +297,46 @@ public class FilterServiceImplTest {
         filterService.filter(cards, filter);
     }
 
+    @Test
+    public void shouldCombineAllFiltersInAPredicate() {
+        Map<String, String> filter = new HashMap<>();
+        filter.put("set", "ptc");
+        filter.put("colors", "red,blue");
+
+        Predicate<Card> predicate = filterService.getPredicate(filter);
+        List<Card> filteredCards = cards.stream().filter(predicate).collect(Collectors.toList());
+
+        assertEquals(1, filteredCards.size());
+        assertEquals("2", filteredCards.get(0).getId());
+        assertTrue(filterService.getPredicate(null).test(cards.get(0)));
+    }
+
+    /**
+     * Large lists are split in chunks filtered by several threads, matching cards keep their order
+     */
+    @Test
+    public void shouldFilterInParallelKeepingTheOrder() {
+        List<Card> manyCards = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Card card = new Card();
+            card.setId(Integer.toString(i));
+            card.setCmc(i % 3);
+            manyCards.add(card);
+        }
+        Map<String, String> filter = new HashMap<>();
+        filter.put("cmc", "1.0");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Card> filteredCards = new FilterServiceImpl(pool, 1_000).filter(manyCards, filter);
+
+            List<Card> expected = manyCards.stream().filter(card -> card.getCmc() == 1).collect(Collectors.toList());
+            assertEquals(expected, filteredCards);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     private List<Card> readListOfCards() throws IOException {
         String jsonContent = readFile();
 
@@ -1,22 +1,40 @@
 package com.lingokids.mtg.services.impl;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.lingokids.mtg.http.HTTPClientProfile;
+import com.lingokids.mtg.http.RetryPolicy;
+import com.lingokids.mtg.http.TokenBucket;
+import com.lingokids.mtg.model.HTTPResponse;
+import com.lingokids.mtg.services.HTTPService;
+import okhttp3.OkHttpClient;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(MockitoJUnitRunner.class)
 public class HTTPServiceImplTest {
@@ -53,6 +71,61 @@ public class HTTPServiceImplTest {
         assertEquals(response, emptyResult);
     }
 
+    @Test
+    public void shouldDecodeBodyWithTheCharsetOfTheContentType() throws IOException {
+        String body = "{\"name\":\"Æther Vial\"}";
+        stubFor(get("/api")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json; charset=ISO-8859-1")
+                        .withBody(body.getBytes(StandardCharsets.ISO_8859_1))));
+
+        assertEquals(body, httpService.doGet(url));
+    }
+
+    @Test
+    public void shouldReturnResponseHeaders() throws IOException {
+        stubFor(get("/api")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Total-Count", "58169")
+                        .withHeader("Page-Size", "100")
+                        .withBody(emptyResult)));
+
+        HTTPResponse response = httpService.doGetResponse(url);
+        assertEquals(200, response.getCode());
+        assertEquals(emptyResult, response.getBody());
+        assertEquals("58169", response.getHeader("total-count"));
+        assertEquals("100", response.getHeader("Page-Size"));
+    }
+
+    @Test
+    public void shouldStreamResponseBody() throws IOException {
+        stubFor(get("/api")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Total-Count", "0")
+                        .withBody(emptyResult)));
+
+        String totalCount = httpService.doGetStream(url, (response, body) -> response.getHeader("Total-Count"));
+        assertEquals("0", totalCount);
+    }
+
+    @Test
+    public void shouldHandleNotModifiedOnConditionalRequests() throws IOException {
+        stubFor(get("/api")
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", "\"v1\"")));
+
+        int code = httpService.doGetStream(url, Collections.singletonMap("If-None-Match", "\"v1\""),
+                (response, body) -> response.getCode());
+        assertEquals(HTTPService.NOT_MODIFIED, code);
+    }
+
     @Test(expected = IOException.class)
     public void shouldThrowExceptionOnNotFound() throws IOException {
         stubFor(get("/api")
@@ -69,6 +142,83 @@ public class HTTPServiceImplTest {
         httpService.doGet(url);
     }
 
+    @Test
+    public void shouldRetryAfterTooManyRequests() throws IOException {
+        HTTPServiceImpl retryingService = new HTTPServiceImpl(new TokenBucket(), new RetryPolicy(3, 10, 2000));
+
+        stubFor(get("/api").inScenario("rate limit")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse()
+                        .withStatus(429)
+                        .withHeader("Retry-After", "1"))
+                .willSetStateTo("allowed"));
+        stubFor(get("/api").inScenario("rate limit")
+                .whenScenarioStateIs("allowed")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(emptyResult)));
+
+        long start = System.currentTimeMillis();
+        String response = retryingService.doGet(url);
+
+        assertEquals(emptyResult, response);
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        verify(2, getRequestedFor(urlEqualTo("/api")));
+    }
+
+    @Test
+    public void shouldRetryServerErrorsWithBackoff() throws IOException {
+        HTTPServiceImpl retryingService = new HTTPServiceImpl(new TokenBucket(), new RetryPolicy(3, 10, 100));
+
+        stubFor(get("/api").inScenario("unavailable")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("still unavailable"));
+        stubFor(get("/api").inScenario("unavailable")
+                .whenScenarioStateIs("still unavailable")
+                .willReturn(aResponse().withStatus(502))
+                .willSetStateTo("available"));
+        stubFor(get("/api").inScenario("unavailable")
+                .whenScenarioStateIs("available")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(emptyResult)));
+
+        assertEquals(emptyResult, retryingService.doGet(url));
+        verify(3, getRequestedFor(urlEqualTo("/api")));
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenRetriesAreExhausted() {
+        HTTPServiceImpl retryingService = new HTTPServiceImpl(new TokenBucket(), new RetryPolicy(2, 10, 100));
+
+        stubFor(get("/api")
+                .willReturn(aResponse()
+                        .withStatus(500)));
+
+        try {
+            retryingService.doGet(url);
+            fail("IOException expected");
+        } catch (IOException e) {
+            verify(3, getRequestedFor(urlEqualTo("/api")));
+        }
+    }
+
+    @Test
+    public void shouldLimitTokensToRemainingRequests() throws IOException {
+        TokenBucket tokenBucket = new TokenBucket(100, 1);
+        HTTPServiceImpl limitedService = new HTTPServiceImpl(tokenBucket, new RetryPolicy());
+
+        stubFor(get("/api")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Ratelimit-Remaining", "5")
+                        .withBody(emptyResult)));
+
+        limitedService.doGet(url);
+        assertTrue(tokenBucket.getAvailableTokens() < 6);
+    }
+
     @Test(expected = SocketTimeoutException.class)
     public void shouldThrowExceptionOnReadTimeout() throws IOException {
         stubFor(get("/api")
@@ -79,6 +229,53 @@ public class HTTPServiceImplTest {
         httpService.doGet(url);
     }
 
+    @Test
+    public void shouldAskForCompressedResponsesAndDecodeGzip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(emptyResult.getBytes(StandardCharsets.UTF_8));
+        }
+
+        stubFor(get("/api")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Encoding", "gzip")
+                        .withBody(compressed.toByteArray())));
+
+        HTTPResponse response = httpService.doGetResponse(url);
+        assertEquals(emptyResult, response.getBody());
+        assertNull(response.getHeader("Content-Encoding"));
+        verify(getRequestedFor(urlEqualTo("/api")).withHeader("Accept-Encoding", equalTo("br, gzip")));
+    }
+
+    @Test
+    public void shouldDecodeBrotliResponses() throws IOException {
+        // {"cards":[]} in a single uncompressed brotli meta-block
+        byte[] compressed = {(byte) 0xb0, 0x00, 0x10, '{', '"', 'c', 'a', 'r', 'd', 's', '"', ':', '[', ']', '}', 0x03};
+
+        stubFor(get("/api")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Encoding", "br")
+                        .withBody(compressed)));
+
+        assertEquals("{\"cards\":[]}", httpService.doGet(url));
+    }
+
+    @Test
+    public void shouldNotCompressWithHTTP1Profile() throws IOException {
+        OkHttpClient client = new HTTPClientProfile(1, 1000, false, false).newClient();
+        HTTPServiceImpl plainService = new HTTPServiceImpl(client, new TokenBucket(), new RetryPolicy());
+
+        stubFor(get("/api")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(emptyResult)));
+
+        assertEquals(emptyResult, plainService.doGet(url));
+        verify(getRequestedFor(urlEqualTo("/api")).withHeader("Accept-Encoding", equalTo("gzip")));
+    }
+
     private String readFile() throws IOException {
         Path uri = Paths.get("test/empty.json");
         return Files.lines(uri).collect(Collectors.joining("\n"));
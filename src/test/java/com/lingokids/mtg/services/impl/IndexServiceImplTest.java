@@ -0,0 +1,82 @@
+package com.lingokids.mtg.services.impl;
+
+import com.lingokids.mtg.filter.CardField;
+import com.lingokids.mtg.filter.CardIndex;
+import com.lingokids.mtg.model.Card;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IndexServiceImplTest {
+    /**
+     * Service to be tested
+     */
+    private final IndexServiceImpl indexService = new IndexServiceImpl();
+
+    private final Path path = Paths.get(System.getProperty("user.home"), "mtg_cards.bitmaps");
+
+    @After
+    public void deleteIndex() throws IOException {
+        indexService.delete();
+    }
+
+    /**
+     * Steps
+     *
+     * (1) Index is built and saved for a version of the cards
+     * (2) Same version is read from the file
+     * (3) Other version of the cards is built again
+     * (4) A damaged file is ignored
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldKeepTheIndexOfAVersion() throws IOException {
+        List<Card> cards = Arrays.asList(card("KTK", "Red"), card("ZEN", "Blue"), card("KTK", "Red"));
+        CardIndex built = indexService.getIndex(cards, "v1");
+        assertTrue(Files.exists(path));
+
+        CardIndex read = indexService.getIndex(cards, "v1");
+        for (CardField field : CardIndex.INDEXED_FIELDS) {
+            assertEquals(built.getBitmaps(field), read.getBitmaps(field));
+        }
+        assertArrayEquals(built.getText(CardField.TEXT).getWords(), read.getText(CardField.TEXT).getWords());
+        assertArrayEquals(new int[]{0, 2}, read.getText(CardField.TEXT).getPostings(1));
+        assertArrayEquals(new int[]{0, 2, 1}, read.getRange(CardField.CMC).getPositions());
+        assertArrayEquals(built.getRange(CardField.CMC).getKeys(), read.getRange(CardField.CMC).getKeys());
+
+        List<Card> otherCards = Arrays.asList(card("M10", "Green"), card("KTK", "Red"));
+        assertEquals(CardIndex.build(otherCards).getBitmaps(CardField.SET), indexService.getIndex(otherCards, "v2").getBitmaps(CardField.SET));
+
+        Files.write(path, "damaged".getBytes(StandardCharsets.UTF_8));
+        assertEquals(built.getBitmaps(CardField.COLORS), indexService.getIndex(cards, "v1").getBitmaps(CardField.COLORS));
+
+        indexService.delete();
+        indexService.getIndex(cards, null);
+        assertFalse(Files.exists(path));
+    }
+
+    private Card card(String set, String color) {
+        Card card = new Card();
+        card.setSet(set);
+        card.setColors(Arrays.asList(color));
+        card.setText(set + " card");
+        card.setCmc(set.length() + color.length());
+        return card;
+    }
+}
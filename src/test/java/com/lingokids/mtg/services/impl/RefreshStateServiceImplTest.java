@@ -0,0 +1,112 @@
+package com.lingokids.mtg.services.impl;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.Checkpoint;
+import com.lingokids.mtg.model.Page;
+import com.lingokids.mtg.model.PageFingerprint;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RefreshStateServiceImplTest {
+    /**
+     * Service to be tested
+     */
+    private final RefreshStateServiceImpl refreshStateService;
+
+    public RefreshStateServiceImplTest() {
+        refreshStateService = new RefreshStateServiceImpl();
+    }
+
+    /**
+     * Steps
+     *
+     * (1) Delete fingerprints, now there should be none
+     * (2) Write fingerprints of 2 pages, read them back by page number
+     * (3) Delete fingerprints again
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldWorkThisFlow() throws IOException {
+        refreshStateService.deleteFingerprints();
+        assertTrue(refreshStateService.readFingerprints().isEmpty());
+
+        PageFingerprint first = new PageFingerprint();
+        first.setPage(1);
+        first.setEtag("\"abc\"");
+        first.setHash("0123");
+        first.setCardIds(Arrays.asList("1", "2"));
+
+        PageFingerprint second = new PageFingerprint();
+        second.setPage(2);
+        second.setLastModified("Sun, 18 Jul 2021 10:00:00 GMT");
+        second.setCardIds(Arrays.asList("3"));
+
+        refreshStateService.writeFingerprints(Arrays.asList(second, first));
+
+        Map<Integer, PageFingerprint> fingerprints = refreshStateService.readFingerprints();
+        assertEquals(2, fingerprints.size());
+        assertEquals(first, fingerprints.get(1));
+        assertEquals(second, fingerprints.get(2));
+        assertEquals(Integer.valueOf(1), fingerprints.keySet().iterator().next());
+
+        refreshStateService.deleteFingerprints();
+        assertTrue(refreshStateService.readFingerprints().isEmpty());
+    }
+
+    /**
+     * Steps
+     *
+     * (1) Start a checkpoint for a url and stage a page
+     * (2) Read it back for the same url, page should be there
+     * (3) Read it for a different url, checkpoint should be discarded
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldStagePagesOfTheSameUrl() throws IOException {
+        refreshStateService.deleteCheckpoint();
+
+        Checkpoint checkpoint = refreshStateService.readCheckpoint("http://localhost/api");
+        assertTrue(checkpoint.getStagedPages().isEmpty());
+        assertEquals(-1, checkpoint.getTotalPages());
+
+        checkpoint.setTotalPages(582);
+        refreshStateService.writeCheckpoint(checkpoint);
+
+        Card card = new Card();
+        card.setId("1");
+        card.setSet("KTK");
+        Page page = new Page();
+        page.setNumber(7);
+        page.setModified(true);
+        page.setCards(Collections.singletonList(card));
+        refreshStateService.stagePage(page);
+
+        Checkpoint resumed = refreshStateService.readCheckpoint("http://localhost/api");
+        assertEquals(582, resumed.getTotalPages());
+        assertEquals(Collections.singleton(7), resumed.getStagedPages());
+
+        Page staged = refreshStateService.readStagedPage(7);
+        assertTrue(staged.isModified());
+        assertEquals("KTK", staged.getCards().get(0).getSet());
+        assertNull(refreshStateService.readStagedPage(8));
+
+        Checkpoint other = refreshStateService.readCheckpoint("http://localhost/other");
+        assertTrue(other.getStagedPages().isEmpty());
+        assertEquals(-1, other.getTotalPages());
+
+        refreshStateService.deleteCheckpoint();
+    }
+}
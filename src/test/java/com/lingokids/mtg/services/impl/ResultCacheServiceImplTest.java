@@ -0,0 +1,122 @@
+package com.lingokids.mtg.services.impl;
+
+import com.lingokids.mtg.model.CardQuery;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResultCacheServiceImplTest {
+    /**
+     * Service to be tested
+     */
+    private final ResultCacheServiceImpl resultCacheService;
+
+    public ResultCacheServiceImplTest() {
+        resultCacheService = new ResultCacheServiceImpl(100);
+    }
+
+    @After
+    public void clear() throws IOException {
+        resultCacheService.clear();
+    }
+
+    /**
+     * Queries with the same output have the same key
+     */
+    @Test
+    public void shouldUseCanonicalQueryAsKey() {
+        CardQuery query = query("set", "KTK,frf", "Colors", "red");
+        query.setProperties(new HashSet<>(Arrays.asList("name", "id")));
+        CardQuery sameQuery = query("colors", "RED", "set", "frf,ktk,ktk");
+        sameQuery.setProperties(new HashSet<>(Arrays.asList("id", "name")));
+        String key = resultCacheService.getKey(query, false, "v1");
+        assertEquals(key, resultCacheService.getKey(sameQuery, false, "v1"));
+
+        assertNotEquals(key, resultCacheService.getKey(query, true, "v1"));
+        assertNotEquals(key, resultCacheService.getKey(query, false, "v2"));
+        sameQuery.setProperties(new HashSet<>(Arrays.asList("ID", "name")));
+        assertNotEquals(key, resultCacheService.getKey(sameQuery, false, "v1"));
+
+        CardQuery grouped = query("set", "ktk");
+        grouped.setGroupBy(Arrays.asList("set", "rarity"));
+        CardQuery otherGroups = query("set", "ktk");
+        otherGroups.setGroupBy(Arrays.asList("rarity", "set"));
+        assertNotEquals(resultCacheService.getKey(grouped, false, "v1"), resultCacheService.getKey(otherGroups, false, "v1"));
+    }
+
+    /**
+     * Steps
+     *
+     * (1) Nothing is output for an unknown key
+     * (2) Put a result, it's output to a file as it was put
+     * (3) Clear, nothing is output anymore
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldOutputResultsPut() throws IOException {
+        File output = File.createTempFile("result", ".json");
+        output.deleteOnExit();
+
+        assertFalse(resultCacheService.output("key", output.getPath()));
+
+        resultCacheService.put("key", "[{\"name\":\"Ætherize\"}]");
+        assertTrue(resultCacheService.output("key", output.getPath()));
+        assertEquals("[{\"name\":\"Ætherize\"}]", new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+
+        resultCacheService.clear();
+        assertFalse(resultCacheService.output("key", output.getPath()));
+    }
+
+    /**
+     * Results taking more than the maximum size are evicted, the least recently used first
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldEvictLeastRecentlyUsedResults() throws IOException, InterruptedException {
+        File output = File.createTempFile("result", ".json");
+        output.deleteOnExit();
+        char[] chars = new char[40];
+        Arrays.fill(chars, 'x');
+        String json = new String(chars);
+
+        resultCacheService.put("first", json);
+        Thread.sleep(20);
+        resultCacheService.put("second", json);
+        Thread.sleep(20);
+        assertTrue(resultCacheService.output("first", output.getPath()));
+        Thread.sleep(20);
+        resultCacheService.put("third", json);
+
+        assertTrue(resultCacheService.output("first", output.getPath()));
+        assertFalse(resultCacheService.output("second", output.getPath()));
+        assertTrue(resultCacheService.output("third", output.getPath()));
+    }
+
+    private CardQuery query(String... fieldsAndValues) {
+        Map<String, String> filters = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            filters.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        CardQuery query = new CardQuery();
+        query.setFilters(filters);
+        return query;
+    }
+}
@@ -0,0 +1,258 @@
+package com.lingokids.mtg.services.impl;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.services.StorageService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SnapshotStorageServiceImplTest {
+    /**
+     * Service to be tested and JSON storage where cards are exported
+     */
+    private final StorageService exportStorageService;
+    private final SnapshotStorageServiceImpl storageService;
+
+    public SnapshotStorageServiceImplTest() {
+        exportStorageService = new StorageServiceImpl();
+        storageService = new SnapshotStorageServiceImpl(exportStorageService);
+    }
+
+    /**
+     * Steps
+     *
+     * (1) Delete files, now data should not exist
+     * (2) Write cards, they should be read from snapshot and JSON export
+     * (3) Read without details, texts should not be read
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldWriteSnapshotAndExport() throws IOException {
+        storageService.delete();
+        assertFalse(storageService.dataExists());
+
+        List<Card> cards = Arrays.asList(newCard("1"), newCard("2"));
+        storageService.write(cards);
+        assertTrue(storageService.dataExists());
+        assertEquals(cards, storageService.read());
+        assertEquals(cards, exportStorageService.read());
+
+        CardQuery query = new CardQuery();
+        query.setProperties(Collections.singleton("set"));
+        List<Card> lean = storageService.read(query);
+        assertEquals("KTK", lean.get(1).getSet());
+        assertNull(lean.get(1).getText());
+
+        storageService.delete();
+        assertFalse(storageService.dataExists());
+        assertFalse(exportStorageService.dataExists());
+    }
+
+    /**
+     * Steps
+     *
+     * (1) Write cards of 3 sets
+     * (2) Filter by set, only cards of those sets should be read
+     * (3) Filter by set name, only cards of that set should be read
+     * (4) Without set filters all cards are read, in the order they were written
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldReadOnlyPartitionsOfFilteredSets() throws IOException {
+        storageService.write(Arrays.asList(newCard("1", "KTK", "Khans of Tarkir"),
+                newCard("2", "FRF", "Fate Reforged"),
+                newCard("3", "KTK", "Khans of Tarkir"),
+                newCard("4", "DTK", "Dragons of Tarkir")));
+
+        CardQuery bySet = new CardQuery();
+        bySet.setFilters(Collections.singletonMap("SET", "ktk,dtk"));
+        List<Card> cards = storageService.read(bySet);
+        assertEquals(Arrays.asList("1", "3", "4"), ids(cards));
+
+        CardQuery bySetName = new CardQuery();
+        bySetName.setFilters(Collections.singletonMap("setName", "Fate Reforged"));
+        assertEquals(Collections.singletonList("2"), ids(storageService.read(bySetName)));
+
+        CardQuery byColor = new CardQuery();
+        byColor.setFilters(Collections.singletonMap("colors", "red"));
+        assertEquals(Arrays.asList("1", "2", "3", "4"), ids(storageService.read(byColor)));
+
+        storageService.delete();
+        assertFalse(storageService.dataExists());
+    }
+
+    /**
+     * Partitions end when a set starts once they are big enough, sets mixed in the API fill
+     * partitions of that size. Cards keep their order and set filters only return cards of the set.
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldLimitPartitionsAndKeepTheOrderOfTheCards() throws IOException {
+        List<Card> cards = new ArrayList<>();
+        for (int i = 0; i < SnapshotStorageServiceImpl.PARTITION_CARDS + 1; i++) {
+            cards.add(newCard("ktk-" + i, "KTK", "Khans of Tarkir"));
+        }
+        for (int i = 0; i < 2 * SnapshotStorageServiceImpl.PARTITION_CARDS; i++) {
+            cards.add(i % 2 == 0 ? newCard("frf-" + i, "FRF", "Fate Reforged") : newCard("dtk-" + i, "DTK", "Dragons of Tarkir"));
+        }
+        storageService.write(cards);
+
+        Path directory = Paths.get(System.getProperty("user.home"), "mtg_cards.partitions");
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(4, files.count());
+        }
+        assertEquals(ids(cards), ids(storageService.read()));
+
+        CardQuery bySet = new CardQuery();
+        bySet.setFilters(Collections.singletonMap("set", "ktk"));
+        assertEquals(ids(cards.subList(0, SnapshotStorageServiceImpl.PARTITION_CARDS + 1)), ids(storageService.read(bySet)));
+
+        storageService.delete();
+    }
+
+    /**
+     * Files of the previous cache are kept for the readers that already have its manifest, and
+     * deleted when the next one replaces it
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldDeletePartitionsOfPreviousCaches() throws IOException {
+        Path directory = Paths.get(System.getProperty("user.home"), "mtg_cards.partitions");
+        storageService.write(Arrays.asList(newCard("1", "KTK", "Khans of Tarkir"), newCard("2", "FRF", "Fate Reforged")));
+        Set<String> first = fileNames(directory);
+
+        storageService.write(Collections.singletonList(newCard("3", "DTK", "Dragons of Tarkir")));
+        Set<String> second = fileNames(directory);
+        assertEquals(3, second.size());
+        assertTrue(second.containsAll(first));
+        assertEquals(Collections.singletonList("3"), ids(storageService.read()));
+
+        storageService.write(Collections.singletonList(newCard("4", "ORI", "Magic Origins")));
+        Set<String> third = fileNames(directory);
+        assertEquals(3, third.size());
+        first.remove("manifest.json");
+        assertTrue(Collections.disjoint(first, third));
+        assertEquals(Collections.singletonList("4"), ids(storageService.read()));
+
+        storageService.delete();
+        assertFalse(Files.exists(directory));
+    }
+
+    /**
+     * Cache written before snapshots existed is read from the export
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldReadExportIfThereIsNoSnapshot() throws IOException {
+        storageService.delete();
+        exportStorageService.write(Collections.singletonList(newCard("1")));
+
+        assertTrue(storageService.dataExists());
+        assertEquals("1", storageService.read().get(0).getId());
+
+        storageService.delete();
+    }
+
+    /**
+     * Nothing is replaced if the writer is not committed, and the partitions it already wrote are deleted
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldKeepCardsIfNotCommitted() throws IOException {
+        storageService.write(Collections.singletonList(newCard("1")));
+
+        Path directory = Paths.get(System.getProperty("user.home"), "mtg_cards.partitions");
+        try (StorageService.CardWriter writer = storageService.openWriter()) {
+            for (int i = 0; i < SnapshotStorageServiceImpl.PARTITION_CARDS; i++) {
+                writer.append(Collections.singletonList(newCard("ktk-" + i)));
+            }
+            writer.append(Collections.singletonList(newCard("frf", "FRF", "Fate Reforged")));
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(3, files.count());
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        assertEquals(1, storageService.read().size());
+        assertEquals(1, exportStorageService.read().size());
+
+        storageService.delete();
+    }
+
+    /**
+     * Version changes only when cards are written
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldChangeVersionWhenCardsAreWritten() throws IOException {
+        storageService.delete();
+        assertNull(storageService.getVersion());
+
+        storageService.write(Collections.singletonList(newCard("1")));
+        String version = storageService.getVersion();
+        assertNotNull(version);
+
+        try (StorageService.CardWriter writer = storageService.openWriter()) {
+            writer.append(Collections.singletonList(newCard("2")));
+        }
+        assertEquals(version, storageService.getVersion());
+
+        storageService.write(Arrays.asList(newCard("1"), newCard("2", "FRF", "Fate Reforged")));
+        assertNotEquals(version, storageService.getVersion());
+
+        storageService.delete();
+    }
+
+    private Card newCard(String id) {
+        return newCard(id, "KTK", "Khans of Tarkir");
+    }
+
+    private Card newCard(String id, String set, String setName) {
+        Card card = new Card();
+        card.setId(id);
+        card.setSet(set);
+        card.setSetName(setName);
+        card.setText("Flying");
+        return card;
+    }
+
+    private Set<String> fileNames(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+
+    private List<String> ids(List<Card> cards) {
+        return cards.stream().map(Card::getId).collect(Collectors.toList());
+    }
+}
@@ -1,17 +1,27 @@
 package com.lingokids.mtg.services.impl;
 
 import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.CardQuery;
+import com.lingokids.mtg.model.Ruling;
+import com.lingokids.mtg.services.StorageService;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -56,4 +66,136 @@ public class StorageServiceImplTest {
         storageService.delete();
         assertFalse(storageService.dataExists());
     }
+
+    /**
+     * Steps
+     *
+     * (1) Append cards in two batches and commit, all of them should be read in order
+     * (2) Append cards without commit, previous cards should be kept
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldAppendCardsAndReplaceFileOnlyOnCommit() throws IOException {
+        storageService.delete();
+
+        try (StorageService.CardWriter writer = storageService.openWriter()) {
+            writer.append(Arrays.asList(newCard("1"), newCard("2")));
+            assertFalse(storageService.dataExists());
+            writer.append(Collections.singletonList(newCard("3")));
+            writer.commit();
+        }
+
+        List<Card> cardsRead = storageService.read();
+        assertEquals(3, cardsRead.size());
+        assertEquals("1", cardsRead.get(0).getId());
+        assertEquals("3", cardsRead.get(2).getId());
+
+        try (StorageService.CardWriter writer = storageService.openWriter()) {
+            writer.append(Collections.singletonList(newCard("4")));
+        }
+
+        assertEquals(3, storageService.read().size());
+
+        storageService.delete();
+        assertFalse(storageService.dataExists());
+    }
+
+    /**
+     * Steps
+     *
+     * (1) Write a card with details
+     * (2) Read without details, only the rest of fields should be read
+     * (3) Read with details, all fields should be read
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldReadDetailsOnlyWhenAsked() throws IOException {
+        Card card = newCard("1");
+        card.setText("Flying");
+        card.setFlavor("Soaring high.");
+        Ruling ruling = new Ruling();
+        ruling.setDate("2014-09-20");
+        ruling.setText("It can block creatures with flying.");
+        card.setRulings(Collections.singletonList(ruling));
+        storageService.write(Arrays.asList(card, newCard("2")));
+
+        CardQuery query = new CardQuery();
+        query.setProperties(new HashSet<>(Arrays.asList("id", "set")));
+        List<Card> lean = storageService.read(query);
+        assertEquals(2, lean.size());
+        assertEquals("KTK", lean.get(0).getSet());
+        assertNull(lean.get(0).getText());
+        assertNull(lean.get(0).getRulings());
+
+        List<Card> full = storageService.read();
+        assertEquals(card, full.get(0));
+        assertEquals("2", full.get(1).getId());
+
+        storageService.delete();
+        assertFalse(storageService.dataExists());
+    }
+
+    /**
+     * Cards are read one by one, the consumer decides which ones are kept
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldStreamCardsToConsumer() throws IOException {
+        Card withDetails = newCard("2");
+        withDetails.setFlavor("Soaring high.");
+        storageService.write(Arrays.asList(newCard("1"), withDetails, newCard("3")));
+
+        List<String> ids = new ArrayList<>();
+        List<String> flavors = new ArrayList<>();
+        storageService.read(CardQuery.all(), card -> {
+            ids.add(card.getId());
+            if (card.getFlavor() != null) {
+                flavors.add(card.getFlavor());
+            }
+        });
+
+        assertEquals(Arrays.asList("1", "2", "3"), ids);
+        assertEquals(Collections.singletonList("Soaring high."), flavors);
+
+        storageService.delete();
+    }
+
+    /**
+     * Cards are parsed in chunks by several threads, order is kept. Without index they are read sequentially.
+     *
+     * @throws IOException Because filesystem is accessed
+     */
+    @Test
+    public void shouldReadChunksInParallel() throws IOException {
+        List<Card> cards = new ArrayList<>();
+        for (int i = 0; i < StorageServiceImpl.CARDS_PER_CHUNK * 2 + 500; i++) {
+            Card card = newCard(String.valueOf(i));
+            card.setFlavor("Flavor " + i);
+            cards.add(card);
+        }
+        storageService.write(cards);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            StorageService parallel = new StorageServiceImpl(pool);
+            assertEquals(cards, parallel.read());
+
+            Files.delete(Paths.get(System.getProperty("user.home"), "mtg_cards.index.json"));
+            assertEquals(cards, parallel.read());
+        } finally {
+            pool.shutdown();
+        }
+
+        storageService.delete();
+    }
+
+    private Card newCard(String id) {
+        Card card = new Card();
+        card.setId(id);
+        card.setSet("KTK");
+        return card;
+    }
 }
@@ -0,0 +1,162 @@
+package com.lingokids.mtg.snapshot;
+
+import com.lingokids.mtg.model.Card;
+import com.lingokids.mtg.model.ForeignName;
+import com.lingokids.mtg.model.Legal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SnapshotReaderTest {
+
+    private final SnapshotWriter snapshotWriter = new SnapshotWriter();
+    private final SnapshotReader snapshotReader = new SnapshotReader();
+
+    private Path path;
+
+    @Before
+    public void createFile() throws IOException {
+        path = Files.createTempFile("mtg_cards", ".snapshot");
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void shouldReadTheSameCardsThatWereWritten() throws IOException {
+        List<Card> cards = Arrays.asList(fullCard("1", "KTK"), fullCard("2", "KTK"), new Card());
+        cards.get(2).setId("3");
+
+        snapshotWriter.write(cards, path);
+
+        assertEquals(cards, snapshotReader.read(path, true));
+    }
+
+    @Test
+    public void shouldShareDictionaryValuesAndSkipDetails() throws IOException {
+        snapshotWriter.write(Arrays.asList(fullCard("1", "KTK"), fullCard("2", "KTK")), path);
+
+        List<Card> cards = snapshotReader.read(path, false);
+
+        assertEquals(2, cards.size());
+        assertSame(cards.get(0).getSet(), cards.get(1).getSet());
+        assertEquals(Arrays.asList("Red", "Blue"), cards.get(1).getColors());
+        assertEquals(new BigDecimal("1.50"), cards.get(1).getPriceMid());
+        assertNull(cards.get(1).getText());
+        assertNull(cards.get(1).getLegalities());
+    }
+
+    @Test
+    public void shouldReadEmptySnapshot() throws IOException {
+        snapshotWriter.write(Collections.emptyList(), path);
+
+        assertTrue(snapshotReader.read(path, true).isEmpty());
+    }
+
+    @Test
+    public void shouldFailWithUnsupportedVersion() throws IOException {
+        snapshotWriter.write(Collections.singletonList(fullCard("1", "KTK")), path);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[7] = 99;
+        try (OutputStream output = Files.newOutputStream(path)) {
+            output.write(bytes);
+        }
+
+        try {
+            snapshotReader.read(path, true);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("version 99"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailWithTruncatedFile() throws IOException {
+        snapshotWriter.write(Collections.singletonList(fullCard("1", "KTK")), path);
+        byte[] bytes = Files.readAllBytes(path);
+        try (OutputStream output = Files.newOutputStream(path)) {
+            output.write(bytes, 0, bytes.length / 2);
+        }
+
+        snapshotReader.read(path, true);
+    }
+
+    @Test
+    public void shouldFailWithNegativeLength() throws IOException {
+        snapshotWriter.write(Collections.singletonList(fullCard("1", "KTK")), path);
+        byte[] bytes = Files.readAllBytes(path);
+        // Length of the first id, after the header and the size of the column
+        ByteBuffer.wrap(bytes).putInt(20, -5);
+        try (OutputStream output = Files.newOutputStream(path)) {
+            output.write(bytes);
+        }
+
+        try {
+            snapshotReader.read(path, true);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("corrupted"));
+        }
+    }
+
+    private Card fullCard(String id, String set) {
+        Card card = new Card();
+        card.setId(id);
+        card.setName("Master the Way " + id);
+        card.setLayout("normal");
+        card.setManaCost("{3}{U}{R}");
+        card.setCmc(5);
+        card.setColors(new ArrayList<>(Arrays.asList("Red", "Blue")));
+        card.setColorIdentity(new ArrayList<>(Arrays.asList("U", "R")));
+        card.setType("Sorcery");
+        card.setTypes(new ArrayList<>(Collections.singletonList("Sorcery")));
+        card.setSubtypes(new ArrayList<>());
+        card.setRarity("Uncommon");
+        card.setArtist("Howard Lyon");
+        card.setNumber("188");
+        card.setMultiverseid(386594);
+        card.setBorder("black");
+        card.setReserved(true);
+        card.setReleaseDate("2014-09-26");
+        card.setSet(set);
+        card.setSetName("Khans of Tarkir");
+        card.setPrintings(new ArrayList<>(Arrays.asList("KTK", "PRM")));
+        card.setPriceMid(new BigDecimal("1.50"));
+        card.setText("Draw a card. Master the Way deals damage to any target.");
+        card.setFlavor("The way is found.");
+
+        Legal legal = new Legal();
+        legal.setFormat("Commander");
+        legal.setLegality("Legal");
+        card.setLegalities(new ArrayList<>(Collections.singletonList(legal)));
+
+        ForeignName foreignName = new ForeignName();
+        foreignName.setName("Dominar el camino");
+        foreignName.setLanguage("Spanish");
+        foreignName.setMultiverseid(387000);
+        card.setForeignNames(new ArrayList<>(Collections.singletonList(foreignName)));
+        return card;
+    }
+}